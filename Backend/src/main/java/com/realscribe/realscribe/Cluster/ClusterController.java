@@ -0,0 +1,49 @@
+package com.realscribe.realscribe.Cluster;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+public class ClusterController {
+
+    private final ClusterService cluster;
+    private final ClusterRelay relay;
+
+    public ClusterController(ClusterService cluster, ClusterRelay relay) {
+        this.cluster = cluster;
+        this.relay = relay;
+    }
+
+    // Envelope batches from peers using the http transport
+    @PostMapping(HttpClusterTransport.PATH)
+    public ResponseEntity<Void> receive(@RequestHeader(value = HttpClusterTransport.SECRET_HEADER, required = false) String secret,
+                                        @RequestBody List<ClusterEnvelope> envelopes) {
+        if (!cluster.enabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!cluster.acceptsSecret(secret)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        relay.receive(envelopes);
+        return ResponseEntity.accepted().build();
+    }
+
+    // Where a room lives, so a load balancer or client can send its REST reads (canvas, text,
+    // chat history, presence snapshots) straight to the node that holds the live state instead
+    // of following RoomHomeRedirectInterceptor's redirect
+    @GetMapping("/api/cluster/rooms/{roomId}")
+    public Map<String, Object> home(@PathVariable String roomId) {
+        String home = cluster.homeOf(roomId);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("roomId", roomId);
+        result.put("home", home);
+        result.put("local", cluster.isLocal(roomId));
+        result.put("url", cluster.publicUrlOf(home).orElse(null));
+        return result;
+    }
+}
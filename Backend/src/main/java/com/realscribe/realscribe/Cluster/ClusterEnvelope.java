@@ -0,0 +1,22 @@
+package com.realscribe.realscribe.Cluster;
+
+import java.util.Map;
+
+// One unit of inter-node traffic.
+//   INBOUND    a client frame for a room homed on the receiving node (destination under /app)
+//   BROADCAST  a room topic message produced by the room's home node, for local subscribers
+//   DISCONNECT a session on the sending node closed while joined to a room homed on the receiver
+//   HEARTBEAT  the sender is alive; headers carry its boot id
+// sessionId is already qualified with the origin node, so ids never collide across nodes.
+public record ClusterEnvelope(
+        Kind kind,
+        String origin,
+        String roomId,
+        String destination,
+        String sessionId,
+        // contentType plus, for INBOUND, the sender's session attributes as attr.{name}
+        Map<String, String> headers,
+        byte[] payload
+) {
+    public enum Kind { INBOUND, BROADCAST, DISCONNECT, HEARTBEAT }
+}
@@ -0,0 +1,355 @@
+package com.realscribe.realscribe.Cluster;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Moves room traffic between nodes when the cluster is enabled. Clients connect to any node
+// and subscribe there; what changes is where their room operations are applied:
+//   - SEND frames to /app/room/{roomId}/... for a room homed elsewhere are forwarded to the
+//     home node, which feeds them into its own inbound channel as if the client were local;
+//   - room topic messages (canvas, write, chat, presence) produced on a node (the home node, in practice) are relayed to every
+//     other node and published on their local brokers, reaching the subscribers there;
+//   - a disconnect of a session joined to a remote room is forwarded so the home node removes
+//     its presence.
+// Remote sessions are known on the home node as "{origin}/{boot}/{sessionId}", boot being a
+// random id per process start.
+//
+// Every node heartbeats its peers. A home node expires the remote sessions of an origin it
+// hasn't heard from for the peer timeout, and those of an origin's previous boot once it
+// heartbeats with a new one, so the users of a crashed node don't stay in presence as ghosts.
+@Component
+public class ClusterRelay {
+    private static final Logger logger = LoggerFactory.getLogger(ClusterRelay.class);
+
+    // marks messages that arrived from another node so they are never forwarded again
+    static final String RELAYED_HEADER = "realscribeRelayed";
+
+    private static final String APP_ROOM_PREFIX = "/app/room/";
+    private static final List<String> TOPIC_ROOM_PREFIXES = List.of("/topic/room.", "/topic/write/room.");
+    private static final String CONTENT_TYPE = "contentType";
+    // session attributes travel in the envelope headers under this prefix
+    private static final String ATTRIBUTE_PREFIX = "attr.";
+    private static final List<String> FORWARDED_ATTRIBUTES = List.of("userId", "name", "roomId");
+    private static final String BOOT_HEADER = "boot";
+
+    private final ClusterService cluster;
+    private final MessageChannel clientInboundChannel;
+    private final MessageChannel brokerChannel;
+    private final ApplicationEventPublisher events;
+    private final long peerTimeoutMillis;
+    private final String boot = UUID.randomUUID().toString();
+
+    // qualified remote session id -> the session attributes this node keeps for it
+    private final Map<String, Map<String, Object>> remoteSessions = new ConcurrentHashMap<>();
+    // origin node -> when anything last arrived from it
+    private final Map<String, Long> lastHeard = new ConcurrentHashMap<>();
+    // origin node -> boot id of its last heartbeat
+    private final Map<String, String> peerBoots = new ConcurrentHashMap<>();
+
+    private final AtomicLong forwarded = new AtomicLong();
+    private final AtomicLong relayedOut = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong expiredSessions = new AtomicLong();
+
+    private final ChannelInterceptor inbound = new ChannelInterceptor() {
+        @Override
+        public Message<?> preSend(Message<?> message, MessageChannel channel) {
+            return forwardIfRemote(message);
+        }
+    };
+
+    private final ChannelInterceptor broker = new ChannelInterceptor() {
+        @Override
+        public Message<?> preSend(Message<?> message, MessageChannel channel) {
+            relayBroadcast(message);
+            return message;
+        }
+    };
+
+    // channels are lazy: they are built from the broker configuration, which uses these interceptors
+    public ClusterRelay(
+            ClusterService cluster,
+            @Lazy @Qualifier("clientInboundChannel") MessageChannel clientInboundChannel,
+            @Lazy @Qualifier("brokerChannel") MessageChannel brokerChannel,
+            ApplicationEventPublisher events,
+            @Value("${realscribe.cluster.peer-timeout-ms:15000}") long peerTimeoutMillis) {
+        this.cluster = cluster;
+        this.clientInboundChannel = clientInboundChannel;
+        this.brokerChannel = brokerChannel;
+        this.events = events;
+        this.peerTimeoutMillis = peerTimeoutMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        cluster.start(this::receive);
+    }
+
+    public ChannelInterceptor inboundInterceptor() {
+        return inbound;
+    }
+
+    public ChannelInterceptor brokerInterceptor() {
+        return broker;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>(cluster.stats());
+        stats.put("remoteSessions", (long) remoteSessions.size());
+        stats.put("forwarded", forwarded.get());
+        stats.put("relayedBroadcasts", relayedOut.get());
+        stats.put("received", received.get());
+        stats.put("expiredSessions", expiredSessions.get());
+        return stats;
+    }
+
+    @Scheduled(fixedDelayString = "${realscribe.cluster.heartbeat-interval-ms:5000}")
+    public void heartbeat() {
+        if (!cluster.enabled()) {
+            return;
+        }
+        cluster.broadcast(new ClusterEnvelope(ClusterEnvelope.Kind.HEARTBEAT, cluster.selfId(),
+                null, null, null, Map.of(BOOT_HEADER, boot), null));
+        expireSilentPeers(System.currentTimeMillis());
+    }
+
+    // Drops the sessions of origins that have been silent for longer than the peer timeout.
+    void expireSilentPeers(long now) {
+        for (Map.Entry<String, Long> entry : lastHeard.entrySet()) {
+            String origin = entry.getKey();
+            Long heard = entry.getValue();
+            if (now - heard > peerTimeoutMillis && lastHeard.remove(origin, heard)) {
+                logger.warn("cluster_peer_silent node={} silentMs={}", origin, now - heard);
+                expireSessions(origin + "/");
+            }
+        }
+    }
+
+    // Batches from peers (loopback transport, or ClusterController for http).
+    public void receive(List<ClusterEnvelope> envelopes) {
+        for (ClusterEnvelope envelope : envelopes) {
+            received.incrementAndGet();
+            if (envelope.origin() != null) {
+                lastHeard.put(envelope.origin(), System.currentTimeMillis());
+            }
+            try {
+                switch (envelope.kind()) {
+                    case INBOUND -> applyInbound(envelope);
+                    case BROADCAST -> applyBroadcast(envelope);
+                    case DISCONNECT -> applyDisconnect(envelope);
+                    case HEARTBEAT -> applyHeartbeat(envelope);
+                }
+            } catch (Exception e) {
+                logger.error("cluster_receive_failed kind={} roomId={} origin={} error={}",
+                        envelope.kind(), envelope.roomId(), envelope.origin(), e.toString());
+            }
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        if (!cluster.enabled()) {
+            return;
+        }
+        Map<String, Object> attributes = SimpMessageHeaderAccessor.getSessionAttributes(event.getMessage().getHeaders());
+        Object roomId = attributes != null ? attributes.get("roomId") : null;
+        if (!(roomId instanceof String room) || cluster.isLocal(room)) {
+            return;
+        }
+        cluster.send(cluster.homeOf(room), new ClusterEnvelope(ClusterEnvelope.Kind.DISCONNECT, cluster.selfId(),
+                room, null, qualify(event.getSessionId()), Map.of(ATTRIBUTE_PREFIX + "roomId", room), null));
+    }
+
+    private Message<?> forwardIfRemote(Message<?> message) {
+        if (!cluster.enabled()) {
+            return message;
+        }
+        MessageHeaders headers = message.getHeaders();
+        if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE
+                || headers.containsKey(RELAYED_HEADER)
+                || !(message.getPayload() instanceof byte[] payload)) {
+            return message;
+        }
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        String roomId = appRoomId(destination);
+        if (roomId == null || cluster.isLocal(roomId)) {
+            return message;
+        }
+
+        Map<String, Object> attributes = SimpMessageHeaderAccessor.getSessionAttributes(headers);
+        if (attributes != null && destination.endsWith("/presence.join")) {
+            // so this node knows where to forward the session's disconnect
+            attributes.put("roomId", roomId);
+        }
+        Map<String, String> envelopeHeaders = new HashMap<>();
+        Object contentType = headers.get(MessageHeaders.CONTENT_TYPE);
+        if (contentType != null) {
+            envelopeHeaders.put(CONTENT_TYPE, contentType.toString());
+        }
+        if (attributes != null) {
+            for (String name : FORWARDED_ATTRIBUTES) {
+                if (attributes.get(name) instanceof String value) {
+                    envelopeHeaders.put(ATTRIBUTE_PREFIX + name, value);
+                }
+            }
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        cluster.send(cluster.homeOf(roomId), new ClusterEnvelope(ClusterEnvelope.Kind.INBOUND, cluster.selfId(),
+                roomId, destination, qualify(sessionId), envelopeHeaders, payload));
+        forwarded.incrementAndGet();
+        // handled by the home node
+        return null;
+    }
+
+    private void relayBroadcast(Message<?> message) {
+        if (!cluster.enabled()) {
+            return;
+        }
+        MessageHeaders headers = message.getHeaders();
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        String roomId = topicRoomId(destination);
+        if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE
+                || headers.containsKey(RELAYED_HEADER)
+                || roomId == null
+                || !(message.getPayload() instanceof byte[] payload)) {
+            return;
+        }
+        Map<String, String> envelopeHeaders = new HashMap<>();
+        Object contentType = headers.get(MessageHeaders.CONTENT_TYPE);
+        if (contentType != null) {
+            envelopeHeaders.put(CONTENT_TYPE, contentType.toString());
+        }
+        cluster.broadcast(new ClusterEnvelope(ClusterEnvelope.Kind.BROADCAST, cluster.selfId(),
+                roomId, destination, null, envelopeHeaders, payload));
+        relayedOut.incrementAndGet();
+    }
+
+    private void applyInbound(ClusterEnvelope envelope) {
+        Map<String, Object> attributes = remoteSessions.computeIfAbsent(envelope.sessionId(), k -> new ConcurrentHashMap<>());
+        envelope.headers().forEach((name, value) -> {
+            if (name.startsWith(ATTRIBUTE_PREFIX)) {
+                attributes.put(name.substring(ATTRIBUTE_PREFIX.length()), value);
+            }
+        });
+
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SEND);
+        accessor.setDestination(envelope.destination());
+        accessor.setSessionId(envelope.sessionId());
+        accessor.setSessionAttributes(attributes);
+        String contentType = envelope.headers().get(CONTENT_TYPE);
+        if (contentType != null) {
+            accessor.setContentType(MimeType.valueOf(contentType));
+        }
+        accessor.setHeader(RELAYED_HEADER, Boolean.TRUE);
+        clientInboundChannel.send(MessageBuilder.createMessage(envelope.payload(), accessor.getMessageHeaders()));
+    }
+
+    private void applyBroadcast(ClusterEnvelope envelope) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(envelope.destination());
+        String contentType = envelope.headers().get(CONTENT_TYPE);
+        if (contentType != null) {
+            accessor.setContentType(MimeType.valueOf(contentType));
+        }
+        accessor.setHeader(RELAYED_HEADER, Boolean.TRUE);
+        brokerChannel.send(MessageBuilder.createMessage(envelope.payload(), accessor.getMessageHeaders()));
+    }
+
+    // Replays the disconnect locally so presence, stroke aggregation etc. clean up the remote session.
+    private void applyDisconnect(ClusterEnvelope envelope) {
+        disconnectRemote(envelope.sessionId(), remoteSessions.remove(envelope.sessionId()), envelope.roomId());
+    }
+
+    private void applyHeartbeat(ClusterEnvelope envelope) {
+        String peerBoot = envelope.headers().get(BOOT_HEADER);
+        if (peerBoot == null) {
+            return;
+        }
+        String previous = peerBoots.put(envelope.origin(), peerBoot);
+        if (previous != null && !previous.equals(peerBoot)) {
+            // the node restarted; nothing it had open before survived
+            logger.warn("cluster_peer_restarted node={}", envelope.origin());
+            expireSessions(envelope.origin() + "/" + previous + "/");
+        }
+    }
+
+    private void expireSessions(String prefix) {
+        for (String sessionId : remoteSessions.keySet()) {
+            if (!sessionId.startsWith(prefix)) {
+                continue;
+            }
+            Map<String, Object> attributes = remoteSessions.remove(sessionId);
+            if (attributes != null) {
+                expiredSessions.incrementAndGet();
+                disconnectRemote(sessionId, attributes, null);
+            }
+        }
+    }
+
+    private void disconnectRemote(String sessionId, Map<String, Object> attributes, String roomId) {
+        if (attributes == null) {
+            attributes = new HashMap<>();
+        }
+        if (roomId != null) {
+            attributes.putIfAbsent("roomId", roomId);
+        }
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.DISCONNECT);
+        accessor.setSessionId(sessionId);
+        accessor.setSessionAttributes(attributes);
+        accessor.setHeader(RELAYED_HEADER, Boolean.TRUE);
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+        events.publishEvent(new SessionDisconnectEvent(this, message, sessionId, CloseStatus.NORMAL));
+    }
+
+    private String qualify(String sessionId) {
+        return cluster.selfId() + "/" + boot + "/" + sessionId;
+    }
+
+    // /app/room/{roomId}/... -> roomId
+    private static String appRoomId(String destination) {
+        if (destination == null || !destination.startsWith(APP_ROOM_PREFIX)) {
+            return null;
+        }
+        int end = destination.indexOf('/', APP_ROOM_PREFIX.length());
+        return end < 0 ? null : destination.substring(APP_ROOM_PREFIX.length(), end);
+    }
+
+    // /topic/room.{roomId}[.chat|.presence] and /topic/write/room.{roomId} -> roomId
+    private static String topicRoomId(String destination) {
+        if (destination == null) {
+            return null;
+        }
+        for (String prefix : TOPIC_ROOM_PREFIXES) {
+            if (destination.startsWith(prefix)) {
+                int end = destination.indexOf('.', prefix.length());
+                return end < 0 ? destination.substring(prefix.length()) : destination.substring(prefix.length(), end);
+            }
+        }
+        return null;
+    }
+}
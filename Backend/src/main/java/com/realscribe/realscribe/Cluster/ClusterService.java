@@ -0,0 +1,153 @@
+package com.realscribe.realscribe.Cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.function.Consumer;
+
+// Cluster membership and room placement. Every room has a home node, picked by consistent
+// hashing over the configured node list; the home node owns the room's live state (canvas
+// cache, text document, chat ring, presence) and applies all of its operations. With the
+// cluster disabled (the default) this node is home to every room and nothing is forwarded.
+//
+// Membership is static: every node is started with the same node list. Changing it moves the
+// rooms on the affected arcs, whose clients then resync from the REST snapshots.
+@Service
+public class ClusterService {
+    private static final Logger logger = LoggerFactory.getLogger(ClusterService.class);
+
+    private final boolean enabled;
+    private final String selfId;
+    private final Map<String, String> nodeUrls;
+    // where browsers reach each node; nodeUrls are peer-to-peer and may not be reachable publicly
+    private final Map<String, String> publicUrls;
+    private final ConsistentHashRing ring;
+    private final ClusterTransport transport;
+    private final byte[] secret;
+
+    public ClusterService(
+            ObjectMapper objectMapper,
+            @Value("${realscribe.cluster.enabled:false}") boolean enabled,
+            @Value("${realscribe.cluster.node-id:local}") String selfId,
+            @Value("${realscribe.cluster.nodes:}") String nodes,
+            @Value("${realscribe.cluster.public-urls:}") String publicUrls,
+            @Value("${realscribe.cluster.transport:http}") String transport,
+            @Value("${realscribe.cluster.secret:}") String secret,
+            @Value("${realscribe.cluster.points-per-node:128}") int pointsPerNode,
+            @Value("${realscribe.cluster.max-queued-per-peer:10000}") int maxQueuedPerPeer) {
+        this.enabled = enabled;
+        this.selfId = selfId.trim();
+        this.nodeUrls = parseNodes(nodes);
+        this.publicUrls = parseNodes(publicUrls);
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+
+        if (!enabled) {
+            this.ring = null;
+            this.transport = null;
+            return;
+        }
+        if (!nodeUrls.containsKey(this.selfId)) {
+            throw new IllegalStateException("realscribe.cluster.nodes must include this node (" + this.selfId + ")");
+        }
+        this.ring = new ConsistentHashRing(nodeUrls.keySet(), Math.max(1, pointsPerNode));
+        this.transport = switch (transport.trim().toLowerCase(Locale.ROOT)) {
+            case "loopback" -> new LoopbackClusterTransport();
+            case "http" -> {
+                if (secret.isBlank()) {
+                    throw new IllegalStateException("realscribe.cluster.secret is required for the http transport");
+                }
+                yield new HttpClusterTransport(nodeUrls, secret, objectMapper, maxQueuedPerPeer);
+            }
+            default -> throw new IllegalStateException("Unknown realscribe.cluster.transport: " + transport);
+        };
+        logger.info("cluster_enabled nodeId={} nodes={} transport={}", this.selfId, nodeUrls.keySet(), transport);
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public String selfId() {
+        return selfId;
+    }
+
+    public String homeOf(String roomId) {
+        return enabled ? ring.nodeFor(roomId) : selfId;
+    }
+
+    public boolean isLocal(String roomId) {
+        return !enabled || roomId == null || selfId.equals(ring.nodeFor(roomId));
+    }
+
+    // the node's public base url, if one is configured
+    public Optional<String> publicUrlOf(String nodeId) {
+        return Optional.ofNullable(publicUrls.get(nodeId)).filter(url -> !url.isEmpty());
+    }
+
+    void start(Consumer<List<ClusterEnvelope>> receiver) {
+        if (enabled) {
+            transport.start(selfId, receiver);
+        }
+    }
+
+    void send(String nodeId, ClusterEnvelope envelope) {
+        transport.send(nodeId, envelope);
+    }
+
+    // to every other node
+    void broadcast(ClusterEnvelope envelope) {
+        for (String node : ring.nodes()) {
+            if (!node.equals(selfId)) {
+                transport.send(node, envelope);
+            }
+        }
+    }
+
+    boolean acceptsSecret(String presented) {
+        return enabled && presented != null && secret.length > 0
+                && MessageDigest.isEqual(secret, presented.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (transport != null) {
+            transport.stop();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("nodeId", selfId);
+        if (enabled) {
+            stats.put("nodes", ring.nodes());
+            stats.put("transport", transport.stats());
+        }
+        return stats;
+    }
+
+    // "a=http://10.0.0.1:8080,b=http://10.0.0.2:8080"; loopback nodes can omit the url ("a,b")
+    private static Map<String, String> parseNodes(String nodes) {
+        Map<String, String> urls = new LinkedHashMap<>();
+        for (String entry : nodes.split(",")) {
+            String trimmed = entry.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int eq = trimmed.indexOf('=');
+            if (eq < 0) {
+                urls.put(trimmed, "");
+            } else {
+                urls.put(trimmed.substring(0, eq).trim(), trimmed.substring(eq + 1).trim());
+            }
+        }
+        return urls;
+    }
+}
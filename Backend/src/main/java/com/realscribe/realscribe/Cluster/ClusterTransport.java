@@ -0,0 +1,19 @@
+package com.realscribe.realscribe.Cluster;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// How envelopes travel between nodes. Implementations must deliver the envelopes sent to one
+// node in the order they were sent; delivery is best effort (a node that is down misses them).
+public interface ClusterTransport {
+
+    // Starts receiving; envelopes addressed to this node are handed to the receiver in batches.
+    void start(String selfId, Consumer<List<ClusterEnvelope>> receiver);
+
+    void send(String nodeId, ClusterEnvelope envelope);
+
+    void stop();
+
+    Map<String, Long> stats();
+}
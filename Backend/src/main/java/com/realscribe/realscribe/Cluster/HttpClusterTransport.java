@@ -0,0 +1,142 @@
+package com.realscribe.realscribe.Cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Envelopes travel as JSON batches POSTed to the peer's /internal/cluster/envelopes
+// (ClusterController), authenticated with the shared cluster secret. Each peer has its own
+// bounded queue and sender thread, so envelopes to a peer keep their order and a slow or dead
+// peer only backs up its own queue; past the bound new envelopes for it are dropped.
+public class HttpClusterTransport implements ClusterTransport {
+    private static final Logger logger = LoggerFactory.getLogger(HttpClusterTransport.class);
+
+    public static final String PATH = "/internal/cluster/envelopes";
+    public static final String SECRET_HEADER = "X-Cluster-Secret";
+
+    private static final int MAX_BATCH = 256;
+
+    private final Map<String, String> peerUrls;
+    private final String secret;
+    private final ObjectMapper objectMapper;
+    private final int maxQueued;
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+    private final Map<String, Peer> peers = new LinkedHashMap<>();
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public HttpClusterTransport(Map<String, String> peerUrls, String secret, ObjectMapper objectMapper, int maxQueued) {
+        this.peerUrls = Map.copyOf(peerUrls);
+        this.secret = secret;
+        this.objectMapper = objectMapper;
+        this.maxQueued = Math.max(MAX_BATCH, maxQueued);
+    }
+
+    // Incoming batches arrive through ClusterController, which hands them to the relay directly.
+    @Override
+    public void start(String selfId, Consumer<List<ClusterEnvelope>> receiver) {
+        peerUrls.forEach((nodeId, url) -> {
+            if (!nodeId.equals(selfId)) {
+                Peer peer = new Peer(nodeId, URI.create(url.replaceAll("/+$", "") + PATH));
+                peers.put(nodeId, peer);
+                peer.thread.start();
+            }
+        });
+    }
+
+    @Override
+    public void send(String nodeId, ClusterEnvelope envelope) {
+        Peer peer = peers.get(nodeId);
+        if (peer == null || !peer.queue.offer(envelope)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void stop() {
+        peers.values().forEach(peer -> peer.thread.interrupt());
+    }
+
+    @Override
+    public Map<String, Long> stats() {
+        long queued = 0;
+        for (Peer peer : peers.values()) {
+            queued += peer.queue.size();
+        }
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("queued", queued);
+        stats.put("sent", sent.get());
+        stats.put("failed", failed.get());
+        stats.put("dropped", dropped.get());
+        return stats;
+    }
+
+    private final class Peer {
+        private final String nodeId;
+        private final URI uri;
+        private final BlockingQueue<ClusterEnvelope> queue = new ArrayBlockingQueue<>(maxQueued);
+        private final Thread thread;
+
+        private Peer(String nodeId, URI uri) {
+            this.nodeId = nodeId;
+            this.uri = uri;
+            this.thread = new Thread(this::run, "cluster-send-" + nodeId);
+            this.thread.setDaemon(true);
+        }
+
+        private void run() {
+            List<ClusterEnvelope> batch = new ArrayList<>(MAX_BATCH);
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    ClusterEnvelope first = queue.poll(1, TimeUnit.SECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    post(batch);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+
+        private void post(List<ClusterEnvelope> batch) throws InterruptedException {
+            try {
+                HttpRequest request = HttpRequest.newBuilder(uri)
+                        .timeout(Duration.ofSeconds(5))
+                        .header("Content-Type", "application/json")
+                        .header(SECRET_HEADER, secret)
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(batch)))
+                        .build();
+                HttpResponse<Void> response = http.send(request, HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() / 100 != 2) {
+                    throw new IllegalStateException("status " + response.statusCode());
+                }
+                sent.addAndGet(batch.size());
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                // best effort: clients resync presence/canvas/text from the REST snapshots
+                failed.addAndGet(batch.size());
+                logger.warn("cluster_send_failed node={} envelopes={} error={}", nodeId, batch.size(), e.toString());
+            }
+        }
+    }
+}
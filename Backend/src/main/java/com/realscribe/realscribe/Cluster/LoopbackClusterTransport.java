@@ -0,0 +1,51 @@
+package com.realscribe.realscribe.Cluster;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// In-process stand-in for a network: every node started in this JVM registers here and
+// envelopes are handed straight to the target's receiver on the sender's thread. Lets several
+// application contexts form a cluster inside one test or dev process.
+public class LoopbackClusterTransport implements ClusterTransport {
+    private static final Map<String, Consumer<List<ClusterEnvelope>>> NODES = new ConcurrentHashMap<>();
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong unreachable = new AtomicLong();
+    private String selfId;
+
+    @Override
+    public void start(String selfId, Consumer<List<ClusterEnvelope>> receiver) {
+        this.selfId = selfId;
+        NODES.put(selfId, receiver);
+    }
+
+    @Override
+    public void send(String nodeId, ClusterEnvelope envelope) {
+        Consumer<List<ClusterEnvelope>> receiver = NODES.get(nodeId);
+        if (receiver == null) {
+            unreachable.incrementAndGet();
+            return;
+        }
+        sent.incrementAndGet();
+        receiver.accept(List.of(envelope));
+    }
+
+    @Override
+    public void stop() {
+        if (selfId != null) {
+            NODES.remove(selfId);
+        }
+    }
+
+    @Override
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("sent", sent.get());
+        stats.put("unreachable", unreachable.get());
+        return stats;
+    }
+}
@@ -0,0 +1,46 @@
+package com.realscribe.realscribe.Cluster;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+
+// Sends REST reads of a room (canvas, text, chat history, presence) to the room's home node
+// with a 307, since only that node has the live state; other nodes would answer from a stale
+// or empty cache. The redirect goes to the home's public url (realscribe.cluster.public-urls),
+// never to its peer url. Rooms homed here, and homes without a public url, pass.
+@Component
+public class RoomHomeRedirectInterceptor implements HandlerInterceptor {
+
+    private final ClusterService cluster;
+
+    public RoomHomeRedirectInterceptor(ClusterService cluster) {
+        this.cluster = cluster;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!cluster.enabled() || !"GET".equals(request.getMethod())) {
+            return true;
+        }
+        Object variables = request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (!(variables instanceof Map<?, ?> vars) || !(vars.get("roomId") instanceof String roomId)
+                || cluster.isLocal(roomId)) {
+            return true;
+        }
+        String url = cluster.publicUrlOf(cluster.homeOf(roomId)).orElse(null);
+        if (url == null) {
+            return true;
+        }
+        String query = request.getQueryString();
+        String location = url + request.getRequestURI() + (query != null ? "?" + query : "");
+        response.setStatus(HttpStatus.TEMPORARY_REDIRECT.value());
+        response.setHeader(HttpHeaders.LOCATION, location);
+        return false;
+    }
+}
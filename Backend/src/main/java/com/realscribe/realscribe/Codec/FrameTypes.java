@@ -0,0 +1,139 @@
+package com.realscribe.realscribe.Codec;
+
+import java.nio.charset.StandardCharsets;
+
+// The message type of a STOMP payload (a binary stroke frame or WsMessage JSON) without
+// decoding it, for the interceptors that only need to classify frames.
+public final class FrameTypes {
+    private static final byte[] TYPE_FIELD = "\"type\"".getBytes(StandardCharsets.UTF_8);
+
+    private FrameTypes() {
+    }
+
+    // null when the payload carries no recognisable type
+    public static String peekType(byte[] payload) {
+        String type = StrokeCodec.peekType(payload);
+        return type != null ? type : peekJsonType(payload);
+    }
+
+    // Value of the top-level "type" field of a JSON frame, found without parsing it. Nested
+    // values and strings are skipped, so a "type" inside the payload can't stand in for the
+    // message's own; a repeated field counts as the last one, as it does when Jackson binds it.
+    // null when the field is missing, not a plain string, or a key or the value uses escapes.
+    static String peekJsonType(byte[] json) {
+        int i = skipSpace(json, 0);
+        if (i >= json.length || json[i] != '{') {
+            return null;
+        }
+        String type = null;
+        i = skipSpace(json, i + 1);
+        if (i < json.length && json[i] == '}') {
+            return null;
+        }
+        while (i < json.length && json[i] == '"') {
+            int keyEnd = skipString(json, i);
+            if (keyEnd < 0 || indexOf(json, i + 1, keyEnd - 1, (byte) '\\') >= 0) {
+                // an escaped key might spell "type"
+                return null;
+            }
+            boolean typeKey = keyEnd - i == TYPE_FIELD.length && regionMatches(json, i, TYPE_FIELD);
+            i = skipSpace(json, keyEnd);
+            if (i >= json.length || json[i] != ':') {
+                return null;
+            }
+            i = skipSpace(json, i + 1);
+            int valueEnd = skipValue(json, i);
+            if (valueEnd < 0) {
+                return null;
+            }
+            if (typeKey) {
+                if (json[i] != '"' || indexOf(json, i + 1, valueEnd - 1, (byte) '\\') >= 0) {
+                    // no message type needs escaping
+                    return null;
+                }
+                type = new String(json, i + 1, valueEnd - i - 2, StandardCharsets.UTF_8);
+            }
+            i = skipSpace(json, valueEnd);
+            if (i < json.length && json[i] == '}') {
+                return type;
+            }
+            if (i >= json.length || json[i] != ',') {
+                return null;
+            }
+            i = skipSpace(json, i + 1);
+        }
+        return null;
+    }
+
+    // index just past the string starting at i, or -1 when it isn't closed
+    private static int skipString(byte[] json, int i) {
+        for (int j = i + 1; j < json.length; j++) {
+            if (json[j] == '\\') {
+                j++;
+            } else if (json[j] == '"') {
+                return j + 1;
+            }
+        }
+        return -1;
+    }
+
+    // index just past the value starting at i, or -1 when it is cut short
+    private static int skipValue(byte[] json, int i) {
+        if (i >= json.length) {
+            return -1;
+        }
+        if (json[i] == '"') {
+            return skipString(json, i);
+        }
+        if (json[i] != '{' && json[i] != '[') {
+            while (i < json.length && json[i] != ',' && json[i] != '}' && json[i] != ']'
+                    && json[i] != ' ' && json[i] != '\t' && json[i] != '\n' && json[i] != '\r') {
+                i++;
+            }
+            return i;
+        }
+        int depth = 0;
+        while (i < json.length) {
+            byte b = json[i];
+            if (b == '"') {
+                i = skipString(json, i);
+                if (i < 0) {
+                    return -1;
+                }
+                continue;
+            }
+            if (b == '{' || b == '[') {
+                depth++;
+            } else if ((b == '}' || b == ']') && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(byte[] bytes, int at, byte[] target) {
+        for (int j = 0; j < target.length; j++) {
+            if (bytes[at + j] != target[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to, byte target) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipSpace(byte[] bytes, int i) {
+        while (i < bytes.length && (bytes[i] == ' ' || bytes[i] == '\t' || bytes[i] == '\n' || bytes[i] == '\r')) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,266 @@
+package com.realscribe.realscribe.Codec;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// STOMP encoder for broker fan-out. convertAndSend already serializes a broadcast to JSON
+// once; the broker then hands that same payload array to every subscriber, and the stock
+// encoder escapes and re-encodes every header and assembles the frame from small chunks
+// once per session. Here the part of a MESSAGE frame that is the same for every subscriber
+// (command, destination, content-type, custom headers, content-length) is encoded once per
+// broadcast; each session only adds its subscription and message-id lines, and the frame is
+// written into one exactly-sized array.
+//
+// A broadcast is told apart by a key object that broadcastTagger() puts on every message
+// entering the broker channel. The broker copies it onto each subscriber's message, and the
+// encoded heads are kept on the key itself, so there is no shared cache to lock. A head is only
+// reused for the same payload array and the same shared headers: outbound interceptors may give
+// some subscribers another variant of the broadcast (the binary stroke encoding), and each
+// variant keeps its own head. Frames without a key (sent straight to the outbound channel)
+// get their head encoded each time.
+//
+// The frame array is handed to the WebSocket session and may sit in its send buffer, so it
+// is allocated per send rather than pooled; the single allocation replaces the stock
+// encoder's chunk list plus final copy.
+public class SharedFrameStompEncoder extends StompEncoder {
+    private static final byte[] MESSAGE_COMMAND = "MESSAGE\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SUBSCRIPTION = "subscription:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] MESSAGE_ID = "message-id:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CONTENT_LENGTH = "content-length:".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte LF = '\n';
+
+    static final String FRAME_KEY_HEADER = "realscribeFrameKey";
+
+    // variants of one broadcast whose heads are kept; more are encoded per frame
+    private static final int MAX_VARIANTS = 4;
+
+    // payload is compared by identity, which also pins the content-length in the head
+    private record SharedHead(byte[] payload, Map<String, List<String>> headers, byte[] bytes) {}
+
+    // One per broadcast, shared by its subscribers' messages. Heads are added under the key's
+    // own monitor and read without it.
+    static final class FrameKey {
+        private volatile SharedHead[] heads = new SharedHead[0];
+        // the broadcast's binary stroke encoding, filled by StrokeCodecInterceptor
+        volatile byte[] strokeJson;
+        volatile byte[] strokeBinary;
+    }
+
+    static FrameKey frameKey(Map<String, Object> headers) {
+        return headers.get(FRAME_KEY_HEADER) instanceof FrameKey key ? key : null;
+    }
+
+    private final ChannelInterceptor broadcastTagger = new ChannelInterceptor() {
+        @Override
+        public Message<?> preSend(Message<?> message, MessageChannel channel) {
+            if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE
+                    || message.getHeaders().containsKey(FRAME_KEY_HEADER)) {
+                return message;
+            }
+            MessageHeaderAccessor accessor = MessageHeaderAccessor.getMutableAccessor(message);
+            accessor.setHeader(FRAME_KEY_HEADER, new FrameKey());
+            return MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+        }
+    };
+
+    private final AtomicLong sharedFrames = new AtomicLong();
+    private final AtomicLong encodedHeads = new AtomicLong();
+
+    @Override
+    public byte[] encode(Map<String, Object> headers, byte[] payload) {
+        if (SimpMessageHeaderAccessor.getMessageType(headers) == SimpMessageType.HEARTBEAT
+                || StompHeaderAccessor.getCommand(headers) != StompCommand.MESSAGE) {
+            return super.encode(headers, payload);
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, List<String>> nativeHeaders =
+                (Map<String, List<String>>) headers.get(NativeMessageHeaderAccessor.NATIVE_HEADERS);
+        if (nativeHeaders == null) {
+            return super.encode(headers, payload);
+        }
+        String subscription = single(nativeHeaders, StompHeaderAccessor.STOMP_SUBSCRIPTION_HEADER);
+        String messageId = single(nativeHeaders, StompHeaderAccessor.STOMP_MESSAGE_ID_HEADER);
+        if (subscription == null || messageId == null) {
+            return super.encode(headers, payload);
+        }
+
+        SharedHead head = sharedHead(frameKey(headers), nativeHeaders, payload);
+        byte[] sub = escape(subscription);
+        byte[] id = escape(messageId);
+        int length = head.bytes.length + SUBSCRIPTION.length + sub.length + 1
+                + MESSAGE_ID.length + id.length + 1 + 1 + payload.length + 1;
+
+        byte[] frame = new byte[length];
+        int pos = put(frame, 0, head.bytes);
+        pos = put(frame, pos, SUBSCRIPTION);
+        pos = put(frame, pos, sub);
+        frame[pos++] = LF;
+        pos = put(frame, pos, MESSAGE_ID);
+        pos = put(frame, pos, id);
+        frame[pos++] = LF;
+        frame[pos++] = LF;
+        pos = put(frame, pos, payload);
+        frame[pos] = 0;
+        sharedFrames.incrementAndGet();
+        return frame;
+    }
+
+    // For the broker channel: marks each broadcast so its subscribers share one head.
+    public ChannelInterceptor broadcastTagger() {
+        return broadcastTagger;
+    }
+
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("sharedFrames", sharedFrames.get());
+        stats.put("encodedHeads", encodedHeads.get());
+        return stats;
+    }
+
+    private SharedHead sharedHead(FrameKey key, Map<String, List<String>> nativeHeaders, byte[] payload) {
+        if (key != null) {
+            for (SharedHead head : key.heads) {
+                if (head.payload == payload && sameSharedHeaders(head.headers, nativeHeaders)) {
+                    return head;
+                }
+            }
+        }
+        Map<String, List<String>> shared = new LinkedHashMap<>();
+        nativeHeaders.forEach((name, values) -> {
+            if (!isPerSession(name)) {
+                shared.put(name, List.copyOf(values));
+            }
+        });
+        SharedHead head = new SharedHead(payload, shared, encodeHead(shared, payload.length));
+        encodedHeads.incrementAndGet();
+        if (key != null) {
+            synchronized (key) {
+                if (key.heads.length < MAX_VARIANTS) {
+                    SharedHead[] heads = Arrays.copyOf(key.heads, key.heads.length + 1);
+                    heads[heads.length - 1] = head;
+                    key.heads = heads;
+                }
+            }
+        }
+        return head;
+    }
+
+    private static boolean sameSharedHeaders(Map<String, List<String>> shared, Map<String, List<String>> nativeHeaders) {
+        int count = 0;
+        for (Map.Entry<String, List<String>> entry : nativeHeaders.entrySet()) {
+            if (isPerSession(entry.getKey())) {
+                continue;
+            }
+            if (!entry.getValue().equals(shared.get(entry.getKey()))) {
+                return false;
+            }
+            count++;
+        }
+        return count == shared.size();
+    }
+
+    private static boolean isPerSession(String name) {
+        return StompHeaderAccessor.STOMP_SUBSCRIPTION_HEADER.equals(name)
+                || StompHeaderAccessor.STOMP_MESSAGE_ID_HEADER.equals(name)
+                || StompHeaderAccessor.STOMP_CONTENT_LENGTH_HEADER.equals(name);
+    }
+
+    // MESSAGE command plus the shared headers, ending with content-length
+    private static byte[] encodeHead(Map<String, List<String>> shared, int contentLength) {
+        ByteArrayBuilder out = new ByteArrayBuilder(256);
+        out.add(MESSAGE_COMMAND);
+        for (Map.Entry<String, List<String>> entry : shared.entrySet()) {
+            byte[] encodedKey = escape(entry.getKey());
+            for (String value : entry.getValue()) {
+                out.add(encodedKey);
+                out.add((byte) ':');
+                out.add(escape(value));
+                out.add(LF);
+            }
+        }
+        out.add(CONTENT_LENGTH);
+        out.add(Integer.toString(contentLength).getBytes(StandardCharsets.UTF_8));
+        out.add(LF);
+        return out.toByteArray();
+    }
+
+    private static String single(Map<String, List<String>> nativeHeaders, String name) {
+        List<String> values = nativeHeaders.get(name);
+        return values == null || values.size() != 1 ? null : values.get(0);
+    }
+
+    // STOMP 1.2 header escaping, as the stock encoder does for MESSAGE frames
+    private static byte[] escape(String s) {
+        StringBuilder sb = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            String replacement = switch (c) {
+                case '\\' -> "\\\\";
+                case ':' -> "\\c";
+                case '\n' -> "\\n";
+                case '\r' -> "\\r";
+                default -> null;
+            };
+            if (replacement != null && sb == null) {
+                sb = new StringBuilder(s.length() + 8).append(s, 0, i);
+            }
+            if (sb != null) {
+                if (replacement != null) {
+                    sb.append(replacement);
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        return (sb != null ? sb.toString() : s).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int put(byte[] dst, int pos, byte[] src) {
+        System.arraycopy(src, 0, dst, pos, src.length);
+        return pos + src.length;
+    }
+
+    private static final class ByteArrayBuilder {
+        private byte[] buf;
+        private int len;
+
+        private ByteArrayBuilder(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        private void add(byte b) {
+            ensure(1);
+            buf[len++] = b;
+        }
+
+        private void add(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, len, bytes.length);
+            len += bytes.length;
+        }
+
+        private void ensure(int extra) {
+            if (len + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + extra));
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buf, len);
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package com.realscribe.realscribe.Codec;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.realscribe.realscribe.DTO.WsMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Compact binary form of stroke_move / stroke_end.
+//
+// Points are quantized (coordinates to 1/100 px, pressure to 1/1000) and written as zigzag
+// varint deltas from the previous point, so a typical point costs 2-4 bytes instead of
+// ~30 characters of JSON. Only payloads made of points/currentStrokes plus tool, width and
+// color are encodable; anything else returns null and stays JSON.
+//
+// message := MAGIC VERSION type:u8 roomId userId strokeId name seq payload
+// payload := flags:u8 [tool] [color] [width:zz] count:varint dims:u8 (dx dy [dp])*
+// strings are varint(length + 1) then UTF-8, with 0 meaning null; seq is varint(seq + 1).
+// Decoding rejects unknown type bytes and flags, dims other than 2 or 3, a count the
+// remaining bytes can't hold, and trailing bytes, with IllegalArgumentException.
+//
+// Frontend/src/utils/strokeCodec.js is the client side; both are checked against the byte
+// vectors in src/test/resources/stroke-codec-v1-vectors.json.
+public final class StrokeCodec {
+    public static final String HEADER = "stroke-codec";
+    public static final String VERSION_NAME = "v1";
+
+    private static final int MAGIC = 0xB5;
+    private static final int VERSION = 1;
+
+    private static final int TYPE_STROKE_MOVE = 1;
+    private static final int TYPE_STROKE_END = 2;
+
+    private static final int HAS_TOOL = 1;
+    private static final int HAS_COLOR = 1 << 1;
+    private static final int HAS_WIDTH = 1 << 2;
+    // points live under "currentStrokes" (stroke_end) instead of "points"
+    private static final int END_POINTS = 1 << 3;
+    private static final int KNOWN_FLAGS = HAS_TOOL | HAS_COLOR | HAS_WIDTH | END_POINTS;
+
+    private static final double COORD_SCALE = 100.0;
+    private static final double PRESSURE_SCALE = 1000.0;
+    private static final double WIDTH_SCALE = 100.0;
+
+    private static final Set<String> PAYLOAD_FIELDS = Set.of("points", "currentStrokes", "tool", "color", "width");
+
+    private StrokeCodec() {
+    }
+
+    public static boolean isStroke(String type) {
+        return "stroke_move".equals(type) || "stroke_end".equals(type);
+    }
+
+    // Encodes a broadcast WsMessage given as its JSON tree. Null when the message is not a
+    // stroke or carries anything the format can't represent.
+    public static byte[] encodeMessage(JsonNode message) {
+        String type = message.path("type").asText(null);
+        if (!isStroke(type)) {
+            return null;
+        }
+        JsonNode seq = message.get("seq");
+        if (seq != null && !seq.isNull() && !seq.canConvertToLong()) {
+            return null;
+        }
+        Writer out = new Writer(64);
+        out.u8(MAGIC);
+        out.u8(VERSION);
+        out.u8("stroke_move".equals(type) ? TYPE_STROKE_MOVE : TYPE_STROKE_END);
+        out.string(text(message, "roomId"));
+        out.string(text(message, "userId"));
+        out.string(text(message, "strokeId"));
+        out.string(text(message, "name"));
+        out.varint(seq == null || seq.isNull() ? 0 : seq.asLong() + 1);
+        return writePayload(out, message.get("payload")) ? out.toByteArray() : null;
+    }
+
+    // The message type of an encoded frame without decoding it; null when it is not one.
+    public static String peekType(byte[] bytes) {
+        if (bytes.length < 3 || (bytes[0] & 0xff) != MAGIC || bytes[1] != VERSION) {
+            return null;
+        }
+        return switch (bytes[2]) {
+            case TYPE_STROKE_MOVE -> "stroke_move";
+            case TYPE_STROKE_END -> "stroke_end";
+            default -> null;
+        };
+    }
+
+    public static WsMessage decodeMessage(byte[] bytes) {
+        Reader in = new Reader(bytes);
+        if (in.u8() != MAGIC || in.u8() != VERSION) {
+            throw new IllegalArgumentException("Not a v1 stroke frame");
+        }
+        WsMessage message = new WsMessage();
+        message.setType(switch (in.u8()) {
+            case TYPE_STROKE_MOVE -> "stroke_move";
+            case TYPE_STROKE_END -> "stroke_end";
+            default -> throw new IllegalArgumentException("Unknown stroke frame type");
+        });
+        message.setRoomId(in.string());
+        message.setUserId(in.string());
+        message.setStrokeId(in.string());
+        message.setName(in.string());
+        long seq = in.varint();
+        message.setSeq(seq == 0 ? null : seq - 1);
+        message.setPayload(toMap(readPayload(in)));
+        in.end();
+        return message;
+    }
+
+    // Payload only, for storage. Null when not encodable.
+    public static byte[] encodePayload(JsonNode payload) {
+        Writer out = new Writer(64);
+        out.u8(VERSION);
+        return writePayload(out, payload) ? out.toByteArray() : null;
+    }
+
+    public static JsonNode decodePayload(byte[] bytes) {
+        Reader in = new Reader(bytes);
+        if (in.u8() != VERSION) {
+            throw new IllegalArgumentException("Unknown stroke payload version");
+        }
+        ObjectNode payload = readPayload(in);
+        in.end();
+        return payload;
+    }
+
+    private static boolean writePayload(Writer out, JsonNode payload) {
+        if (payload == null || !payload.isObject()) {
+            return false;
+        }
+        Iterator<String> names = payload.fieldNames();
+        while (names.hasNext()) {
+            if (!PAYLOAD_FIELDS.contains(names.next())) {
+                return false;
+            }
+        }
+        JsonNode tool = payload.get("tool");
+        JsonNode color = payload.get("color");
+        JsonNode width = payload.get("width");
+        boolean end = payload.has("currentStrokes");
+        JsonNode points = end ? payload.get("currentStrokes") : payload.get("points");
+        if ((tool != null && !tool.isTextual()) || (color != null && !color.isTextual())
+                || (width != null && !width.isNumber()) || points == null || !points.isArray()
+                || (end && payload.has("points"))) {
+            return false;
+        }
+
+        int dims = points.isEmpty() ? 2 : points.get(0).size();
+        if (dims != 2 && dims != 3) {
+            return false;
+        }
+        for (JsonNode point : points) {
+            if (!point.isArray() || point.size() != dims) {
+                return false;
+            }
+            for (JsonNode v : point) {
+                if (!v.isNumber()) {
+                    return false;
+                }
+            }
+        }
+
+        int flags = (tool != null ? HAS_TOOL : 0) | (color != null ? HAS_COLOR : 0)
+                | (width != null ? HAS_WIDTH : 0) | (end ? END_POINTS : 0);
+        out.u8(flags);
+        if (tool != null) out.string(tool.asText());
+        if (color != null) out.string(color.asText());
+        if (width != null) out.zigzag(Math.round(width.asDouble() * WIDTH_SCALE));
+        out.varint(points.size());
+        out.u8(dims);
+        long px = 0, py = 0, pp = 0;
+        for (JsonNode point : points) {
+            long x = Math.round(point.get(0).asDouble() * COORD_SCALE);
+            long y = Math.round(point.get(1).asDouble() * COORD_SCALE);
+            out.zigzag(x - px);
+            out.zigzag(y - py);
+            px = x;
+            py = y;
+            if (dims == 3) {
+                long p = Math.round(point.get(2).asDouble() * PRESSURE_SCALE);
+                out.zigzag(p - pp);
+                pp = p;
+            }
+        }
+        return true;
+    }
+
+    private static ObjectNode readPayload(Reader in) {
+        JsonNodeFactory f = JsonNodeFactory.instance;
+        ObjectNode payload = f.objectNode();
+        int flags = in.u8();
+        if ((flags & ~KNOWN_FLAGS) != 0) {
+            throw new IllegalArgumentException("Unknown stroke payload flags");
+        }
+        if ((flags & HAS_TOOL) != 0) payload.put("tool", in.string());
+        if ((flags & HAS_COLOR) != 0) payload.put("color", in.string());
+        if ((flags & HAS_WIDTH) != 0) {
+            long w = in.zigzag();
+            if (w % (long) WIDTH_SCALE == 0) {
+                payload.put("width", w / (long) WIDTH_SCALE);
+            } else {
+                payload.put("width", w / WIDTH_SCALE);
+            }
+        }
+        long count = in.varint();
+        int dims = in.u8();
+        if (dims != 2 && dims != 3) {
+            throw new IllegalArgumentException("Stroke points must have 2 or 3 dimensions");
+        }
+        // every coordinate takes at least one byte
+        if (count > in.remaining() / dims) {
+            throw new IllegalArgumentException("Truncated stroke frame");
+        }
+        ArrayNode points = payload.putArray((flags & END_POINTS) != 0 ? "currentStrokes" : "points");
+        long x = 0, y = 0, p = 0;
+        for (int i = 0; i < count; i++) {
+            x += in.zigzag();
+            y += in.zigzag();
+            ArrayNode point = points.addArray();
+            point.add(x / COORD_SCALE);
+            point.add(y / COORD_SCALE);
+            if (dims == 3) {
+                p += in.zigzag();
+                point.add(p / PRESSURE_SCALE);
+            }
+        }
+        return payload;
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode v = node.get(field);
+        return v == null || v.isNull() ? null : v.asText();
+    }
+
+    private static Map<String, Object> toMap(ObjectNode payload) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        payload.properties().forEach(e -> {
+            JsonNode v = e.getValue();
+            if (v.isArray()) {
+                List<List<Double>> points = new ArrayList<>(v.size());
+                for (JsonNode point : v) {
+                    List<Double> coords = new ArrayList<>(point.size());
+                    point.forEach(c -> coords.add(c.asDouble()));
+                    points.add(coords);
+                }
+                map.put(e.getKey(), points);
+            } else if (v.isTextual()) {
+                map.put(e.getKey(), v.asText());
+            } else {
+                map.put(e.getKey(), v.numberValue());
+            }
+        });
+        return map;
+    }
+
+    private static final class Writer {
+        private byte[] buf;
+        private int len;
+
+        private Writer(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        private void u8(int b) {
+            ensure(1);
+            buf[len++] = (byte) b;
+        }
+
+        private void varint(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[len++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[len++] = (byte) v;
+        }
+
+        private void zigzag(long v) {
+            varint((v << 1) ^ (v >> 63));
+        }
+
+        private void string(String s) {
+            if (s == null) {
+                varint(0);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length + 1L);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, len, bytes.length);
+            len += bytes.length;
+        }
+
+        private void ensure(int extra) {
+            if (len + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + extra));
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buf, len);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] buf;
+        private int pos;
+
+        private Reader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        private int u8() {
+            if (pos >= buf.length) {
+                throw new IllegalArgumentException("Truncated stroke frame");
+            }
+            return buf[pos++] & 0xFF;
+        }
+
+        private long varint() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = u8();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        private long zigzag() {
+            long v = varint();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        private String string() {
+            long n = varint();
+            if (n == 0) {
+                return null;
+            }
+            if (n < 0 || n - 1 > remaining()) {
+                throw new IllegalArgumentException("Truncated stroke frame");
+            }
+            int length = (int) (n - 1);
+            String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+
+        private int remaining() {
+            return buf.length - pos;
+        }
+
+        private void end() {
+            if (pos != buf.length) {
+                throw new IllegalArgumentException("Trailing bytes after stroke frame");
+            }
+        }
+    }
+}
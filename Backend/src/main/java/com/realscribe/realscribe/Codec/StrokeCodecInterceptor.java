@@ -0,0 +1,147 @@
+package com.realscribe.realscribe.Codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Per-connection negotiation of the binary stroke codec.
+//
+// Inbound: a CONNECT carrying "stroke-codec: v1" opts the session in, unless it came over
+// SockJS, which can only carry text frames. Outbound: stroke_move / stroke_end broadcasts to
+// an opted-in session are re-encoded and sent as application/octet-stream with the same
+// header, which makes the STOMP handler write a binary WebSocket frame. Everyone else keeps
+// receiving the JSON the broker produced.
+//
+// Each broadcast is encoded once: the result is kept on the broadcast's frame key (see
+// SharedFrameStompEncoder), which every subscriber's message carries, so opted-in subscribers
+// share it without a shared cache. Messages without a key are encoded on their own.
+@Component
+public class StrokeCodecInterceptor implements ChannelInterceptor {
+    private static final Logger logger = LoggerFactory.getLogger(StrokeCodecInterceptor.class);
+
+    // session attribute set by the SockJS endpoint's handshake interceptor
+    public static final String SOCKJS_ATTRIBUTE = "realscribe.sockjs";
+
+    private static final String ROOM_TOPIC_PREFIX = "/topic/room.";
+    // cached for payloads that are not encodable, so they are parsed only once
+    private static final byte[] NOT_ENCODABLE = new byte[0];
+
+    private final ObjectMapper objectMapper;
+    private final Set<String> binarySessions = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong binaryFrames = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+
+    public StrokeCodecInterceptor(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        if (type == SimpMessageType.CONNECT) {
+            onConnect(message);
+            return message;
+        }
+        if (type != SimpMessageType.MESSAGE) {
+            return message;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (sessionId == null || !binarySessions.contains(sessionId) || !isCanvasTopic(destination)
+                || !(message.getPayload() instanceof byte[] json)) {
+            return message;
+        }
+        // inbound frames have no subscription id; only re-encode what the broker is delivering
+        if (SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders()) == null) {
+            return message;
+        }
+
+        byte[] binary = encode(SharedFrameStompEncoder.frameKey(message.getHeaders()), json);
+        if (binary == NOT_ENCODABLE) {
+            return message;
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        accessor.setNativeHeader(StrokeCodec.HEADER, StrokeCodec.VERSION_NAME);
+        binaryFrames.incrementAndGet();
+        bytesSaved.addAndGet(json.length - binary.length);
+        return MessageBuilder.createMessage(binary, accessor.getMessageHeaders());
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        binarySessions.remove(event.getSessionId());
+    }
+
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("sessions", (long) binarySessions.size());
+        stats.put("binaryFrames", binaryFrames.get());
+        stats.put("bytesSaved", bytesSaved.get());
+        return stats;
+    }
+
+    private void onConnect(Message<?> message) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() != StompCommand.CONNECT) {
+            return;
+        }
+        if (!StrokeCodec.VERSION_NAME.equals(accessor.getFirstNativeHeader(StrokeCodec.HEADER))) {
+            return;
+        }
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if (attributes != null && attributes.containsKey(SOCKJS_ATTRIBUTE)) {
+            logger.debug("stroke_codec_refused sessionId={} reason=sockjs", accessor.getSessionId());
+            return;
+        }
+        binarySessions.add(accessor.getSessionId());
+        logger.debug("stroke_codec_negotiated sessionId={} version={}", accessor.getSessionId(), StrokeCodec.VERSION_NAME);
+    }
+
+    private byte[] encode(SharedFrameStompEncoder.FrameKey key, byte[] json) {
+        if (key != null && key.strokeJson == json) {
+            return key.strokeBinary;
+        }
+        byte[] binary;
+        try {
+            binary = StrokeCodec.encodeMessage(objectMapper.readTree(json));
+        } catch (Exception e) {
+            logger.warn("stroke_codec_encode_failed error={}", e.toString());
+            binary = null;
+        }
+        byte[] result = binary != null ? binary : NOT_ENCODABLE;
+        if (key != null) {
+            // concurrent subscribers of the broadcast may both encode; either result is fine.
+            // Written before the json it belongs to, so a reader that sees the json sees it too
+            key.strokeBinary = result;
+            key.strokeJson = json;
+        }
+        return result;
+    }
+
+    // the canvas topic is /topic/room.{roomId}; chat and presence live under /topic/room.{roomId}.*
+    private static boolean isCanvasTopic(String destination) {
+        return destination != null && destination.startsWith(ROOM_TOPIC_PREFIX)
+                && destination.indexOf('.', ROOM_TOPIC_PREFIX.length()) < 0;
+    }
+}
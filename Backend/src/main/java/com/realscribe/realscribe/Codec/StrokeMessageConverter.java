@@ -0,0 +1,41 @@
+package com.realscribe.realscribe.Codec;
+
+import com.realscribe.realscribe.DTO.WsMessage;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.util.MimeTypeUtils;
+
+// Reads binary stroke frames (content-type application/octet-stream) into WsMessage.
+// Strict content-type matching keeps it out of the way of every JSON frame; outbound
+// encoding happens per session in StrokeCodecInterceptor instead.
+public class StrokeMessageConverter extends AbstractMessageConverter {
+
+    public StrokeMessageConverter() {
+        super(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        setStrictContentTypeMatch(true);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return WsMessage.class == clazz;
+    }
+
+    @Override
+    protected boolean canConvertTo(Object payload, MessageHeaders headers) {
+        return false;
+    }
+
+    @Override
+    protected Object convertFromInternal(Message<?> message, Class<?> targetClass, Object conversionHint) {
+        if (!(message.getPayload() instanceof byte[] bytes)) {
+            return null;
+        }
+        try {
+            return StrokeCodec.decodeMessage(bytes);
+        } catch (IllegalArgumentException e) {
+            throw new MessageConversionException(message, "Malformed stroke frame: " + e.getMessage());
+        }
+    }
+}
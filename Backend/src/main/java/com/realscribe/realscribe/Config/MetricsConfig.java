@@ -0,0 +1,109 @@
+package com.realscribe.realscribe.Config;
+
+import com.realscribe.realscribe.Service.ChatService;
+import com.realscribe.realscribe.Service.ChatWriteBehindService;
+import com.realscribe.realscribe.Service.PresenceService;
+import com.realscribe.realscribe.Service.RoomTaskExecutor;
+import com.realscribe.realscribe.Service.StrokeWriteBehindService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+// Meters over the counters the services already keep, read on each scrape. Timers on the hot
+// paths live next to the code they time; repository calls and the connection pool are
+// instrumented by Spring Boot (spring.data.repository.invocations, hikaricp.*).
+//
+// Room ids are never tags: there is no bound on them, so per-room numbers are exported as
+// totals and the largest room instead.
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder realscribeMeters(
+            PresenceService presence,
+            ChatService chat,
+            RoomTaskExecutor roomTasks,
+            StrokeWriteBehindService strokeWriter,
+            ChatWriteBehindService chatWriter,
+            OutboundBackpressure outbound,
+            RateLimitingInterceptor httpRateLimit,
+            StompRateLimitInterceptor stompRateLimit,
+            @Qualifier("clientInboundChannelExecutor") Executor inboundExecutor,
+            @Qualifier("clientOutboundChannelExecutor") Executor outboundExecutor) {
+        return registry -> {
+            gauge(registry, "realscribe.presence.sessions", presence::stats, "sessions");
+            gauge(registry, "realscribe.presence.rooms", presence::stats, "rooms");
+
+            gauge(registry, "realscribe.chat.rooms", chat::stats, "rooms");
+            gauge(registry, "realscribe.chat.messages", chat::stats, "messages");
+            gauge(registry, "realscribe.chat.largest.room", chat::stats, "largestRoom");
+
+            gauge(registry, "realscribe.room.tasks.queued", roomTasks::stats, "queued");
+            gauge(registry, "realscribe.room.tasks.rooms", roomTasks::stats, "rooms");
+
+            Gauge.builder("realscribe.write.behind.queued", () -> strokeWriter.stats().get("queued"))
+                    .tag("store", "strokes").register(registry);
+            Gauge.builder("realscribe.write.behind.queued", () -> chatWriter.stats().get("queued"))
+                    .tag("store", "chat").register(registry);
+            // strokes refused while a room's queue is full, the flushes that handed off, and
+            // rows the database kept refusing
+            for (String outcome : new String[]{"dropped", "backpressureFlushes", "deadLettered"}) {
+                FunctionCounter.builder("realscribe.write.behind." + outcome, strokeWriter, w -> w.stats().get(outcome))
+                        .tag("store", "strokes").register(registry);
+            }
+
+            channel(registry, "inbound", inboundExecutor);
+            channel(registry, "outbound", outboundExecutor);
+
+            gauge(registry, "realscribe.ws.outbound.queued", outbound::stats, "queued");
+            gauge(registry, "realscribe.ws.outbound.max.depth", outbound::stats, "maxDepth");
+            gauge(registry, "realscribe.ws.outbound.congested.sessions", outbound::stats, "congestedSessions");
+            for (String frameClass : new String[]{"Ephemeral", "Patch", "Essential"}) {
+                FunctionCounter.builder("realscribe.ws.outbound.dropped", outbound,
+                                o -> o.stats().get("dropped" + frameClass))
+                        .tag("class", frameClass.toLowerCase())
+                        .register(registry);
+            }
+            FunctionCounter.builder("realscribe.ws.outbound.resyncs", outbound, o -> o.stats().get("resyncsSent"))
+                    .register(registry);
+
+            FunctionCounter.builder("realscribe.ratelimit.rejected", httpRateLimit, l -> l.stats().get("rejected"))
+                    .tags("limiter", "http", "category", "api")
+                    .register(registry);
+            for (String category : stompRateLimit.stats().keySet()) {
+                FunctionCounter.builder("realscribe.ratelimit.rejected", stompRateLimit,
+                                l -> l.stats().get(category).get("rejected"))
+                        .tags("limiter", "stomp", "category", category)
+                        .register(registry);
+            }
+        };
+    }
+
+    // Tasks waiting for, and threads running on, a STOMP channel pool.
+    private static void channel(MeterRegistry registry, String channel, Executor executor) {
+        if (!(executor instanceof ThreadPoolTaskExecutor pool)) {
+            return;
+        }
+        Gauge.builder("realscribe.ws.channel.queued", pool, p -> p.getThreadPoolExecutor().getQueue().size())
+                .tag("channel", channel).register(registry);
+        Gauge.builder("realscribe.ws.channel.active", pool, ThreadPoolTaskExecutor::getActiveCount)
+                .tag("channel", channel).register(registry);
+    }
+
+    // NaN when the configured store doesn't keep that number
+    private static void gauge(MeterRegistry registry, String name, Supplier<Map<String, Long>> stats, String key) {
+        Gauge.builder(name, () -> {
+            Long value = stats.get().get(key);
+            return value != null ? value : Double.NaN;
+        }).register(registry);
+    }
+}
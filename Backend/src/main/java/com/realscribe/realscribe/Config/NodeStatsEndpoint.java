@@ -0,0 +1,174 @@
+package com.realscribe.realscribe.Config;
+
+import com.realscribe.realscribe.Cluster.ClusterRelay;
+import com.realscribe.realscribe.Codec.SharedFrameStompEncoder;
+import com.realscribe.realscribe.Codec.StrokeCodecInterceptor;
+import com.realscribe.realscribe.Service.CanvasStateCache;
+import com.realscribe.realscribe.Service.ChatService;
+import com.realscribe.realscribe.Service.ChatWriteBehindService;
+import com.realscribe.realscribe.Service.PresenceService;
+import com.realscribe.realscribe.Service.RoomReaper;
+import com.realscribe.realscribe.Service.RoomTaskExecutor;
+import com.realscribe.realscribe.Service.StrokeMoveAggregator;
+import com.realscribe.realscribe.Service.StrokeWriteBehindService;
+import com.realscribe.realscribe.Service.TextDocumentService;
+import com.realscribe.realscribe.Service.TextOperationLogService;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.config.WebSocketMessageBrokerStats;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+// Per-stage figures of this node (pools, queues, caches, rate limits, cluster) at
+// /actuator/realscribe. Served with the other actuator endpoints on the management port only,
+// since they describe the node's load and peers; /api/health just reports the status from here.
+@Component
+@Endpoint(id = "realscribe")
+public class NodeStatsEndpoint {
+    private final StrokeWriteBehindService strokeWriter;
+    private final CanvasStateCache canvasCache;
+    private final TextDocumentService textDocuments;
+    private final TextOperationLogService textLog;
+    private final ChatWriteBehindService chatWriter;
+    private final RoomReaper roomReaper;
+    private final StrokeCodecInterceptor strokeCodec;
+    private final SharedFrameStompEncoder frameEncoder;
+    private final StrokeMoveAggregator strokeMoves;
+    private final RoomTaskExecutor roomTasks;
+    private final WebSocketMessageBrokerStats brokerStats;
+    private final ClusterRelay cluster;
+    private final PresenceService presence;
+    private final ChatService chat;
+    private final RateLimitingInterceptor httpRateLimit;
+    private final StompRateLimitInterceptor stompRateLimit;
+    private final OutboundBackpressure outbound;
+    private final DataSource dataSource;
+    private final Executor inboundExecutor;
+    private final Executor outboundExecutor;
+    // queued tasks across the pools above which the node reports DEGRADED
+    private final long degradedBacklog;
+
+    public NodeStatsEndpoint(StrokeWriteBehindService strokeWriter, CanvasStateCache canvasCache,
+                               TextDocumentService textDocuments, TextOperationLogService textLog,
+                               ChatWriteBehindService chatWriter, RoomReaper roomReaper,
+                               StrokeCodecInterceptor strokeCodec, SharedFrameStompEncoder frameEncoder,
+                               StrokeMoveAggregator strokeMoves, RoomTaskExecutor roomTasks,
+                               WebSocketMessageBrokerStats brokerStats, ClusterRelay cluster,
+                               PresenceService presence, ChatService chat,
+                               RateLimitingInterceptor httpRateLimit, StompRateLimitInterceptor stompRateLimit,
+                               OutboundBackpressure outbound, DataSource dataSource,
+                               @Qualifier("clientInboundChannelExecutor") Executor inboundExecutor,
+                               @Qualifier("clientOutboundChannelExecutor") Executor outboundExecutor,
+                               @Value("${realscribe.health.degraded-backlog:1000}") long degradedBacklog) {
+        this.strokeWriter = strokeWriter;
+        this.canvasCache = canvasCache;
+        this.textDocuments = textDocuments;
+        this.textLog = textLog;
+        this.chatWriter = chatWriter;
+        this.roomReaper = roomReaper;
+        this.strokeCodec = strokeCodec;
+        this.frameEncoder = frameEncoder;
+        this.strokeMoves = strokeMoves;
+        this.roomTasks = roomTasks;
+        this.brokerStats = brokerStats;
+        this.cluster = cluster;
+        this.presence = presence;
+        this.chat = chat;
+        this.httpRateLimit = httpRateLimit;
+        this.stompRateLimit = stompRateLimit;
+        this.outbound = outbound;
+        this.dataSource = dataSource;
+        this.inboundExecutor = inboundExecutor;
+        this.outboundExecutor = outboundExecutor;
+        this.degradedBacklog = degradedBacklog;
+    }
+
+    @ReadOperation
+    public Map<String, Object> stats() {
+        Map<String, Object> database = database();
+        Map<String, Long> backlog = backlog();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("status", degraded(database, backlog) ? "DEGRADED" : "UP");
+        stats.put("database", database);
+        stats.put("backlog", backlog);
+        stats.put("strokeMoves", strokeMoves.stats());
+        stats.put("strokeWriteBehind", strokeWriter.stats());
+        stats.put("canvasCache", canvasCache.stats());
+        stats.put("textDocuments", textDocuments.stats());
+        stats.put("textLog", textLog.stats());
+        stats.put("chatWriteBehind", chatWriter.stats());
+        stats.put("rooms", roomReaper.stats());
+        stats.put("strokeCodec", strokeCodec.stats());
+        stats.put("stompFrames", frameEncoder.stats());
+        stats.put("roomTasks", roomTasks.stats());
+        stats.put("channels", Map.of(
+                "inbound", brokerStats.getClientInboundExecutorStatsInfo(),
+                "outbound", brokerStats.getClientOutboundExecutorStatsInfo()));
+        stats.put("outboundQueues", outbound.stats());
+        stats.put("cluster", cluster.stats());
+        stats.put("presenceStore", presence.stats());
+        stats.put("chatStore", chat.stats());
+        stats.put("rateLimits", Map.of("http", httpRateLimit.stats(), "stomp", stompRateLimit.stats()));
+        return stats;
+    }
+
+    // True while requests wait for a database connection or the pipeline is too far behind.
+    public boolean degraded() {
+        return degraded(database(), backlog());
+    }
+
+    private boolean degraded(Map<String, Object> database, Map<String, Long> backlog) {
+        return Boolean.TRUE.equals(database.get("saturated")) || backlog.get("total") >= degradedBacklog;
+    }
+
+    // Connection pool usage; saturated when requests are waiting for a connection.
+    private Map<String, Object> database() {
+        Map<String, Object> database = new LinkedHashMap<>();
+        HikariDataSource hikari;
+        try {
+            hikari = dataSource.isWrapperFor(HikariDataSource.class) ? dataSource.unwrap(HikariDataSource.class) : null;
+        } catch (SQLException e) {
+            hikari = null;
+        }
+        HikariPoolMXBean pool = hikari != null ? hikari.getHikariPoolMXBean() : null;
+        if (pool == null) {
+            return database;
+        }
+        int waiting = pool.getThreadsAwaitingConnection();
+        database.put("active", pool.getActiveConnections());
+        database.put("idle", pool.getIdleConnections());
+        database.put("total", pool.getTotalConnections());
+        database.put("max", hikari.getMaximumPoolSize());
+        database.put("waiting", waiting);
+        database.put("saturated", waiting > 0);
+        return database;
+    }
+
+    // Work queued and not yet started, per stage.
+    private Map<String, Long> backlog() {
+        Map<String, Long> backlog = new LinkedHashMap<>();
+        backlog.put("inboundChannel", queued(inboundExecutor));
+        backlog.put("outboundChannel", queued(outboundExecutor));
+        backlog.put("roomTasks", roomTasks.stats().get("queued"));
+        backlog.put("outboundSessions", outbound.stats().get("queued"));
+        backlog.put("strokeWriteBehind", strokeWriter.stats().get("queued"));
+        backlog.put("chatWriteBehind", chatWriter.stats().get("queued"));
+        backlog.put("total", backlog.values().stream().mapToLong(Long::longValue).sum());
+        return backlog;
+    }
+
+    private static long queued(Executor executor) {
+        return executor instanceof ThreadPoolTaskExecutor pool ? pool.getThreadPoolExecutor().getQueue().size() : 0;
+    }
+}
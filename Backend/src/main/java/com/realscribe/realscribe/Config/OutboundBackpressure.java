@@ -0,0 +1,292 @@
+package com.realscribe.realscribe.Config;
+
+import com.realscribe.realscribe.Codec.FrameTypes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Per-session outbound queue bound for slow consumers.
+//
+// A session's depth is the number of frames accepted for it on the outbound channel and not yet
+// written to its socket (executor backlog plus the send buffer of Spring's session decorator).
+// Past the soft limit, frames a later one makes redundant are dropped: stroke_move and other
+// ephemeral canvas traffic, and text_patch. Past the hard limit every broadcast is dropped.
+// Either way, once something the client can't do without is lost, the destination is marked and
+// the client gets {"type":"resync_required"} on it as soon as the queue drains, and reloads that
+// state over REST. Control frames (CONNECTED, RECEIPT, ERROR, heartbeats) are never dropped.
+//
+// A client that stops reading altogether is still closed by the transport's send time and
+// buffer limits.
+@Component
+public class OutboundBackpressure implements ChannelInterceptor {
+    private static final Logger logger = LoggerFactory.getLogger(OutboundBackpressure.class);
+
+    // set on our own resync frames so they are never dropped
+    private static final String RESYNC_HEADER = "realscribeResync";
+    private static final byte[] RESYNC_PAYLOAD = "{\"type\":\"resync_required\"}".getBytes(StandardCharsets.UTF_8);
+
+    private static final String CANVAS_PREFIX = "/topic/room.";
+    private static final String WRITE_PREFIX = "/topic/write/room.";
+
+    enum FrameClass {
+        // superseded by the next frame or the stroke_end, nothing to resync
+        EPHEMERAL,
+        // superseded, but the client's document is off until it reloads
+        PATCH,
+        ESSENTIAL
+    }
+
+    private final MessageChannel clientOutboundChannel;
+    private final int softLimit;
+    private final int hardLimit;
+    private final int resumeDepth;
+
+    private final Map<String, SessionQueue> sessions = new ConcurrentHashMap<>();
+
+    private final AtomicLong droppedEphemeral = new AtomicLong();
+    private final AtomicLong droppedPatch = new AtomicLong();
+    private final AtomicLong droppedEssential = new AtomicLong();
+    private final AtomicLong resyncsSent = new AtomicLong();
+
+    public OutboundBackpressure(
+            @Lazy @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel,
+            @Value("${realscribe.ws.outbound.soft-limit:64}") int softLimit,
+            @Value("${realscribe.ws.outbound.hard-limit:256}") int hardLimit) {
+        this.clientOutboundChannel = clientOutboundChannel;
+        this.softLimit = Math.max(1, softLimit);
+        this.hardLimit = Math.max(this.softLimit, hardLimit);
+        this.resumeDepth = this.softLimit / 2;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (sessionId == null) {
+            return message;
+        }
+        SessionQueue queue = sessions.get(sessionId);
+        if (queue == null) {
+            // not open (yet, or any more)
+            return message;
+        }
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders());
+        if (type == SimpMessageType.MESSAGE && destination != null && subscriptionId != null
+                && message.getHeaders().get(RESYNC_HEADER) == null) {
+            queue.subscriptions.put(destination, subscriptionId);
+            int depth = queue.depth.get();
+            if (depth >= softLimit && drop(queue, destination, message.getPayload(), depth)) {
+                logger.debug("outbound_frame_dropped sessionId={} destination={} depth={}", sessionId, destination, depth);
+                return null;
+            }
+        }
+        queue.depth.incrementAndGet();
+        return message;
+    }
+
+    // Wraps each raw session so actual socket writes are counted off the session's depth.
+    public WebSocketHandlerDecoratorFactory decoratorFactory() {
+        return handler -> new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                sessions.put(session.getId(), new SessionQueue());
+                super.afterConnectionEstablished(new CountingSession(session));
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                try {
+                    super.afterConnectionClosed(session, closeStatus);
+                } finally {
+                    sessions.remove(session.getId());
+                }
+            }
+        };
+    }
+
+    // Records SUBSCRIBE frames on the inbound channel, so a resync can reach a destination that
+    // hasn't delivered anything to the session yet.
+    public ChannelInterceptor subscriptionTracker() {
+        return new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+                if (type != SimpMessageType.SUBSCRIBE && type != SimpMessageType.UNSUBSCRIBE) {
+                    return message;
+                }
+                SessionQueue queue = sessions.get(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+                String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders());
+                String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+                if (queue == null || subscriptionId == null) {
+                    return message;
+                }
+                if (type == SimpMessageType.SUBSCRIBE && destination != null) {
+                    queue.subscriptions.put(destination, subscriptionId);
+                } else if (type == SimpMessageType.UNSUBSCRIBE) {
+                    queue.subscriptions.values().remove(subscriptionId);
+                }
+                return message;
+            }
+        };
+    }
+
+    // Tells the session to reload a destination's state, as soon as its queue has room; used when
+    // one of its frames was refused before it was applied.
+    public void requestResync(String sessionId, String destination) {
+        SessionQueue queue = sessionId != null ? sessions.get(sessionId) : null;
+        if (queue == null) {
+            return;
+        }
+        queue.resync.add(destination);
+        if (queue.depth.get() <= resumeDepth) {
+            sendResyncs(sessionId, queue);
+        }
+    }
+
+    public Map<String, Long> stats() {
+        long queued = 0;
+        long maxDepth = 0;
+        long congested = 0;
+        long awaitingResync = 0;
+        for (SessionQueue queue : sessions.values()) {
+            int depth = queue.depth.get();
+            queued += depth;
+            maxDepth = Math.max(maxDepth, depth);
+            if (depth >= softLimit) {
+                congested++;
+            }
+            if (!queue.resync.isEmpty()) {
+                awaitingResync++;
+            }
+        }
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("sessions", (long) sessions.size());
+        stats.put("queued", queued);
+        stats.put("maxDepth", maxDepth);
+        stats.put("congestedSessions", congested);
+        stats.put("awaitingResync", awaitingResync);
+        stats.put("droppedEphemeral", droppedEphemeral.get());
+        stats.put("droppedPatch", droppedPatch.get());
+        stats.put("droppedEssential", droppedEssential.get());
+        stats.put("resyncsSent", resyncsSent.get());
+        return stats;
+    }
+
+    private boolean drop(SessionQueue queue, String destination, Object payload, int depth) {
+        FrameClass frameClass = classify(destination, payload);
+        if (frameClass == FrameClass.EPHEMERAL) {
+            droppedEphemeral.incrementAndGet();
+            return true;
+        }
+        if (frameClass == FrameClass.PATCH) {
+            droppedPatch.incrementAndGet();
+            queue.resync.add(destination);
+            return true;
+        }
+        if (depth >= hardLimit) {
+            droppedEssential.incrementAndGet();
+            queue.resync.add(destination);
+            return true;
+        }
+        return false;
+    }
+
+    static FrameClass classify(String destination, Object payload) {
+        boolean canvas = destination.startsWith(CANVAS_PREFIX) && destination.indexOf('.', CANVAS_PREFIX.length()) < 0;
+        boolean write = destination.startsWith(WRITE_PREFIX);
+        if ((!canvas && !write) || !(payload instanceof byte[] bytes)) {
+            // chat, presence and anything else
+            return FrameClass.ESSENTIAL;
+        }
+        String type = FrameTypes.peekType(bytes);
+        if (canvas) {
+            // stroke_end carries the whole stroke and clear its erasures; the rest is live preview
+            return "stroke_end".equals(type) || "clear".equals(type) ? FrameClass.ESSENTIAL : FrameClass.EPHEMERAL;
+        }
+        return "text_patch".equals(type) ? FrameClass.PATCH : FrameClass.ESSENTIAL;
+    }
+
+    private void written(String sessionId) {
+        SessionQueue queue = sessions.get(sessionId);
+        if (queue == null) {
+            return;
+        }
+        // frames written without passing the channel (STOMP errors) must not push it negative
+        int depth = queue.depth.updateAndGet(d -> Math.max(0, d - 1));
+        if (depth <= resumeDepth && !queue.resync.isEmpty()) {
+            sendResyncs(sessionId, queue);
+        }
+    }
+
+    private void sendResyncs(String sessionId, SessionQueue queue) {
+        for (String destination : queue.resync) {
+            // written() and requestResync() may both get here; only one sends each resync
+            if (!queue.resync.remove(destination)) {
+                continue;
+            }
+            String subscriptionId = queue.subscriptions.get(destination);
+            if (subscriptionId == null) {
+                continue;
+            }
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            accessor.setSessionId(sessionId);
+            accessor.setSubscriptionId(subscriptionId);
+            accessor.setDestination(destination);
+            accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+            accessor.setHeader(RESYNC_HEADER, Boolean.TRUE);
+            accessor.setLeaveMutable(true);
+            clientOutboundChannel.send(MessageBuilder.createMessage(RESYNC_PAYLOAD, accessor.getMessageHeaders()));
+            resyncsSent.incrementAndGet();
+            logger.info("outbound_resync_sent sessionId={} destination={}", sessionId, destination);
+        }
+    }
+
+    private static final class SessionQueue {
+        private final AtomicInteger depth = new AtomicInteger();
+        // destination -> subscription id, from SUBSCRIBE frames and the frames delivered to the session
+        private final Map<String, String> subscriptions = new ConcurrentHashMap<>();
+        // destinations that lost frames the client has to reload
+        private final Set<String> resync = ConcurrentHashMap.newKeySet();
+    }
+
+    private final class CountingSession extends WebSocketSessionDecorator {
+        private CountingSession(WebSocketSession delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            try {
+                super.sendMessage(message);
+            } finally {
+                written(getId());
+            }
+        }
+    }
+}
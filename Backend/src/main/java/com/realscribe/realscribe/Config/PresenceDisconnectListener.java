@@ -1,48 +1,81 @@
 package com.realscribe.realscribe.Config;
 
+import com.realscribe.realscribe.Cluster.ClusterService;
 import com.realscribe.realscribe.DTO.ChatEvent;
 import com.realscribe.realscribe.DTO.ChatMessage;
-import com.realscribe.realscribe.DTO.PresenceEvent;
 import com.realscribe.realscribe.DTO.UserPresence;
-import com.realscribe.realscribe.Repo.DrawingOperationRepository;
-import com.realscribe.realscribe.Repo.RoomRepository;
-import com.realscribe.realscribe.Repo.TextOperationRepository;
 import com.realscribe.realscribe.Service.ChatService;
+import com.realscribe.realscribe.Service.PresenceBroadcaster;
 import com.realscribe.realscribe.Service.PresenceService;
+import com.realscribe.realscribe.Service.RoomReaper;
+import com.realscribe.realscribe.Service.RoomTaskExecutor;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+// The only SessionDisconnectEvent listener. The transport thread just queues the session id;
+// a dedicated thread picks up everything that disconnected within a short batch window and
+// groups the sessions by room. Each room then, in its own mailbox, removes those sessions,
+// posts one leave message, and is marked idle for the reaper if it ended up empty.
 @Component
 public class PresenceDisconnectListener {
     private static final Logger logger = LoggerFactory.getLogger(PresenceDisconnectListener.class);
 
+    // names spelled out in a grouped leave message before it switches to "and N others"
+    private static final int NAMED_LEAVERS = 3;
+
     private final PresenceService presence;
+    private final PresenceBroadcaster presenceBroadcaster;
     private final ChatService chatService;
     private final SimpMessagingTemplate broker;
-    private final RoomRepository roomRepository;
-    private final DrawingOperationRepository drawingOperationRepository;
-    private final TextOperationRepository textOperationRepository;
+    private final RoomReaper roomReaper;
+    private final RoomTaskExecutor roomTasks;
+    private final ClusterService cluster;
+    private final long batchWindowMillis;
+
+    // roomId is the one recorded in the session attributes on join, for a join still in the mailbox
+    private record Disconnect(String sessionId, String roomId) {}
+
+    private final Queue<Disconnect> disconnected = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean batchScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService disconnectExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "presence-disconnect");
+        t.setDaemon(true);
+        return t;
+    });
 
     public PresenceDisconnectListener(
             PresenceService presence,
+            PresenceBroadcaster presenceBroadcaster,
             ChatService chatService,
             SimpMessagingTemplate broker,
-            RoomRepository roomRepository,
-            DrawingOperationRepository drawingOperationRepository,
-            TextOperationRepository textOperationRepository
+            RoomReaper roomReaper,
+            RoomTaskExecutor roomTasks,
+            ClusterService cluster,
+            @Value("${realscribe.presence.disconnect-batch-ms:50}") long batchWindowMillis
     ) {
         this.presence = presence;
+        this.presenceBroadcaster = presenceBroadcaster;
         this.chatService = chatService;
         this.broker = broker;
-        this.roomRepository = roomRepository;
-        this.drawingOperationRepository = drawingOperationRepository;
-        this.textOperationRepository = textOperationRepository;
+        this.roomReaper = roomReaper;
+        this.roomTasks = roomTasks;
+        this.cluster = cluster;
+        this.batchWindowMillis = Math.max(0, batchWindowMillis);
     }
 
     @EventListener
@@ -52,47 +85,98 @@ public class PresenceDisconnectListener {
             return;
         }
 
-        presence.leaveBySession(sessionId).ifPresent(binding -> {
-            String roomId = binding.roomId();
-
+        Map<String, Object> attributes = SimpMessageHeaderAccessor.getSessionAttributes(event.getMessage().getHeaders());
+        Object roomId = attributes != null ? attributes.get("roomId") : null;
+        if (roomId instanceof String room && !cluster.isLocal(room)) {
+            // presence lives on the room's home node; ClusterRelay forwards the disconnect there
+            return;
+        }
+        logger.debug("presence_disconnect_event sessionId={}", sessionId);
+        disconnected.add(new Disconnect(sessionId, roomId instanceof String room ? room : null));
+        if (batchScheduled.compareAndSet(false, true)) {
             try {
-                ChatMessage systemMessage = chatService.createSystemMessage(
-                        roomId,
-                        binding.name() + " left the collaboration"
-                );
+                disconnectExecutor.schedule(this::processBatch, batchWindowMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // shutting down: presence is in-memory and goes away with the node
+                batchScheduled.set(false);
+            }
+        }
+    }
 
-                if (systemMessage != null) {
-                    broker.convertAndSend(
-                            "/topic/room." + roomId + ".chat",
-                            new ChatEvent("system_message", roomId, systemMessage, null)
-                    );
-                }
-            } catch (Exception e) {
-                logger.error("Error creating leave system message for room {}", roomId, e);
+    @PreDestroy
+    public void shutdown() {
+        disconnectExecutor.shutdownNow();
+    }
+
+    private void processBatch() {
+        batchScheduled.set(false);
+
+        // roomId -> sessions of this batch joined to it
+        Map<String, List<String>> sessionsByRoom = new LinkedHashMap<>();
+        int sessions = 0;
+        Disconnect disconnect;
+        while ((disconnect = disconnected.poll()) != null) {
+            sessions++;
+            // a join queued behind this room's mailbox has no binding yet; its leave queues after it
+            String roomId = presence.roomOf(disconnect.sessionId()).orElse(disconnect.roomId());
+            if (roomId != null) {
+                sessionsByRoom.computeIfAbsent(roomId, k -> new ArrayList<>()).add(disconnect.sessionId());
             }
+        }
+        if (sessions > 1) {
+            logger.debug("presence_disconnect_batch sessions={} rooms={}", sessions, sessionsByRoom.size());
+        }
+
+        sessionsByRoom.forEach((roomId, roomSessions) ->
+                roomTasks.execute(roomId, () -> leaveRoom(roomId, roomSessions)));
+    }
 
+    private void leaveRoom(String roomId, List<String> sessionIds) {
+        // users whose last session was among these
+        List<PresenceService.UserBinding> left = new ArrayList<>();
+        for (String sessionId : sessionIds) {
             try {
-                List<UserPresence> users = presence.list(roomId);
+                presence.leaveBySession(sessionId).ifPresent(left::add);
+            } catch (Exception e) {
+                logger.error("presence_disconnect_failed sessionId={} error={}", sessionId, e.toString());
+            }
+        }
+        if (left.isEmpty()) {
+            return;
+        }
+
+        for (PresenceService.UserBinding binding : left) {
+            logger.info("presence_user_left roomId={} user={}", roomId, binding.name());
+            presenceBroadcaster.left(roomId, new UserPresence(binding.userId(), binding.name()));
+        }
+
+        try {
+            ChatMessage systemMessage = chatService.createSystemMessage(roomId, leaveMessage(left));
+            if (systemMessage != null) {
                 broker.convertAndSend(
-                        "/topic/room." + roomId + ".presence",
-                        new PresenceEvent(
-                                "presence_leave",
-                                roomId,
-                                new UserPresence(binding.userId(), binding.name()),
-                                users
-                        )
+                        "/topic/room." + roomId + ".chat",
+                        new ChatEvent("system_message", roomId, systemMessage, null)
                 );
-
-                if (users.isEmpty()) {
-                    drawingOperationRepository.deleteAllByRoomId(roomId);
-                    textOperationRepository.deleteAllByRoomId(roomId);
-                    chatService.clearRoomMessages(roomId);
-                    roomRepository.deleteById(roomId);
-                    logger.info("Room {} and associated data deleted after last disconnect", roomId);
-                }
-            } catch (Exception e) {
-                logger.error("Error broadcasting leave/cleanup for room {}", roomId, e);
             }
-        });
+        } catch (Exception e) {
+            logger.warn("presence_leave_system_message_failed roomId={} error={}", roomId, e.toString());
+        }
+
+        if (presence.list(roomId).isEmpty()) {
+            roomReaper.markIdle(roomId);
+        }
+    }
+
+    private static String leaveMessage(List<PresenceService.UserBinding> bindings) {
+        List<String> names = bindings.stream().map(PresenceService.UserBinding::name).toList();
+        if (names.size() == 1) {
+            return names.get(0) + " left the collaboration";
+        }
+        if (names.size() <= NAMED_LEAVERS) {
+            return String.join(", ", names.subList(0, names.size() - 1))
+                    + " and " + names.get(names.size() - 1) + " left the collaboration";
+        }
+        return String.join(", ", names.subList(0, NAMED_LEAVERS))
+                + " and " + (names.size() - NAMED_LEAVERS) + " others left the collaboration";
     }
 }
@@ -4,37 +4,37 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
 
-import java.time.Instant;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
+// Per-client token bucket for /api/**: the same 120 requests a minute as before on average,
+// refilled continuously, with memory bounded however many addresses (or spoofed
+// X-Forwarded-For values) show up.
 @Component
 public class RateLimitingInterceptor implements HandlerInterceptor {
     private static final Logger logger = LoggerFactory.getLogger(RateLimitingInterceptor.class);
-    private static final long WINDOW_SECONDS = 60;
-    private static final int MAX_REQUESTS_PER_WINDOW = 120;
 
-    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final TokenBucketLimiter limiter;
+
+    public RateLimitingInterceptor(
+            @Value("${realscribe.ratelimit.http.per-second:2}") double perSecond,
+            @Value("${realscribe.ratelimit.http.burst:120}") int burst,
+            @Value("${realscribe.ratelimit.max-keys:100000}") int maxKeys) {
+        this.limiter = new TokenBucketLimiter(perSecond, burst, maxKeys);
+    }
 
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
         String client = clientKey(request);
-        long now = Instant.now().getEpochSecond();
-        Counter counter = counters.compute(client, (key, existing) -> {
-            if (existing == null || now - existing.windowStartEpochSec >= WINDOW_SECONDS) {
-                return new Counter(now, 1);
-            }
-            existing.count++;
-            return existing;
-        });
-
-        if (counter.count > MAX_REQUESTS_PER_WINDOW) {
+        if (!limiter.tryAcquire(client)) {
             logger.warn("rate_limit_hit client={} path={} method={}", client, request.getRequestURI(), request.getMethod());
             response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(limiter.retryAfterSeconds()));
             response.setContentType("application/json");
             response.getWriter().write("{\"error\":\"rate_limit_exceeded\"}");
             return false;
@@ -42,6 +42,10 @@ public class RateLimitingInterceptor implements HandlerInterceptor {
         return true;
     }
 
+    public Map<String, Long> stats() {
+        return limiter.stats();
+    }
+
     private String clientKey(HttpServletRequest request) {
         String forwarded = request.getHeader("X-Forwarded-For");
         if (forwarded != null && !forwarded.isBlank()) {
@@ -49,14 +53,4 @@ public class RateLimitingInterceptor implements HandlerInterceptor {
         }
         return request.getRemoteAddr();
     }
-
-    private static final class Counter {
-        private final long windowStartEpochSec;
-        private int count;
-
-        private Counter(long windowStartEpochSec, int count) {
-            this.windowStartEpochSec = windowStartEpochSec;
-            this.count = count;
-        }
-    }
 }
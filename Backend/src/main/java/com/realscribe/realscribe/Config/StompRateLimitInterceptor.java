@@ -0,0 +1,101 @@
+package com.realscribe.realscribe.Config;
+
+import com.realscribe.realscribe.Codec.FrameTypes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Token buckets on inbound STOMP frames, per session and per kind of message, so a single
+// client flooding the socket is cut off before its frames reach the room's mailbox and
+// everyone else in the room keeps their share. Frames over the limit are dropped.
+//   move      stroke_move, merged per frame anyway, so dropping only thins the stroke
+//   edit      stroke_end, clear, text_update, text_patch; limits sit far above real editing
+//   chat      chat.send
+//   presence  presence.join / presence.leave
+//   other     any other message type, plus SUBSCRIBE / UNSUBSCRIBE
+// The type is the frame's top-level one; a /msg frame whose type can't be read without decoding
+// it counts as an edit, so odd encodings don't buy a second budget.
+@Component
+public class StompRateLimitInterceptor implements ChannelInterceptor {
+    private static final Logger logger = LoggerFactory.getLogger(StompRateLimitInterceptor.class);
+
+    private final Map<String, TokenBucketLimiter> limiters = new LinkedHashMap<>();
+
+    public StompRateLimitInterceptor(
+            @Value("${realscribe.ratelimit.stomp.move-per-second:120}") double movePerSecond,
+            @Value("${realscribe.ratelimit.stomp.edit-per-second:60}") double editPerSecond,
+            @Value("${realscribe.ratelimit.stomp.chat-per-second:3}") double chatPerSecond,
+            @Value("${realscribe.ratelimit.stomp.presence-per-second:2}") double presencePerSecond,
+            @Value("${realscribe.ratelimit.stomp.other-per-second:60}") double otherPerSecond,
+            @Value("${realscribe.ratelimit.stomp.burst-seconds:2}") double burstSeconds,
+            @Value("${realscribe.ratelimit.max-keys:100000}") int maxKeys) {
+        limiters.put("move", limiter(movePerSecond, burstSeconds, maxKeys));
+        limiters.put("edit", limiter(editPerSecond, burstSeconds, maxKeys));
+        limiters.put("chat", limiter(chatPerSecond, burstSeconds, maxKeys));
+        limiters.put("presence", limiter(presencePerSecond, burstSeconds, maxKeys));
+        limiters.put("other", limiter(otherPerSecond, burstSeconds, maxKeys));
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        String category;
+        if (type == SimpMessageType.MESSAGE) {
+            category = category(SimpMessageHeaderAccessor.getDestination(message.getHeaders()), message.getPayload());
+        } else if (type == SimpMessageType.SUBSCRIBE || type == SimpMessageType.UNSUBSCRIBE) {
+            category = "other";
+        } else {
+            return message;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (sessionId == null || limiters.get(category).tryAcquire(sessionId)) {
+            return message;
+        }
+        logger.debug("stomp_rate_limit_hit sessionId={} category={}", sessionId, category);
+        return null;
+    }
+
+    public Map<String, Map<String, Long>> stats() {
+        Map<String, Map<String, Long>> stats = new LinkedHashMap<>();
+        limiters.forEach((category, limiter) -> stats.put(category, limiter.stats()));
+        return stats;
+    }
+
+    static String category(String destination, Object payload) {
+        if (destination == null) {
+            return "other";
+        }
+        if (destination.endsWith("/chat.send")) {
+            return "chat";
+        }
+        if (destination.endsWith("/presence.join") || destination.endsWith("/presence.leave")) {
+            return "presence";
+        }
+        if (!destination.endsWith("/msg") || !(payload instanceof byte[] bytes)) {
+            return "other";
+        }
+        String type = FrameTypes.peekType(bytes);
+        if (type == null) {
+            return "edit";
+        }
+        return switch (type) {
+            case "stroke_move" -> "move";
+            case "stroke_end", "clear", "text_update", "text_patch" -> "edit";
+            default -> "other";
+        };
+    }
+
+    private static TokenBucketLimiter limiter(double perSecond, double burstSeconds, int maxKeys) {
+        int burst = (int) Math.max(1, Math.round(perSecond * burstSeconds));
+        return new TokenBucketLimiter(perSecond, burst, maxKeys);
+    }
+}
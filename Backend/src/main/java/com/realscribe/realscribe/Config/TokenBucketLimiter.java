@@ -0,0 +1,122 @@
+package com.realscribe.realscribe.Config;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Token buckets keyed by client (an IP, a session + message type...). A bucket holds up to
+// `burst` tokens and refills continuously at `perSecond`, so a client can't get a double burst
+// at a window boundary the way fixed windows allow.
+//
+// Memory is bounded: keys are spread over striped LRU maps, each capped at its share of
+// maxKeys. A bucket idle long enough to have refilled completely carries no information, so it
+// is dropped as soon as it becomes the eldest of its stripe; past the cap the least recently
+// used bucket goes, which at worst hands that client a fresh burst.
+public final class TokenBucketLimiter {
+    private static final int STRIPES = 64;
+
+    private final double perNano;
+    private final double burst;
+    // idle time after which a bucket is full again
+    private final long refillNanos;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    private final AtomicLong allowed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    public TokenBucketLimiter(double perSecond, int burst, int maxKeys) {
+        this.perNano = Math.max(perSecond, 0.001) / 1_000_000_000.0;
+        this.burst = Math.max(1, burst);
+        this.refillNanos = (long) (this.burst / perNano);
+        int perStripe = Math.max(1, maxKeys / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+    }
+
+    public boolean tryAcquire(String key) {
+        long now = System.nanoTime();
+        Stripe stripe = stripes[(key.hashCode() & 0x7fffffff) % STRIPES];
+        boolean ok;
+        synchronized (stripe) {
+            Bucket bucket = stripe.buckets.get(key);
+            if (bucket == null) {
+                stripe.expire(now);
+                bucket = new Bucket(burst, now);
+                stripe.buckets.put(key, bucket);
+            } else {
+                bucket.tokens = Math.min(burst, bucket.tokens + (now - bucket.updatedAt) * perNano);
+                bucket.updatedAt = now;
+            }
+            ok = bucket.tokens >= 1;
+            if (ok) {
+                bucket.tokens -= 1;
+            }
+        }
+        (ok ? allowed : rejected).incrementAndGet();
+        return ok;
+    }
+
+    // Seconds until the key has a token again, for Retry-After.
+    public long retryAfterSeconds() {
+        return Math.max(1, (long) Math.ceil(1 / (perNano * 1_000_000_000.0)));
+    }
+
+    public Map<String, Long> stats() {
+        long keys = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                keys += stripe.buckets.size();
+            }
+        }
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("keys", keys);
+        stats.put("allowed", allowed.get());
+        stats.put("rejected", rejected.get());
+        stats.put("evicted", evicted.get());
+        return stats;
+    }
+
+    private static final class Bucket {
+        private double tokens;
+        private long updatedAt;
+
+        private Bucket(double tokens, long updatedAt) {
+            this.tokens = tokens;
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    private final class Stripe {
+        private final int maxKeys;
+        // access order: the eldest entry is the least recently used bucket
+        private final LinkedHashMap<String, Bucket> buckets;
+
+        private Stripe(int maxKeys) {
+            this.maxKeys = maxKeys;
+            this.buckets = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+                    if (size() > Stripe.this.maxKeys) {
+                        evicted.incrementAndGet();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        // Drops buckets, eldest first, that have refilled completely since last used.
+        private void expire(long now) {
+            Iterator<Bucket> it = buckets.values().iterator();
+            while (it.hasNext()) {
+                if (now - it.next().updatedAt < refillNanos) {
+                    return;
+                }
+                it.remove();
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.realscribe.realscribe.Config;
 
+import com.realscribe.realscribe.Cluster.RoomHomeRedirectInterceptor;
+import com.realscribe.realscribe.Controller.DrawingOperationController;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -11,12 +13,14 @@ import java.util.Arrays;
 @Configuration
 public class WebConfig {
     private final RateLimitingInterceptor rateLimitingInterceptor;
+    private final RoomHomeRedirectInterceptor roomHomeRedirect;
 
     @Value("${ALLOWED_ORIGINS:https://real-scribe.vercel.app,http://localhost:5173,http://localhost:3000}")
     private String allowedOrigins;
 
-    public WebConfig(RateLimitingInterceptor rateLimitingInterceptor) {
+    public WebConfig(RateLimitingInterceptor rateLimitingInterceptor, RoomHomeRedirectInterceptor roomHomeRedirect) {
         this.rateLimitingInterceptor = rateLimitingInterceptor;
+        this.roomHomeRedirect = roomHomeRedirect;
     }
 
     @Bean
@@ -32,6 +36,7 @@ public class WebConfig {
                         .allowedOrigins(origins)
                         .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS", "PATCH")
                         .allowedHeaders("*")
+                        .exposedHeaders(DrawingOperationController.CANVAS_VERSION_HEADER)
                         .maxAge(3600)
                         .allowCredentials(true);
             }
@@ -40,6 +45,8 @@ public class WebConfig {
             public void addInterceptors(InterceptorRegistry registry) {
                 registry.addInterceptor(rateLimitingInterceptor)
                         .addPathPatterns("/api/**");
+                registry.addInterceptor(roomHomeRedirect)
+                        .addPathPatterns("/api/draw/**", "/api/text/**", "/api/rooms/**");
             }
         };
     }
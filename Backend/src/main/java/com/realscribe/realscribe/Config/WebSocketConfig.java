@@ -1,11 +1,26 @@
 package com.realscribe.realscribe.Config;
 
+import com.realscribe.realscribe.Cluster.ClusterRelay;
+import com.realscribe.realscribe.Codec.SharedFrameStompEncoder;
+import com.realscribe.realscribe.Codec.StrokeCodecInterceptor;
+import com.realscribe.realscribe.Codec.StrokeMessageConverter;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.support.ChannelInterceptor;
@@ -16,6 +31,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 @Configuration
 @EnableWebSocketMessageBroker
@@ -25,11 +42,44 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     @Value("${ALLOWED_ORIGINS:https://real-scribe.vercel.app,http://localhost:5173,http://localhost:3000}")
     private String allowedOrigins;
 
+    // explicit so the pools don't grow unbounded under load (Spring's default max is unlimited)
+    @Value("${realscribe.ws.inbound-threads:16}")
+    private int inboundThreads;
+
+    @Value("${realscribe.ws.outbound-threads:16}")
+    private int outboundThreads;
+
+    @Value("${realscribe.ws.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    @Value("${realscribe.ws.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Value("${realscribe.ws.message-size-limit:131072}")
+    private int messageSizeLimit;
+
+    private final StrokeCodecInterceptor strokeCodecInterceptor;
+    private final ClusterRelay clusterRelay;
+    private final StompRateLimitInterceptor rateLimitInterceptor;
+    private final OutboundBackpressure outboundBackpressure;
+
+    public WebSocketConfig(StrokeCodecInterceptor strokeCodecInterceptor, ClusterRelay clusterRelay,
+                           StompRateLimitInterceptor rateLimitInterceptor, OutboundBackpressure outboundBackpressure) {
+        this.strokeCodecInterceptor = strokeCodecInterceptor;
+        this.clusterRelay = clusterRelay;
+        this.rateLimitInterceptor = rateLimitInterceptor;
+        this.outboundBackpressure = outboundBackpressure;
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         config.enableSimpleBroker("/topic");
         config.setApplicationDestinationPrefixes("/app");
         config.setUserDestinationPrefix("/user");
+        // room topics produced here are relayed to the other nodes' brokers; every broadcast is
+        // tagged so its subscribers' frames share one encoded head
+        config.configureBrokerChannel().interceptors(clusterRelay.brokerInterceptor(),
+                sharedFrameStompEncoder().broadcastTagger());
     }
 
     @Override
@@ -41,7 +91,87 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
         registry.addEndpoint("/ws")
                 .setAllowedOrigins(origins)
+                // SockJS frames are text only; the codec interceptor keeps these sessions on JSON
+                .addInterceptors(new HandshakeInterceptor() {
+                    @Override
+                    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+                        attributes.put(StrokeCodecInterceptor.SOCKJS_ATTRIBUTE, Boolean.TRUE);
+                        return true;
+                    }
+
+                    @Override
+                    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                               WebSocketHandler wsHandler, Exception exception) {
+                    }
+                })
                 .withSockJS();
+
+        // Plain WebSocket, which clients try first: no SockJS array framing or JSON escaping, binary
+        // stroke frames, and Tomcat negotiates permessage-deflate with browsers that offer it.
+        // /ws stays for networks that only let SockJS's HTTP fallbacks through.
+        registry.addEndpoint("/ws-native")
+                .setAllowedOrigins(origins);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // only quick in-memory work runs here; anything that may block goes to RoomTaskExecutor
+        registration.taskExecutor()
+                .corePoolSize(inboundThreads)
+                .maxPoolSize(inboundThreads)
+                .keepAliveSeconds(60);
+        // floods are dropped first; frames for rooms homed on another node are forwarded there
+        registration.interceptors(rateLimitInterceptor, outboundBackpressure.subscriptionTracker(),
+                strokeCodecInterceptor, clusterRelay.inboundInterceptor());
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(outboundThreads)
+                .maxPoolSize(outboundThreads)
+                .keepAliveSeconds(60);
+        // slow consumers shed droppable frames before anything is encoded for them
+        registration.interceptors(outboundBackpressure, strokeCodecInterceptor);
+    }
+
+    // A session that can't take its frames within the time limit, or lets the buffer fill up,
+    // is closed; OutboundBackpressure keeps ordinary slow clients well short of that.
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(sendTimeLimitMs)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                // text_update carries the whole document
+                .setMessageSizeLimit(messageSizeLimit)
+                .addDecoratorFactory(outboundBackpressure.decoratorFactory());
+    }
+
+    // Binary stroke frames first (octet-stream only), then the default JSON/string/byte[] converters.
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        messageConverters.add(new StrokeMessageConverter());
+        return true;
+    }
+
+    @Bean
+    public SharedFrameStompEncoder sharedFrameStompEncoder() {
+        return new SharedFrameStompEncoder();
+    }
+
+    // Protocol handlers are registered with the endpoint mappings, so the encoder is swapped
+    // in once every singleton exists rather than when the handler bean is created.
+    @Bean
+    public SmartInitializingSingleton sharedFrameEncoderInstaller(
+            @Qualifier("subProtocolWebSocketHandler") WebSocketHandler webSocketHandler,
+            SharedFrameStompEncoder encoder) {
+        return () -> {
+            if (webSocketHandler instanceof SubProtocolWebSocketHandler subProtocols) {
+                subProtocols.getProtocolHandlers().stream()
+                        .filter(StompSubProtocolHandler.class::isInstance)
+                        .forEach(handler -> ((StompSubProtocolHandler) handler).setEncoder(encoder));
+            }
+        };
     }
 
     @Bean
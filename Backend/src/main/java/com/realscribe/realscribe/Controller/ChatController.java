@@ -1,8 +1,10 @@
 package com.realscribe.realscribe.Controller;
 
+import com.realscribe.realscribe.Config.OutboundBackpressure;
 import com.realscribe.realscribe.DTO.ChatEvent;
 import com.realscribe.realscribe.DTO.ChatMessage;
 import com.realscribe.realscribe.Service.ChatService;
+import com.realscribe.realscribe.Service.RoomTaskExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
@@ -23,10 +25,15 @@ public class ChatController {
 
     private final ChatService chatService;
     private final SimpMessagingTemplate broker;
+    private final RoomTaskExecutor roomTasks;
+    private final OutboundBackpressure backpressure;
 
-    public ChatController(ChatService chatService, SimpMessagingTemplate broker) {
+    public ChatController(ChatService chatService, SimpMessagingTemplate broker, RoomTaskExecutor roomTasks,
+                          OutboundBackpressure backpressure) {
         this.chatService = chatService;
         this.broker = broker;
+        this.roomTasks = roomTasks;
+        this.backpressure = backpressure;
     }
 
     // Client sends message to /app/room/{roomId}/chat.send
@@ -49,8 +56,23 @@ public class ChatController {
                 return;
             }
 
+            // saved and broadcast in the room's mailbox, ordered with its other operations
+            String sender = userId;
+            String senderName = name;
+            if (!roomTasks.offer(roomId, () -> saveAndBroadcast(roomId, sender, senderName, content.trim()))) {
+                // not saved: the sender reloads the history, which shows the message didn't go through
+                backpressure.requestResync(sessionId, "/topic/room." + roomId + ".chat");
+            }
+
+        } catch (Exception e) {
+            logger.error("chat_send_failed roomId={} error={}", roomId, e.toString());
+        }
+    }
+
+    private void saveAndBroadcast(String roomId, String userId, String name, String content) {
+        try {
             // Save message (this will return null if it's a duplicate)
-            ChatMessage message = chatService.sendMessage(roomId, userId, name, content.trim());
+            ChatMessage message = chatService.sendMessage(roomId, userId, name, content);
 
             // Only broadcast if message was actually saved (not a duplicate)
             if (message != null) {
@@ -58,21 +80,21 @@ public class ChatController {
                 broker.convertAndSend("/topic/room." + roomId + ".chat",
                         new ChatEvent("message_sent", roomId, message, null));
             }
-
         } catch (Exception e) {
             logger.error("chat_send_failed roomId={} error={}", roomId, e.toString());
         }
     }
 
-    // REST endpoint for getting chat history
+    // REST endpoint for getting chat history; pass the oldest id you have as `before` for the previous page
     @GetMapping("/api/rooms/{roomId}/messages")
     @ResponseBody
     public List<ChatMessage> getRoomMessages(
             @PathVariable String roomId,
+            @RequestParam(required = false) String before,
             @RequestParam(defaultValue = "50") int limit) {
 
         try {
-            return chatService.getRoomMessages(roomId, limit);
+            return chatService.getRoomMessages(roomId, before, limit);
         } catch (Exception e) {
             logger.error("chat_history_fetch_failed roomId={} error={}", roomId, e.toString());
             return new ArrayList<>();
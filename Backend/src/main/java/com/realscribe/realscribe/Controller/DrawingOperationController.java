@@ -1,31 +1,46 @@
 package com.realscribe.realscribe.Controller;
 
-import com.realscribe.realscribe.Entity.DrawingOperation;
-import com.realscribe.realscribe.Repo.DrawingOperationRepository;
-import com.realscribe.realscribe.Repo.RoomRepository;
-import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.bind.annotation.CrossOrigin;
+import com.realscribe.realscribe.Service.CanvasStateCache;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.PathVariable;
 
-import java.util.List;
-
 @RestController
 // /api/rooms
 @RequestMapping("/api/draw")
 public class DrawingOperationController {
-    private final DrawingOperationRepository drawingOperationRepository;
+    public static final String CANVAS_VERSION_HEADER = "X-Canvas-Version";
+
+    private final CanvasStateCache canvasCache;
 
-    public DrawingOperationController(DrawingOperationRepository drawingOperationRepository) {
-        this.drawingOperationRepository = drawingOperationRepository;
+    public DrawingOperationController(CanvasStateCache canvasCache) {
+        this.canvasCache = canvasCache;
     }
 
+    // Served from the in-memory room cache as pre-serialized JSON (same shape as List<DrawingOperation>).
+    // The version header is what a client passes as `since` when it reconnects.
     @GetMapping("/{roomId}")
-    @Transactional(readOnly = true)
-    public List<DrawingOperation> getDrawingOperationsByRoom(@PathVariable String roomId) {
-        return drawingOperationRepository.findByRoomId(roomId);
+    public ResponseEntity<byte[]> getDrawingOperationsByRoom(@PathVariable String roomId) {
+        CanvasStateCache.Snapshot snapshot = canvasCache.snapshot(roomId);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(CANVAS_VERSION_HEADER, Long.toString(snapshot.version()))
+                .body(snapshot.body());
+    }
+
+    // Operations and erased stroke ids after the given canvas version
+    @GetMapping("/{roomId}/delta")
+    public ResponseEntity<byte[]> getDrawingOperationsSince(@PathVariable String roomId,
+                                                           @RequestParam(defaultValue = "0") long since) {
+        CanvasStateCache.Snapshot delta = canvasCache.delta(roomId, since);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(CANVAS_VERSION_HEADER, Long.toString(delta.version()))
+                .body(delta.body());
     }
 
 
@@ -1,14 +1,13 @@
 package com.realscribe.realscribe.Controller;
 
-import com.realscribe.realscribe.DTO.PresenceEvent;
 import com.realscribe.realscribe.DTO.UserPresence;
 import com.realscribe.realscribe.DTO.ChatMessage;
 import com.realscribe.realscribe.DTO.ChatEvent;
-import com.realscribe.realscribe.Repo.DrawingOperationRepository;
-import com.realscribe.realscribe.Repo.RoomRepository;
-import com.realscribe.realscribe.Repo.TextOperationRepository;
+import com.realscribe.realscribe.Service.PresenceBroadcaster;
 import com.realscribe.realscribe.Service.PresenceService;
 import com.realscribe.realscribe.Service.ChatService;
+import com.realscribe.realscribe.Service.RoomReaper;
+import com.realscribe.realscribe.Service.RoomTaskExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
@@ -18,7 +17,6 @@ import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.stereotype.Controller;
 
-import java.util.List;
 import java.util.Map;
 
 @Controller
@@ -26,25 +24,25 @@ public class EnhancedPresenceController {
     private static final Logger logger = LoggerFactory.getLogger(EnhancedPresenceController.class);
 
     private final PresenceService presence;
+    private final PresenceBroadcaster presenceBroadcaster;
     private final ChatService chatService;
     private final SimpMessagingTemplate broker;
-    private final RoomRepository roomRepository;
-    private final DrawingOperationRepository drawingOperationRepository;
-    private final TextOperationRepository textOperationRepository;
+    private final RoomReaper roomReaper;
+    private final RoomTaskExecutor roomTasks;
 
     public EnhancedPresenceController(
             PresenceService presence,
+            PresenceBroadcaster presenceBroadcaster,
             ChatService chatService,
             SimpMessagingTemplate broker,
-            RoomRepository roomRepository,
-            DrawingOperationRepository drawingOperationRepository,
-            TextOperationRepository textOperationRepository) {
+            RoomReaper roomReaper,
+            RoomTaskExecutor roomTasks) {
         this.presence = presence;
+        this.presenceBroadcaster = presenceBroadcaster;
         this.chatService = chatService;
         this.broker = broker;
-        this.roomRepository = roomRepository;
-        this.drawingOperationRepository = drawingOperationRepository;
-        this.textOperationRepository = textOperationRepository;
+        this.roomReaper = roomReaper;
+        this.roomTasks = roomTasks;
     }
 
     @MessageMapping("/room/{roomId}/presence.join")
@@ -74,7 +72,32 @@ public class EnhancedPresenceController {
             sha.getSessionAttributes().put("name", name);
             sha.getSessionAttributes().put("roomId", roomId);
 
+            // applied in the room's mailbox, ordered with its other operations
+            String user = userId;
+            String userName = name;
+            roomTasks.execute(roomId, () -> applyJoin(roomId, user, userName, sessionId));
+
+        } catch (Exception e) {
+            logger.error("presence_join_failed roomId={} error={}", roomId, e.toString());
+        }
+    }
+
+    @MessageMapping("/room/{roomId}/presence.leave")
+    public void leave(@DestinationVariable String roomId, @Payload Map<String, String> payload, StompHeaderAccessor sha) {
+        try {
+            String sessionId = sha.getSessionId();
+            logger.debug("presence_leave_request roomId={} sessionId={}", roomId, sessionId);
+
+            roomTasks.execute(roomId, () -> applyLeave(roomId, sessionId));
+        } catch (Exception e) {
+            logger.error("presence_leave_failed roomId={} error={}", roomId, e.toString());
+        }
+    }
+
+    private void applyJoin(String roomId, String userId, String name, String sessionId) {
+        try {
             boolean firstSession = presence.join(roomId, userId, name, sessionId);
+            roomReaper.markActive(roomId);
 
             // Only create system message if this is truly a new user joining
             if (firstSession) {
@@ -91,27 +114,19 @@ public class EnhancedPresenceController {
                 }
             }
 
-            // Always broadcast presence update (but users list will be deduplicated by service)
+            // Always publish the presence change; it goes out in the room's next coalesced delta
             try {
-                List<UserPresence> users = presence.list(roomId);
-                broker.convertAndSend("/topic/room." + roomId + ".presence",
-                        new PresenceEvent("presence_join", roomId,
-                                new UserPresence(userId, name), users));
+                presenceBroadcaster.joined(roomId, new UserPresence(userId, name), firstSession);
             } catch (Exception e) {
                 logger.warn("presence_join_broadcast_failed roomId={} error={}", roomId, e.toString());
             }
-
         } catch (Exception e) {
             logger.error("presence_join_failed roomId={} error={}", roomId, e.toString());
         }
     }
 
-    @MessageMapping("/room/{roomId}/presence.leave")
-    public void leave(@DestinationVariable String roomId, @Payload Map<String, String> payload, StompHeaderAccessor sha) {
+    private void applyLeave(String roomId, String sessionId) {
         try {
-            String sessionId = sha.getSessionId();
-            logger.debug("presence_leave_request roomId={} sessionId={}", roomId, sessionId);
-
             presence.leaveBySession(sessionId).ifPresent(binding -> {
                 logger.info("presence_user_left roomId={} user={}", binding.roomId(), binding.name());
 
@@ -130,26 +145,13 @@ public class EnhancedPresenceController {
 
                 // Broadcast presence update
                 try {
-                    List<UserPresence> users = presence.list(roomId);
-                    broker.convertAndSend("/topic/room." + roomId + ".presence",
-                            new PresenceEvent("presence_leave", roomId,
-                                    new UserPresence(binding.userId(), binding.name()), users));
-                    
-                    // Check if room is empty
-                    if (users.isEmpty()) {
-                        logger.info("presence_room_empty_cleanup_start roomId={}", roomId);
-                        try {
-                            // Delete all data associated with the room
-                            drawingOperationRepository.deleteAllByRoomId(roomId);
-                            textOperationRepository.deleteAllByRoomId(roomId);
-                            chatService.clearRoomMessages(roomId);
-                            roomRepository.deleteById(roomId);
-                            logger.info("presence_room_cleanup_complete roomId={}", roomId);
-                        } catch (Exception cleanupError) {
-                            logger.error("presence_room_cleanup_failed roomId={} error={}", roomId, cleanupError.toString());
-                        }
+                    presenceBroadcaster.left(roomId, new UserPresence(binding.userId(), binding.name()));
+
+                    // Check if room is empty; it is deleted by the reaper unless someone comes back
+                    if (presence.list(roomId).isEmpty()) {
+                        roomReaper.markIdle(roomId);
                     }
-                    
+
                 } catch (Exception e) {
                     logger.warn("presence_leave_broadcast_failed roomId={} error={}", roomId, e.toString());
                 }
@@ -158,4 +160,4 @@ public class EnhancedPresenceController {
             logger.error("presence_leave_failed roomId={} error={}", roomId, e.toString());
         }
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,6 @@
 package com.realscribe.realscribe.Controller;
 
+import com.realscribe.realscribe.Config.NodeStatsEndpoint;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -7,14 +8,22 @@ import org.springframework.web.bind.annotation.RestController;
 
 import java.util.Map;
 
+// Public liveness check; the details behind the status are on the management port
+// (/actuator/realscribe).
 @RestController
 @RequestMapping("/api")
 public class HealthController {
+    private final NodeStatsEndpoint nodeStats;
+
+    public HealthController(NodeStatsEndpoint nodeStats) {
+        this.nodeStats = nodeStats;
+    }
 
     @GetMapping("/health")
     public ResponseEntity<Map<String, String>> health() {
+        // still 200 when degraded: the node is serving, just behind, and shouldn't be restarted for it
         return ResponseEntity.ok(Map.of(
-                "status", "UP",
+                "status", nodeStats.degraded() ? "DEGRADED" : "UP",
                 "service", "RealScribe Backend"
         ));
     }
@@ -1,6 +1,8 @@
 package com.realscribe.realscribe.Controller;
 
+import com.realscribe.realscribe.DTO.PresenceSnapshot;
 import com.realscribe.realscribe.DTO.UserPresence;
+import com.realscribe.realscribe.Service.PresenceBroadcaster;
 import com.realscribe.realscribe.Service.PresenceService;
 import org.springframework.web.bind.annotation.*;
 
@@ -11,9 +13,11 @@ import java.util.List;
 public class PresenceRestController {
 
     private final PresenceService presenceService;
+    private final PresenceBroadcaster presenceBroadcaster;
 
-    public PresenceRestController(PresenceService presenceService) {
+    public PresenceRestController(PresenceService presenceService, PresenceBroadcaster presenceBroadcaster) {
         this.presenceService = presenceService;
+        this.presenceBroadcaster = presenceBroadcaster;
     }
 
     @GetMapping("/rooms/{roomId}/users")
@@ -21,6 +25,12 @@ public class PresenceRestController {
         return presenceService.list(roomId);
     }
 
+    // Snapshot with the delta version it matches; clients fetch it on load and after a version gap
+    @GetMapping("/rooms/{roomId}/presence")
+    public PresenceSnapshot getPresenceSnapshot(@PathVariable String roomId) {
+        return presenceBroadcaster.snapshot(roomId);
+    }
+
     @GetMapping("/presence/debug")
     public String debugPresence() {
         presenceService.printState();
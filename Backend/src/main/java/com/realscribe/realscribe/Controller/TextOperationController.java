@@ -1,15 +1,15 @@
 package com.realscribe.realscribe.Controller;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.realscribe.realscribe.Entity.TextOperation;
-import com.realscribe.realscribe.Repo.TextOperationRepository;
+import com.realscribe.realscribe.Service.TextDocumentService;
+import com.realscribe.realscribe.Service.TextOperationLogService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -17,26 +17,30 @@ import java.util.Map;
 public class TextOperationController {
     private static final Logger logger = LoggerFactory.getLogger(TextOperationController.class);
 
-    private final TextOperationRepository repo;
+    private final TextDocumentService textDocuments;
+    private final TextOperationLogService textLog;
 
-    public TextOperationController(TextOperationRepository repo) {
-        this.repo = repo;
+    public TextOperationController(TextDocumentService textDocuments, TextOperationLogService textLog) {
+        this.textDocuments = textDocuments;
+        this.textLog = textLog;
     }
 
+    // Reads the in-memory document while the room is hot, the last snapshot row otherwise
     @GetMapping("/latest/{roomId}")
-    @Transactional(readOnly = true)
     public ResponseEntity<Map<String, Object>> getLatestDocument(@PathVariable String roomId) {
         try {
-            return repo.findTopByRoomIdOrderByIdDesc(roomId)
-                    .map(doc -> Map.of(
+            return textDocuments.latest(roomId)
+                    .map(doc -> Map.<String, Object>of(
                             "exists", true,
-                            "content", doc.getPayload() != null ? doc.getPayload() : Map.of()
+                            "content", doc.payload(),
+                            "seq", doc.baseSeq()
                     ))
                     .map(ResponseEntity::ok)
                     .orElse(ResponseEntity.ok(
                             Map.of(
                                     "exists", false,
-                                    "content", Map.of()
+                                    "content", Map.of(),
+                                    "seq", 0L
                             )
                     ));
         } catch (Exception e) {
@@ -50,5 +54,19 @@ public class TextOperationController {
         }
     }
 
-
+    // Logged text patches after `since` (usually the "seq" of /latest) for replay on reconnect
+    @GetMapping("/ops/{roomId}")
+    public ResponseEntity<Map<String, Object>> getOperationsSince(@PathVariable String roomId,
+                                                                  @RequestParam(defaultValue = "0") long since) {
+        try {
+            return ResponseEntity.ok(Map.of(
+                    "roomId", roomId,
+                    "ops", textLog.since(roomId, since)
+            ));
+        } catch (Exception e) {
+            logger.error("text_ops_fetch_failed roomId={} since={} error={}", roomId, since, e.toString());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("roomId", roomId, "ops", List.of()));
+        }
+    }
 }
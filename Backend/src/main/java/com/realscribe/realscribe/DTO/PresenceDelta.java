@@ -0,0 +1,14 @@
+package com.realscribe.realscribe.DTO;
+
+import java.util.List;
+
+// "presence_delta": apply only when fromVersion matches the version you hold, otherwise
+// fetch a snapshot. Added users are upserts (a rejoin or rename shows up here too).
+public record PresenceDelta(
+    String type,
+    String roomId,
+    long fromVersion,
+    long version,
+    List<UserPresence> added,
+    List<UserPresence> removed
+) {}
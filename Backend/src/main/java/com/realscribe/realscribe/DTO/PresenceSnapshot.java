@@ -0,0 +1,6 @@
+package com.realscribe.realscribe.DTO;
+
+import java.util.List;
+
+// "presence_sync": the full user list as of a delta version.
+public record PresenceSnapshot(String type, String roomId, long version, List<UserPresence> users) {}
@@ -11,6 +11,8 @@ public class WsMessage {
     private String name;
     private String strokeId;
     private String userId;
+    // per-room canvas sequence assigned by the server to stroke_end / clear
+    private Long seq;
     
     //payload is the data in the case of Stroke -> (Strokes object),
     private Map<String, Object> payload;
@@ -0,0 +1,41 @@
+package com.realscribe.realscribe.Entity;
+
+import com.realscribe.realscribe.DTO.ChatMessage;
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+// Persisted chat history. Rows are inserted in batches by ChatWriteBehindService and read
+// newest-first with a (room_id, created_at, id) keyset when the in-memory ring can't answer.
+@Entity
+@Data
+@Table(name = "chat_messages",
+        indexes = @Index(name = "idx_chat_messages_room_created", columnList = "room_id, created_at, id"))
+public class ChatMessageRecord {
+    @Id
+    private String id;
+
+    @Column(name = "room_id", columnDefinition = "text", nullable = false)
+    private String roomId;
+
+    @Column(name = "user_id")
+    private String userId;
+
+    @Column(name = "sender_name")
+    private String senderName;
+
+    @Column(columnDefinition = "text")
+    private String content;
+
+    @Column(name = "message_type")
+    private String type;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    public ChatMessage toMessage() {
+        return new ChatMessage(id, roomId, userId, senderName, content,
+                ChatMessage.MessageType.valueOf(type), createdAt);
+    }
+}
@@ -1,5 +1,6 @@
 package com.realscribe.realscribe.Entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.JsonNode;
 import jakarta.persistence.*;
 import lombok.*;
@@ -10,7 +11,8 @@ import java.time.OffsetDateTime;
 
 @Entity
 @Data
-@Table(name = "drawing_operations")
+@Table(name = "drawing_operations",
+        indexes = @Index(name = "idx_drawing_operations_room_seq", columnList = "room_id, seq"))
 public class DrawingOperation {
 
     //this is definitely not user id -> STROKE_ID (String UUID)
@@ -27,4 +29,17 @@ public class DrawingOperation {
     @JdbcTypeCode(SqlTypes.JSON)
     private JsonNode payload;  // Using JsonNode for proper JSON handling
 
+    // StrokeCodec form of the payload when realscribe.draw.storage-codec=binary (payload is then null)
+    @JsonIgnore
+    @Column(name = "payload_bin", columnDefinition = "bytea")
+    private byte[] payloadBin;
+
+    // per-room monotonic sequence of the stroke_end / clear that last touched this stroke (null on legacy rows)
+    @Column(name = "seq")
+    private Long seq;
+
+    // erased strokes are kept as tombstones (payload dropped) so delta sync can report them
+    @Column(name = "deleted", columnDefinition = "boolean not null default false")
+    private boolean deleted;
+
 }
@@ -23,4 +23,8 @@ public class TextOperation {
     @Column(columnDefinition = "jsonb")
     @JdbcTypeCode(SqlTypes.JSON)
     private JsonNode payload;
+
+    // last text_operation_log sequence this snapshot already contains; replay starts after it
+    @Column(name = "base_seq")
+    private Long baseSeq;
 }
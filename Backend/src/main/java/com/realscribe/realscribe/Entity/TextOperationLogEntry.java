@@ -0,0 +1,43 @@
+package com.realscribe.realscribe.Entity;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.OffsetDateTime;
+
+// Insert-only log of merged text_patch steps, keyed by room and per-room sequence.
+// Rows already covered by the room's text_operations snapshot are removed by the compactor.
+@Entity
+@Data
+@Table(name = "text_operation_log",
+        uniqueConstraints = @UniqueConstraint(name = "uk_text_operation_log_room_seq", columnNames = {"room_id", "seq"}))
+public class TextOperationLogEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "room_id", columnDefinition = "text", nullable = false)
+    private String roomId;
+
+    @Column(name = "seq", nullable = false)
+    private long seq;
+
+    @Column(name = "user_id")
+    private String userId;
+
+    // {"steps": [...]} exactly as broadcast
+    @Column(columnDefinition = "jsonb")
+    @JdbcTypeCode(SqlTypes.JSON)
+    private JsonNode payload;
+
+    @Column(name = "created_at")
+    private OffsetDateTime createdAt;
+
+    @PrePersist
+    public void prePersist() {
+        createdAt = OffsetDateTime.now();
+    }
+}
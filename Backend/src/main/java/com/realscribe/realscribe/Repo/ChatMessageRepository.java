@@ -0,0 +1,26 @@
+package com.realscribe.realscribe.Repo;
+
+import com.realscribe.realscribe.Entity.ChatMessageRecord;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface ChatMessageRepository extends JpaRepository<ChatMessageRecord, String> {
+    // newest first; callers reverse the page
+    List<ChatMessageRecord> findByRoomIdOrderByCreatedAtDescIdDesc(String roomId, Pageable page);
+
+    // keyset page strictly older than (createdAt, id), newest first
+    @Query("SELECT m FROM ChatMessageRecord m WHERE m.roomId = :roomId AND " +
+            "(m.createdAt < :createdAt OR (m.createdAt = :createdAt AND m.id < :id)) " +
+            "ORDER BY m.createdAt DESC, m.id DESC")
+    List<ChatMessageRecord> findPageBefore(@Param("roomId") String roomId,
+                                           @Param("createdAt") LocalDateTime createdAt,
+                                           @Param("id") String id,
+                                           Pageable page);
+}
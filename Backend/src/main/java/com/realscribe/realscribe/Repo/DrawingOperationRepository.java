@@ -3,6 +3,10 @@ package com.realscribe.realscribe.Repo;
 import com.realscribe.realscribe.Entity.DrawingOperation;
 import jakarta.transaction.Transactional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -18,4 +22,18 @@ public interface DrawingOperationRepository extends JpaRepository<DrawingOperati
 
     @Transactional
     void deleteAllByRoomId(String roomId);
+
+    // one set-based statement for many rooms, without loading the rows first
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM DrawingOperation d WHERE d.roomId IN :roomIds")
+    int deleteAllByRoomIdIn(@Param("roomIds") Collection<String> roomIds);
+
+    // erased strokes at or below the room's purge horizon, sparing the row that records it
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM DrawingOperation d WHERE d.roomId = :roomId AND d.deleted = true AND d.seq <= :seq " +
+            "AND (d.operationType IS NULL OR d.operationType <> :markerType)")
+    int deleteTombstonesThrough(@Param("roomId") String roomId, @Param("seq") long seq,
+                                @Param("markerType") String markerType);
 }
@@ -2,9 +2,17 @@ package com.realscribe.realscribe.Repo;
 
 import com.realscribe.realscribe.Entity.Room;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface RoomRepository extends JpaRepository<Room, String> {
     Optional<Room> findByid(String id);
+
+    // rooms that were used: anything drawn, typed or said (every join leaves a chat message)
+    @Query("SELECT r.id FROM Room r WHERE EXISTS (SELECT 1 FROM DrawingOperation d WHERE d.roomId = r.id) " +
+            "OR EXISTS (SELECT 1 FROM TextOperation t WHERE t.roomId = r.id) " +
+            "OR EXISTS (SELECT 1 FROM ChatMessageRecord m WHERE m.roomId = r.id)")
+    List<String> findIdsWithHistory();
 }
\ No newline at end of file
@@ -0,0 +1,27 @@
+package com.realscribe.realscribe.Repo;
+
+import com.realscribe.realscribe.Entity.TextOperationLogEntry;
+import jakarta.transaction.Transactional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface TextOperationLogRepository extends JpaRepository<TextOperationLogEntry, Long> {
+    List<TextOperationLogEntry> findByRoomIdAndSeqGreaterThanOrderBySeqAsc(String roomId, long seq);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM TextOperationLogEntry l WHERE l.roomId = :roomId")
+    void deleteAllByRoomId(@Param("roomId") String roomId);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM TextOperationLogEntry l WHERE l.roomId IN :roomIds")
+    int deleteAllByRoomIdIn(@Param("roomIds") Collection<String> roomIds);
+}
@@ -8,7 +8,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.util.List;
+import java.util.Collection;
 import java.util.Optional;
 
 @Repository
@@ -18,5 +18,10 @@ public interface TextOperationRepository extends JpaRepository<TextOperation, In
     @Query("DELETE FROM TextOperation t WHERE t.roomId = :roomId")
     void deleteAllByRoomId(@Param("roomId") String roomId);
 
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM TextOperation t WHERE t.roomId IN :roomIds")
+    int deleteAllByRoomIdIn(@Param("roomIds") Collection<String> roomIds);
+
     Optional<TextOperation> findTopByRoomIdOrderByIdDesc(String roomId);
 }
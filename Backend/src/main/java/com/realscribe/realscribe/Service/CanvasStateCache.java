@@ -0,0 +1,523 @@
+package com.realscribe.realscribe.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.realscribe.realscribe.Codec.StrokeCodec;
+import com.realscribe.realscribe.Entity.DrawingOperation;
+import com.realscribe.realscribe.Repo.DrawingOperationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Per-room stroke state kept in memory so GET /api/draw/{roomId} does not hit Postgres.
+// A room is loaded once from the table (plus anything still in the write-behind queue),
+// then kept current by the stroke_end / clear handlers. Each stroke is stored already
+// serialized and the room's JSON array is built once per change, not once per request.
+// Rooms are evicted least-recently-used when the total cached bytes exceed the budget.
+//
+// The cache is also where the per-room canvas sequence is assigned: every stroke_end and
+// clear gets the next number, the operation is queued for persistence with it, and erased
+// strokes are kept as tombstones so clients can ask for "everything after version N".
+//
+// Tombstones are kept for the retention period, then purged from memory and from the table.
+// The highest purged sequence is remembered in a marker row per room; a client asking for a
+// delta from before it gets the full canvas instead, since erasures it missed may be gone.
+@Service
+public class CanvasStateCache {
+    private static final Logger logger = LoggerFactory.getLogger(CanvasStateCache.class);
+    // rough fixed cost of a cached room so many empty rooms still count against the budget
+    private static final long ROOM_OVERHEAD_BYTES = 256;
+    private static final long TOMBSTONE_BYTES = 64;
+    // operation_type of the per-room row holding the purge horizon in its seq
+    private static final String COMPACTED_TYPE = "compacted";
+
+    private final DrawingOperationRepository opRepo;
+    private final StrokeWriteBehindService strokeWriter;
+    private final ObjectMapper objectMapper;
+    private final long maxBytes;
+    private final long tombstoneRetentionMillis;
+
+    private final Map<String, RoomCanvas> rooms = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong tombstonesPurged = new AtomicLong();
+
+    public record Snapshot(long version, byte[] body) {}
+
+    public CanvasStateCache(
+            DrawingOperationRepository opRepo,
+            StrokeWriteBehindService strokeWriter,
+            ObjectMapper objectMapper,
+            @Value("${realscribe.draw.cache.max-bytes:67108864}") long maxBytes,
+            @Value("${realscribe.draw.tombstone-retention-seconds:600}") long tombstoneRetentionSeconds) {
+        this.opRepo = opRepo;
+        this.strokeWriter = strokeWriter;
+        this.objectMapper = objectMapper;
+        this.maxBytes = maxBytes;
+        this.tombstoneRetentionMillis = tombstoneRetentionSeconds * 1000;
+    }
+
+    // Serialized JSON array of the room's live strokes, same shape as the DrawingOperation list.
+    public Snapshot snapshot(String roomId) {
+        while (true) {
+            RoomCanvas canvas = loadedCanvas(roomId);
+            Snapshot snapshot;
+            synchronized (canvas) {
+                if (canvas.evicted) {
+                    continue;
+                }
+                snapshot = new Snapshot(canvas.version, canvas.snapshot());
+            }
+            evictIfNeeded(canvas);
+            return snapshot;
+        }
+    }
+
+    // {"roomId", "version", "full", "operations": [...], "erased": [...]} with every operation
+    // and tombstone whose sequence is after `since`. A client with no version yet, one that is
+    // ahead of the server (room was recreated), or one from before the last tombstone purge
+    // gets the full state with "full": true.
+    public Snapshot delta(String roomId, long since) {
+        while (true) {
+            RoomCanvas canvas = loadedCanvas(roomId);
+            Snapshot delta;
+            synchronized (canvas) {
+                if (canvas.evicted) {
+                    continue;
+                }
+                delta = new Snapshot(canvas.version, canvas.delta(since));
+            }
+            evictIfNeeded(canvas);
+            return delta;
+        }
+    }
+
+    // Assigns the next sequence to a finished stroke, caches it and queues it for persistence.
+    // Empty when the room's write-behind queue is full: the stroke is refused, not applied.
+    public OptionalLong recordStroke(DrawingOperation op) {
+        while (true) {
+            RoomCanvas canvas = loadedCanvas(op.getRoomId());
+            long seq;
+            synchronized (canvas) {
+                if (canvas.evicted) {
+                    continue;
+                }
+                if (!strokeWriter.admit(op.getRoomId(), 1)) {
+                    return OptionalLong.empty();
+                }
+                seq = ++canvas.version;
+                op.setSeq(seq);
+                op.setDeleted(false);
+                canvas.putLive(op.getId(), seq, serialize(op));
+                canvas.handoffs.incrementAndGet();
+            }
+            handOff(canvas, List.of(op));
+            evictIfNeeded(canvas);
+            return OptionalLong.of(seq);
+        }
+    }
+
+    // Turns the erased strokes into tombstones under one new sequence. Ids the room does not
+    // know about are ignored. Returns the sequence assigned to the clear, or empty when the
+    // room's write-behind queue can't take the tombstones and the clear is refused.
+    public OptionalLong recordErase(String roomId, Collection<String> strokeIds) {
+        while (true) {
+            RoomCanvas canvas = loadedCanvas(roomId);
+            long seq;
+            List<DrawingOperation> tombstones = new ArrayList<>();
+            synchronized (canvas) {
+                if (canvas.evicted) {
+                    continue;
+                }
+                int known = 0;
+                for (String id : new HashSet<>(strokeIds)) {
+                    if (canvas.liveSeq.containsKey(id)) {
+                        known++;
+                    }
+                }
+                if (!strokeWriter.admit(roomId, known)) {
+                    return OptionalLong.empty();
+                }
+                seq = ++canvas.version;
+                for (String id : strokeIds) {
+                    if (canvas.removeLive(id)) {
+                        canvas.putTombstone(id, seq);
+                        tombstones.add(tombstone(roomId, id, seq));
+                    }
+                }
+                canvas.handoffs.incrementAndGet();
+            }
+            handOff(canvas, tombstones);
+            return OptionalLong.of(seq);
+        }
+    }
+
+    // Queues what the canvas just applied, outside its monitor. Only the room's mailbox records
+    // strokes and erasures, so the queue still gets them in sequence order; the canvas is not
+    // evicted until they are queued, or a reload could miss them and hand out their sequences again.
+    private void handOff(RoomCanvas canvas, List<DrawingOperation> ops) {
+        try {
+            for (DrawingOperation op : ops) {
+                strokeWriter.enqueue(op);
+            }
+        } finally {
+            canvas.handoffs.decrementAndGet();
+        }
+    }
+
+    // Purges tombstones past the retention, in memory and in drawing_operations.
+    @Scheduled(fixedDelayString = "${realscribe.draw.tombstone-compact-interval-ms:60000}")
+    public void compactTombstones() {
+        long erasedBefore = System.currentTimeMillis() - tombstoneRetentionMillis;
+        Map<String, Long> horizons = new HashMap<>();
+        for (RoomCanvas canvas : rooms.values()) {
+            synchronized (canvas) {
+                if (canvas.evicted || !canvas.loaded) {
+                    continue;
+                }
+                long horizon = canvas.purgeTombstones(erasedBefore);
+                if (horizon > 0) {
+                    horizons.put(canvas.roomId, horizon);
+                }
+            }
+        }
+        horizons.forEach((roomId, horizon) -> {
+            // queued behind the tombstones it covers, so the table never has it without them; if
+            // the queue is full the rows stay and the next run writes a later horizon
+            if (!strokeWriter.enqueue(compactedMarker(roomId, horizon))) {
+                return;
+            }
+            try {
+                // tombstones still queued at this point are written later and skipped on load;
+                // the room's next purge deletes them
+                int deleted = opRepo.deleteTombstonesThrough(roomId, horizon, COMPACTED_TYPE);
+                logger.debug("draw_tombstones_purged roomId={} horizon={} rows={}", roomId, horizon, deleted);
+            } catch (Exception e) {
+                logger.error("draw_tombstone_purge_failed roomId={} horizon={} error={}", roomId, horizon, e.toString());
+            }
+        });
+    }
+
+    public void evict(String roomId) {
+        RoomCanvas canvas = rooms.remove(roomId);
+        if (canvas != null) {
+            synchronized (canvas) {
+                canvas.evict();
+            }
+        }
+    }
+
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("rooms", (long) rooms.size());
+        stats.put("bytes", totalBytes.get());
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        stats.put("tombstonesPurged", tombstonesPurged.get());
+        return stats;
+    }
+
+    private RoomCanvas loadedCanvas(String roomId) {
+        while (true) {
+            RoomCanvas canvas = rooms.computeIfAbsent(roomId, RoomCanvas::new);
+            synchronized (canvas) {
+                if (canvas.evicted) {
+                    continue;
+                }
+                if (canvas.loaded) {
+                    hits.incrementAndGet();
+                } else {
+                    misses.incrementAndGet();
+                    load(canvas);
+                }
+                canvas.touch();
+                return canvas;
+            }
+        }
+    }
+
+    // Caller holds the canvas monitor. Pending ops are read before the table so an op flushed
+    // in between is then already in the table; pending ops are newer and win on overlap.
+    private void load(RoomCanvas canvas) {
+        List<DrawingOperation> pending = strokeWriter.pending(canvas.roomId);
+        List<DrawingOperation> stored = opRepo.findByRoomId(canvas.roomId);
+
+        Map<String, DrawingOperation> byId = new LinkedHashMap<>();
+        for (DrawingOperation op : stored) {
+            byId.put(op.getId(), decoded(op));
+        }
+        for (DrawingOperation op : pending) {
+            byId.put(op.getId(), op);
+        }
+
+        // legacy rows predate sequencing: keys -n..-1 keep them in table order below every real sequence
+        long legacyKey = -1 - byId.values().stream().filter(op -> op.getSeq() == null).count();
+        long version = 0;
+        for (DrawingOperation op : byId.values()) {
+            if (COMPACTED_TYPE.equals(op.getOperationType()) && op.getSeq() != null) {
+                canvas.compactedThrough = op.getSeq();
+                version = Math.max(version, op.getSeq());
+            }
+        }
+        for (DrawingOperation op : byId.values()) {
+            if (COMPACTED_TYPE.equals(op.getOperationType())) {
+                continue;
+            }
+            // pending ops are shared with the write-behind queue, so the key is never written back
+            long seq = op.getSeq() != null ? op.getSeq() : ++legacyKey;
+            version = Math.max(version, seq);
+            if (op.isDeleted()) {
+                if (seq > canvas.compactedThrough) {
+                    canvas.putTombstone(op.getId(), seq);
+                }
+            } else {
+                canvas.putLive(op.getId(), seq, serialize(op));
+            }
+        }
+        canvas.version = version;
+        canvas.loaded = true;
+        totalBytes.addAndGet(ROOM_OVERHEAD_BYTES);
+        logger.debug("draw_cache_loaded roomId={} rows={} pending={} version={}",
+                canvas.roomId, stored.size(), pending.size(), version);
+    }
+
+    // Rows written with storage-codec=binary keep the payload in payload_bin. Decoded into a
+    // copy so the (possibly managed) entity is never marked dirty.
+    private DrawingOperation decoded(DrawingOperation op) {
+        if (op.getPayload() != null || op.getPayloadBin() == null) {
+            return op;
+        }
+        DrawingOperation copy = new DrawingOperation();
+        copy.setId(op.getId());
+        copy.setRoomId(op.getRoomId());
+        copy.setOperationType(op.getOperationType());
+        copy.setSeq(op.getSeq());
+        copy.setDeleted(op.isDeleted());
+        copy.setPayload(StrokeCodec.decodePayload(op.getPayloadBin()));
+        return copy;
+    }
+
+    private DrawingOperation tombstone(String roomId, String strokeId, long seq) {
+        DrawingOperation op = new DrawingOperation();
+        op.setId(strokeId);
+        op.setRoomId(roomId);
+        op.setOperationType("stroke");
+        op.setSeq(seq);
+        op.setDeleted(true);
+        return op;
+    }
+
+    private DrawingOperation compactedMarker(String roomId, long horizon) {
+        DrawingOperation op = new DrawingOperation();
+        op.setId(COMPACTED_TYPE + ":" + roomId);
+        op.setRoomId(roomId);
+        op.setOperationType(COMPACTED_TYPE);
+        op.setSeq(horizon);
+        op.setDeleted(true);
+        return op;
+    }
+
+    private byte[] serialize(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to serialize canvas state", e);
+        }
+    }
+
+    private void evictIfNeeded(RoomCanvas keep) {
+        if (totalBytes.get() <= maxBytes) {
+            return;
+        }
+        synchronized (this) {
+            if (totalBytes.get() <= maxBytes) {
+                return;
+            }
+            // copy access times first: they keep moving while we sort
+            List<Map.Entry<Long, RoomCanvas>> candidates = new ArrayList<>();
+            for (RoomCanvas canvas : rooms.values()) {
+                candidates.add(Map.entry(canvas.lastAccess, canvas));
+            }
+            candidates.sort(Map.Entry.comparingByKey());
+            for (Map.Entry<Long, RoomCanvas> candidate : candidates) {
+                RoomCanvas canvas = candidate.getValue();
+                if (totalBytes.get() <= maxBytes) {
+                    break;
+                }
+                if (canvas == keep) {
+                    continue;
+                }
+                synchronized (canvas) {
+                    // operations still being handed to the write-behind queue pin the canvas
+                    if (canvas.handoffs.get() > 0 || !rooms.remove(canvas.roomId, canvas)) {
+                        continue;
+                    }
+                    canvas.evict();
+                }
+                evictions.incrementAndGet();
+                logger.debug("draw_cache_evicted roomId={}", canvas.roomId);
+            }
+        }
+    }
+
+    private record Stroke(String id, byte[] json) {}
+
+    private record Erasure(long erasedAt, List<String> ids) {}
+
+    private final class RoomCanvas {
+        private final String roomId;
+        // seq -> live stroke, so both the full list and "after seq N" come out in order
+        private final TreeMap<Long, Stroke> live = new TreeMap<>();
+        private final Map<String, Long> liveSeq = new HashMap<>();
+        // seq -> strokes erased by that clear
+        private final TreeMap<Long, Erasure> tombstones = new TreeMap<>();
+        private long tombstoneCount;
+        private long version;
+        // tombstones up to this sequence were purged
+        private long compactedThrough;
+        private byte[] snapshot;
+        private long strokeBytes;
+        private boolean loaded;
+        private boolean evicted;
+        private volatile long lastAccess = System.nanoTime();
+        // recorded operations not yet queued for persistence
+        private final AtomicInteger handoffs = new AtomicInteger();
+
+        private RoomCanvas(String roomId) {
+            this.roomId = roomId;
+        }
+
+        private void touch() {
+            lastAccess = System.nanoTime();
+        }
+
+        private void putLive(String id, long seq, byte[] json) {
+            removeLive(id);
+            live.put(seq, new Stroke(id, json));
+            liveSeq.put(id, seq);
+            strokeBytes += json.length;
+            totalBytes.addAndGet(json.length);
+            invalidate();
+        }
+
+        private boolean removeLive(String id) {
+            Long seq = liveSeq.remove(id);
+            if (seq == null) {
+                return false;
+            }
+            Stroke previous = live.remove(seq);
+            strokeBytes -= previous.json().length;
+            totalBytes.addAndGet(-previous.json().length);
+            invalidate();
+            return true;
+        }
+
+        private void putTombstone(String id, long seq) {
+            // loaded tombstones count from the load: the time they were erased isn't stored
+            tombstones.computeIfAbsent(seq, s -> new Erasure(System.currentTimeMillis(), new ArrayList<>())).ids().add(id);
+            tombstoneCount++;
+            totalBytes.addAndGet(TOMBSTONE_BYTES);
+        }
+
+        // Drops tombstones erased before the cutoff; returns the new horizon, 0 when nothing went.
+        private long purgeTombstones(long erasedBefore) {
+            long horizon = 0;
+            Iterator<Map.Entry<Long, Erasure>> it = tombstones.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Long, Erasure> entry = it.next();
+                // sequences are assigned in time order, so the first recent one ends the scan
+                if (entry.getValue().erasedAt() >= erasedBefore) {
+                    break;
+                }
+                int count = entry.getValue().ids().size();
+                tombstoneCount -= count;
+                totalBytes.addAndGet(-count * TOMBSTONE_BYTES);
+                tombstonesPurged.addAndGet(count);
+                horizon = entry.getKey();
+                it.remove();
+            }
+            if (horizon > 0) {
+                compactedThrough = Math.max(compactedThrough, horizon);
+            }
+            return horizon;
+        }
+
+        private byte[] snapshot() {
+            if (snapshot == null) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8, strokeBytes + live.size() + 2));
+                writeArray(out, live.values());
+                snapshot = out.toByteArray();
+                totalBytes.addAndGet(snapshot.length);
+            }
+            return snapshot;
+        }
+
+        private byte[] delta(long since) {
+            boolean full = since <= 0 || since > version || since < compactedThrough;
+            Collection<Stroke> operations = full ? live.values() : live.tailMap(since, false).values();
+            List<String> erased = new ArrayList<>();
+            if (!full) {
+                tombstones.tailMap(since, false).values().forEach(erasure -> erased.addAll(erasure.ids()));
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.writeBytes("{\"roomId\":".getBytes(StandardCharsets.UTF_8));
+            out.writeBytes(serialize(roomId));
+            out.writeBytes((",\"version\":" + version + ",\"full\":" + full + ",\"operations\":")
+                    .getBytes(StandardCharsets.UTF_8));
+            writeArray(out, operations);
+            out.writeBytes(",\"erased\":".getBytes(StandardCharsets.UTF_8));
+            out.writeBytes(serialize(erased));
+            out.write('}');
+            return out.toByteArray();
+        }
+
+        private void writeArray(ByteArrayOutputStream out, Collection<Stroke> strokes) {
+            out.write('[');
+            boolean first = true;
+            for (Stroke stroke : strokes) {
+                if (!first) {
+                    out.write(',');
+                }
+                out.writeBytes(stroke.json());
+                first = false;
+            }
+            out.write(']');
+        }
+
+        private void invalidate() {
+            if (snapshot != null) {
+                totalBytes.addAndGet(-snapshot.length);
+                snapshot = null;
+            }
+        }
+
+        private void evict() {
+            if (evicted) {
+                return;
+            }
+            invalidate();
+            totalBytes.addAndGet(-strokeBytes - tombstoneCount * TOMBSTONE_BYTES - (loaded ? ROOM_OVERHEAD_BYTES : 0));
+            live.clear();
+            liveSeq.clear();
+            tombstones.clear();
+            strokeBytes = 0;
+            tombstoneCount = 0;
+            compactedThrough = 0;
+            loaded = false;
+            evicted = true;
+        }
+    }
+}
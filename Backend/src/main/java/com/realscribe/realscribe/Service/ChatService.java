@@ -1,24 +1,55 @@
 package com.realscribe.realscribe.Service;
 
 import com.realscribe.realscribe.DTO.ChatMessage;
+import com.realscribe.realscribe.Entity.ChatMessageRecord;
+import com.realscribe.realscribe.Repo.ChatMessageRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 @Service
 public class ChatService {
     private static final Logger logger = LoggerFactory.getLogger(ChatService.class);
 
-    // roomId -> List of messages (in memory for now, use DB in production)
-    private final Map<String, List<ChatMessage>> roomMessages = new ConcurrentHashMap<>();
+    // same content from the same sender inside these windows is dropped as a duplicate
+    private static final long MESSAGE_DUPLICATE_WINDOW_MS = 1000;
+    private static final long SYSTEM_DUPLICATE_WINDOW_MS = 5000;
+
+    private static final Comparator<ChatMessage> NEWEST_FIRST =
+            Comparator.comparing(ChatMessage::timestamp).thenComparing(ChatMessage::id).reversed();
+
+    // recent messages per room; chat_messages holds the full history
+    private final ChatStore store;
     private final Map<String, AtomicLong> messageCounters = new ConcurrentHashMap<>();
     private final AtomicLong globalCounter = new AtomicLong(0);
+    private final ChatWriteBehindService chatWriter;
+    private final ChatMessageRepository chatRepo;
+    private final int maxMessagesPerRoom;
+    private final long idleEvictMillis;
+
+    public ChatService(
+            ChatStore store,
+            ChatWriteBehindService chatWriter,
+            ChatMessageRepository chatRepo,
+            @Value("${realscribe.chat.max-messages-per-room:500}") int maxMessagesPerRoom,
+            @Value("${realscribe.chat.idle-evict-ms:600000}") long idleEvictMillis) {
+        this.store = store;
+        this.chatWriter = chatWriter;
+        this.chatRepo = chatRepo;
+        this.maxMessagesPerRoom = Math.max(1, maxMessagesPerRoom);
+        this.idleEvictMillis = idleEvictMillis;
+    }
 
-    public synchronized ChatMessage sendMessage(String roomId, String userId, String senderName, String content) {
+    public ChatMessage sendMessage(String roomId, String userId, String senderName, String content) {
         String messageId = generateMessageId(roomId);
 
         ChatMessage message = new ChatMessage(
@@ -28,19 +59,17 @@ public class ChatService {
                 senderName,
                 content,
                 ChatMessage.MessageType.MESSAGE,
-                LocalDateTime.now()
+                now()
         );
 
-        List<ChatMessage> messages = roomMessages.computeIfAbsent(roomId, k -> Collections.synchronizedList(new ArrayList<>()));
+        ChatStore.Room messages = store.room(roomId);
 
         // Check for duplicate messages (same content from same user within 1 second)
-        boolean isDuplicate = messages.stream()
-                .filter(m -> m.userId().equals(userId))
-                .filter(m -> m.content().equals(content))
-                .anyMatch(m -> Math.abs(java.time.Duration.between(m.timestamp(), message.timestamp()).toMillis()) < 1000);
+        boolean isDuplicate = !messages.firstSeen(userId, content, MESSAGE_DUPLICATE_WINDOW_MS, System.currentTimeMillis());
 
         if (!isDuplicate) {
-            messages.add(message);
+            messages.append(message);
+            chatWriter.enqueue(message);
             logger.debug("chat_message_added roomId={} messageId={} user={}", roomId, messageId, senderName);
             return message;
         } else {
@@ -49,7 +78,7 @@ public class ChatService {
         }
     }
 
-    public synchronized ChatMessage createSystemMessage(String roomId, String content) {
+    public ChatMessage createSystemMessage(String roomId, String content) {
         String messageId = generateMessageId(roomId);
 
         ChatMessage systemMessage = new ChatMessage(
@@ -59,19 +88,17 @@ public class ChatService {
                 "System",
                 content,
                 ChatMessage.MessageType.SYSTEM,
-                LocalDateTime.now()
+                now()
         );
 
-        List<ChatMessage> messages = roomMessages.computeIfAbsent(roomId, k -> Collections.synchronizedList(new ArrayList<>()));
+        ChatStore.Room messages = store.room(roomId);
 
-        // Check for duplicate system messages
-        boolean isDuplicate = messages.stream()
-                .filter(m -> m.type() == ChatMessage.MessageType.SYSTEM)
-                .filter(m -> m.content().equals(content))
-                .anyMatch(m -> Math.abs(java.time.Duration.between(m.timestamp(), systemMessage.timestamp()).toMillis()) < 5000);
+        // Check for duplicate system messages (same content within 5 seconds)
+        boolean isDuplicate = !messages.firstSeen("system", content, SYSTEM_DUPLICATE_WINDOW_MS, System.currentTimeMillis());
 
         if (!isDuplicate) {
-            messages.add(systemMessage);
+            messages.append(systemMessage);
+            chatWriter.enqueue(systemMessage);
             logger.debug("system_message_added roomId={} messageId={}", roomId, messageId);
             return systemMessage;
         } else {
@@ -81,18 +108,108 @@ public class ChatService {
     }
 
     public List<ChatMessage> getRoomMessages(String roomId, int limit) {
-        List<ChatMessage> messages = roomMessages.getOrDefault(roomId, new ArrayList<>());
-        synchronized (messages) {
-            int fromIndex = Math.max(0, messages.size() - limit);
-            return new ArrayList<>(messages.subList(fromIndex, messages.size()));
-        }
+        return getRoomMessages(roomId, null, limit);
     }
 
     public List<ChatMessage> getRoomMessages(String roomId) {
-        List<ChatMessage> messages = roomMessages.getOrDefault(roomId, new ArrayList<>());
-        synchronized (messages) {
-            return new ArrayList<>(messages);
+        return getRoomMessages(roomId, maxMessagesPerRoom);
+    }
+
+    // Up to `limit` messages older than `beforeId` (the newest ones when null), oldest first.
+    // Served from the ring while it reaches far enough back; the rest comes from chat_messages
+    // by (created_at, id) keyset plus whatever the writer has not inserted yet.
+    public List<ChatMessage> getRoomMessages(String roomId, String beforeId, int limit) {
+        int n = Math.min(Math.max(limit, 0), maxMessagesPerRoom);
+        if (n == 0) {
+            return new ArrayList<>();
+        }
+
+        ChatStore.Room chat = store.existing(roomId);
+        ChatStore.Window window = chat == null ? null : chat.before(beforeId, n);
+        List<ChatMessage> page = window == null ? new ArrayList<>() : window.messages();
+        if (page.size() >= n || (window != null && window.reachedStart() && chat.noOlderHistory())) {
+            return page;
+        }
+
+        ChatMessage boundary;
+        if (!page.isEmpty()) {
+            boundary = page.get(0);
+        } else if (window != null && window.cursor() != null) {
+            boundary = window.cursor();
+        } else if (beforeId != null) {
+            boundary = findMessage(roomId, beforeId);
+            if (boundary == null) {
+                return page;
+            }
+        } else {
+            boundary = null;
+        }
+
+        int remaining = n - page.size();
+        List<ChatMessage> older = loadOlder(roomId, boundary, remaining);
+        if (window != null && window.reachedStart() && older.size() < remaining) {
+            // nothing precedes the ring: later reads of this room never need the table
+            chat.markNoOlderHistory();
         }
+        List<ChatMessage> result = new ArrayList<>(older.size() + page.size());
+        result.addAll(older);
+        result.addAll(page);
+        return result;
+    }
+
+    // Older than boundary (or the newest when null), from the table and the write-behind queue.
+    private List<ChatMessage> loadOlder(String roomId, ChatMessage boundary, int limit) {
+        Map<String, ChatMessage> merged = new HashMap<>();
+        for (ChatMessage m : chatWriter.pending(roomId)) {
+            if (boundary == null || NEWEST_FIRST.compare(m, boundary) > 0) {
+                merged.put(m.id(), m);
+            }
+        }
+        List<ChatMessageRecord> rows = boundary == null
+                ? chatRepo.findByRoomIdOrderByCreatedAtDescIdDesc(roomId, PageRequest.of(0, limit))
+                : chatRepo.findPageBefore(roomId, boundary.timestamp(), boundary.id(), PageRequest.of(0, limit));
+        for (ChatMessageRecord row : rows) {
+            merged.putIfAbsent(row.getId(), row.toMessage());
+        }
+
+        List<ChatMessage> older = new ArrayList<>(merged.values());
+        older.sort(NEWEST_FIRST);
+        if (older.size() > limit) {
+            older = older.subList(0, limit);
+        }
+        Collections.reverse(older);
+        return older;
+    }
+
+    private ChatMessage findMessage(String roomId, String messageId) {
+        for (ChatMessage m : chatWriter.pending(roomId)) {
+            if (m.id().equals(messageId)) {
+                return m;
+            }
+        }
+        return chatRepo.findById(messageId)
+                .filter(row -> row.getRoomId().equals(roomId))
+                .map(ChatMessageRecord::toMessage)
+                .orElse(null);
+    }
+
+    // Rooms nobody has written to for a while give their ring back; history stays in the table.
+    @Scheduled(fixedDelayString = "${realscribe.chat.evict-interval-ms:60000}")
+    public void evictIdleRooms() {
+        store.evictIdle(idleEvictMillis);
+    }
+
+    public void onRemoteMessage(Consumer<ChatMessage> listener) {
+        store.onRemoteMessage(listener);
+    }
+
+    public Map<String, Long> stats() {
+        return store.stats();
+    }
+
+    // Postgres keeps microseconds; truncating here keeps ring and table cursors comparable.
+    private static LocalDateTime now() {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
     }
 
     private String generateMessageId(String roomId) {
@@ -106,29 +223,33 @@ public class ChatService {
 
     // Method to get message count for a room
     public int getMessageCount(String roomId) {
-        return roomMessages.getOrDefault(roomId, new ArrayList<>()).size();
+        ChatStore.Room messages = store.existing(roomId);
+        return messages == null ? 0 : messages.size();
     }
 
     // Method to clear all messages for a room (when room is deleted)
-    public synchronized void clearRoomMessages(String roomId) {
-        if (roomMessages.containsKey(roomId)) {
-            roomMessages.remove(roomId);
+    public void clearRoomMessages(String roomId) {
+        clearRooms(List.of(roomId));
+    }
+
+    // Same for many rooms; their history is deleted in one batch
+    public void clearRooms(Collection<String> roomIds) {
+        store.clear(roomIds);
+        for (String roomId : roomIds) {
             messageCounters.remove(roomId);
-            logger.info("chat_room_messages_cleared roomId={}", roomId);
         }
+        chatWriter.deleteRooms(roomIds);
+        logger.info("chat_room_messages_cleared rooms={}", roomIds);
     }
 
     // Method to clear old messages (useful for memory management)
-    public synchronized void clearOldMessages(String roomId, int keepLastN) {
-        List<ChatMessage> messages = roomMessages.get(roomId);
-        if (messages != null && messages.size() > keepLastN) {
-            synchronized (messages) {
-                int removeCount = messages.size() - keepLastN;
-                for (int i = 0; i < removeCount; i++) {
-                    messages.remove(0);
-                }
+    public void clearOldMessages(String roomId, int keepLastN) {
+        ChatStore.Room messages = store.existing(roomId);
+        if (messages != null) {
+            int removeCount = messages.trimTo(keepLastN);
+            if (removeCount > 0) {
                 logger.debug("chat_old_messages_cleared roomId={} removed={}", roomId, removeCount);
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,55 @@
+package com.realscribe.realscribe.Service;
+
+import com.realscribe.realscribe.DTO.ChatMessage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Where each room's recent chat is kept, picked with realscribe.store: "memory"
+// (InMemoryChatStore, the default) or "postgres" (PostgresChatStore, shared by every replica).
+// The full history is always chat_messages, written by ChatWriteBehindService.
+public interface ChatStore {
+
+    // messages is oldest first; cursor is the message named by beforeId when it was found;
+    // reachedStart means the window begins at the first message the room's store ever held
+    record Window(List<ChatMessage> messages, ChatMessage cursor, boolean reachedStart) {}
+
+    interface Room {
+        // Records (userId, content) and returns false when it was already seen within windowMillis.
+        boolean firstSeen(String userId, String content, long windowMillis, long now);
+
+        void append(ChatMessage message);
+
+        // Up to limit messages before the one with beforeId (or the newest), or null when
+        // beforeId is not held any more.
+        Window before(String beforeId, int limit);
+
+        int size();
+
+        // Drops all but the newest keepLastN messages; returns how many were dropped.
+        int trimTo(int keepLastN);
+
+        // Set once the table is known to hold nothing older than the first message held here.
+        boolean noOlderHistory();
+
+        void markNoOlderHistory();
+    }
+
+    // Created on first use.
+    Room room(String roomId);
+
+    // null when nothing is held for the room.
+    Room existing(String roomId);
+
+    void clear(Collection<String> roomIds);
+
+    void evictIdle(long idleMillis);
+
+    // Messages appended on other replicas, for broadcasting to this node's subscribers.
+    default void onRemoteMessage(Consumer<ChatMessage> listener) {
+    }
+
+    Map<String, Long> stats();
+}
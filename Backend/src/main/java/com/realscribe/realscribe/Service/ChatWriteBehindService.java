@@ -0,0 +1,218 @@
+package com.realscribe.realscribe.Service;
+
+import com.realscribe.realscribe.DTO.ChatMessage;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Write-behind stage for chat: accepted messages are queued and inserted into chat_messages
+// in JDBC batches, size-triggered on a background thread or on the periodic flush.
+@Service
+public class ChatWriteBehindService {
+    private static final Logger logger = LoggerFactory.getLogger(ChatWriteBehindService.class);
+
+    private static final String INSERT_SQL =
+            "INSERT INTO chat_messages (id, room_id, user_id, sender_name, content, message_type, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?) ON CONFLICT (id) DO NOTHING";
+
+    private static final String DELETE_ROOM_SQL = "DELETE FROM chat_messages WHERE room_id = ?";
+
+    private final JdbcTemplate jdbc;
+    private final int batchSize;
+    private final int maxQueued;
+
+    private final ArrayDeque<ChatMessage> queue = new ArrayDeque<>();
+    // guards queue; held only for in-memory work
+    private final Object lock = new Object();
+    // held for the whole drain + write so readers never see a message in neither place
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ExecutorService flushExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "chat-write-behind");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong persisted = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Timer insertTimer;
+    private final Timer deleteTimer;
+
+    public ChatWriteBehindService(
+            JdbcTemplate jdbc,
+            @Value("${realscribe.chat.write-behind.batch-size:200}") int batchSize,
+            @Value("${realscribe.chat.write-behind.max-queued:10000}") int maxQueued,
+            MeterRegistry meters) {
+        this.jdbc = jdbc;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxQueued = Math.max(this.batchSize, maxQueued);
+        this.insertTimer = Timer.builder("realscribe.db.batch")
+                .tags("table", "chat_messages", "operation", "insert").register(meters);
+        this.deleteTimer = Timer.builder("realscribe.db.batch")
+                .tags("table", "chat_messages", "operation", "delete").register(meters);
+    }
+
+    public void enqueue(ChatMessage message) {
+        int size = offer(message);
+        if (size < 0) {
+            // Queue is full: the producer pays for the flush (caller-runs backpressure).
+            logger.warn("chat_write_behind_backpressure queued={}", maxQueued);
+            flush();
+            size = offer(message);
+            if (size < 0) {
+                dropped.incrementAndGet();
+                logger.error("chat_write_behind_dropped roomId={} messageId={}", message.roomId(), message.id());
+                return;
+            }
+        }
+        enqueued.incrementAndGet();
+
+        if (size >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            try {
+                flushExecutor.execute(() -> {
+                    flushScheduled.set(false);
+                    flush();
+                });
+            } catch (RejectedExecutionException e) {
+                // shutting down: the @PreDestroy flush picks it up
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    // Queued messages of a room, oldest first. Waits for an in-flight batch so a message is
+    // always visible either here or in the table.
+    public List<ChatMessage> pending(String roomId) {
+        flushLock.lock();
+        try {
+            synchronized (lock) {
+                List<ChatMessage> result = new ArrayList<>();
+                for (ChatMessage message : queue) {
+                    if (message.roomId().equals(roomId)) {
+                        result.add(message);
+                    }
+                }
+                return result;
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // Discards anything queued for the rooms and deletes their history; used when rooms are deleted.
+    public void deleteRooms(Collection<String> roomIds) {
+        Set<String> rooms = new HashSet<>(roomIds);
+        flushLock.lock();
+        try {
+            synchronized (lock) {
+                queue.removeIf(message -> rooms.contains(message.roomId()));
+            }
+            List<Object[]> args = new ArrayList<>(rooms.size());
+            for (String roomId : rooms) {
+                args.add(new Object[]{roomId});
+            }
+            deleteTimer.record(() -> jdbc.batchUpdate(DELETE_ROOM_SQL, args));
+            logger.debug("chat_history_deleted rooms={}", rooms.size());
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${realscribe.chat.write-behind.flush-interval-ms:500}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            List<ChatMessage> batch;
+            while (!(batch = drain()).isEmpty()) {
+                try {
+                    List<Object[]> args = new ArrayList<>(batch.size());
+                    for (ChatMessage m : batch) {
+                        args.add(new Object[]{m.id(), m.roomId(), m.userId(), m.senderName(), m.content(),
+                                m.type().name(), m.timestamp()});
+                    }
+                    insertTimer.record(() -> jdbc.batchUpdate(INSERT_SQL, args));
+                    persisted.addAndGet(batch.size());
+                } catch (Exception e) {
+                    failedBatches.incrementAndGet();
+                    int requeued = requeue(batch);
+                    dropped.addAndGet(batch.size() - requeued);
+                    logger.error("chat_write_behind_flush_failed batch={} requeued={} error={}",
+                            batch.size(), requeued, e.toString());
+                    return;
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdown();
+        flush();
+        logger.info("chat_write_behind_shutdown persisted={} dropped={}", persisted.get(), dropped.get());
+    }
+
+    public Map<String, Long> stats() {
+        long queued;
+        synchronized (lock) {
+            queued = queue.size();
+        }
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("queued", queued);
+        stats.put("enqueued", enqueued.get());
+        stats.put("persisted", persisted.get());
+        stats.put("failedBatches", failedBatches.get());
+        stats.put("dropped", dropped.get());
+        return stats;
+    }
+
+    // Returns the new size, or -1 when the queue is full.
+    private int offer(ChatMessage message) {
+        synchronized (lock) {
+            if (queue.size() >= maxQueued) {
+                return -1;
+            }
+            queue.addLast(message);
+            return queue.size();
+        }
+    }
+
+    private List<ChatMessage> drain() {
+        synchronized (lock) {
+            int n = Math.min(batchSize, queue.size());
+            List<ChatMessage> batch = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                batch.add(queue.pollFirst());
+            }
+            return batch;
+        }
+    }
+
+    // Puts a failed batch back at the head, keeping order; returns how many fit.
+    private int requeue(List<ChatMessage> batch) {
+        synchronized (lock) {
+            int n = Math.min(Math.max(0, maxQueued - queue.size()), batch.size());
+            for (int i = n - 1; i >= 0; i--) {
+                queue.addFirst(batch.get(i));
+            }
+            return n;
+        }
+    }
+}
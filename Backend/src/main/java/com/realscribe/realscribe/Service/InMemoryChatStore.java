@@ -0,0 +1,234 @@
+package com.realscribe.realscribe.Service;
+
+import com.realscribe.realscribe.DTO.ChatMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// The default chat store: a bounded ring of recent messages per room in this JVM.
+// PostgresChatStore uses one as its local cache.
+@Service
+@ConditionalOnProperty(name = "realscribe.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryChatStore implements ChatStore {
+
+    // roomId -> bounded ring of the most recent messages; chat_messages holds the full history
+    private final Map<String, RoomChat> roomMessages = new ConcurrentHashMap<>();
+    private final int capacity;
+
+    public InMemoryChatStore(@Value("${realscribe.chat.max-messages-per-room:500}") int maxMessagesPerRoom) {
+        this.capacity = Math.max(1, maxMessagesPerRoom);
+    }
+
+    @Override
+    public Room room(String roomId) {
+        return roomMessages.computeIfAbsent(roomId, k -> new RoomChat(capacity));
+    }
+
+    @Override
+    public Room existing(String roomId) {
+        return roomMessages.get(roomId);
+    }
+
+    @Override
+    public void clear(Collection<String> roomIds) {
+        for (String roomId : roomIds) {
+            roomMessages.remove(roomId);
+        }
+    }
+
+    void clearAll() {
+        roomMessages.clear();
+    }
+
+    @Override
+    public void evictIdle(long idleMillis) {
+        long now = System.currentTimeMillis();
+        roomMessages.values().removeIf(chat -> now - chat.lastAppended >= idleMillis);
+    }
+
+    @Override
+    public Map<String, Long> stats() {
+        long messages = 0;
+        long largestRoom = 0;
+        for (RoomChat chat : roomMessages.values()) {
+            int size = chat.size();
+            messages += size;
+            largestRoom = Math.max(largestRoom, size);
+        }
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("rooms", (long) roomMessages.size());
+        stats.put("messages", messages);
+        stats.put("largestRoom", largestRoom);
+        return stats;
+    }
+
+    // Fixed-size ring of a room's latest messages. Writers claim a sequence with one atomic
+    // increment and publish into its slot; nobody blocks. Readers copy only the requested tail
+    // and skip slots whose sequence does not match (still being written, or already overwritten).
+    private static final class RoomChat implements ChatStore.Room {
+        private record Slot(long seq, ChatMessage message) {}
+
+        private final AtomicReferenceArray<Slot> slots;
+        private final int capacity;
+        // next sequence to hand out
+        private final AtomicLong head = new AtomicLong();
+        // sequences below this were trimmed by clearOldMessages
+        private final AtomicLong floor = new AtomicLong();
+        // duplicate window -> recent (userId, content) pairs
+        private final Map<Long, RecentIndex> recent = new ConcurrentHashMap<>();
+        private volatile long lastAppended = System.currentTimeMillis();
+        // set once the table is known to hold nothing older than this ring's first message
+        private volatile boolean noOlderHistory;
+
+        private RoomChat(int capacity) {
+            this.capacity = capacity;
+            this.slots = new AtomicReferenceArray<>(capacity);
+        }
+
+        @Override
+        public boolean firstSeen(String userId, String content, long windowMillis, long now) {
+            return recent.computeIfAbsent(windowMillis, RecentIndex::new).firstSeen(userId, content, now);
+        }
+
+        @Override
+        public void append(ChatMessage message) {
+            long seq = head.getAndIncrement();
+            slots.set(index(seq), new Slot(seq, message));
+            lastAppended = System.currentTimeMillis();
+        }
+
+        // Up to limit messages before the one with beforeId (or the newest), or null when
+        // beforeId is not in the ring any more.
+        @Override
+        public ChatStore.Window before(String beforeId, int limit) {
+            long end = head.get();
+            long oldest = Math.max(floor.get(), end - capacity);
+            ChatMessage cursor = null;
+            if (beforeId != null) {
+                long found = -1;
+                for (long seq = end - 1; seq >= oldest; seq--) {
+                    Slot slot = slots.get(index(seq));
+                    if (slot != null && slot.seq() == seq && slot.message().id().equals(beforeId)) {
+                        found = seq;
+                        cursor = slot.message();
+                        break;
+                    }
+                }
+                if (found < 0) {
+                    return null;
+                }
+                end = found;
+            }
+            long start = Math.max(oldest, end - limit);
+            List<ChatMessage> result = new ArrayList<>((int) Math.max(0, end - start));
+            for (long seq = start; seq < end; seq++) {
+                Slot slot = slots.get(index(seq));
+                if (slot != null && slot.seq() == seq) {
+                    result.add(slot.message());
+                }
+            }
+            // a slot overwritten while copying means older messages are gone from the ring
+            boolean complete = result.size() == end - start;
+            return new ChatStore.Window(result, cursor, start == 0 && complete);
+        }
+
+        @Override
+        public boolean noOlderHistory() {
+            return noOlderHistory;
+        }
+
+        @Override
+        public void markNoOlderHistory() {
+            noOlderHistory = true;
+        }
+
+        @Override
+        public int size() {
+            long end = head.get();
+            return (int) (end - Math.max(floor.get(), end - capacity));
+        }
+
+        // Drops all but the newest keepLastN messages; returns how many were dropped.
+        @Override
+        public int trimTo(int keepLastN) {
+            long end = head.get();
+            long oldFloor = Math.max(floor.get(), end - capacity);
+            long newFloor = end - Math.max(keepLastN, 0);
+            if (newFloor <= oldFloor) {
+                return 0;
+            }
+            floor.accumulateAndGet(newFloor, Math::max);
+            for (long seq = oldFloor; seq < newFloor; seq++) {
+                int i = index(seq);
+                Slot slot = slots.get(i);
+                if (slot != null && slot.seq() == seq) {
+                    slots.compareAndSet(i, slot, null);
+                }
+            }
+            return (int) (newFloor - oldFloor);
+        }
+
+        private int index(long seq) {
+            return (int) (seq % capacity);
+        }
+    }
+
+    // (userId, content) -> last time it was accepted, for the current and the previous window.
+    // Buckets rotate once per window, so an entry lives at most two windows and nothing ever
+    // has to sweep it; a lookup checks two hash maps regardless of how long the room has run.
+    private static final class RecentIndex {
+        private record Key(String userId, String content) {}
+
+        private record Buckets(long start, Map<Key, Long> current, Map<Key, Long> previous) {}
+
+        private final long windowMillis;
+        private final AtomicReference<Buckets> buckets;
+
+        private RecentIndex(long windowMillis) {
+            this.windowMillis = windowMillis;
+            this.buckets = new AtomicReference<>(
+                    new Buckets(System.currentTimeMillis(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>()));
+        }
+
+        // Records the pair and returns true unless it was already accepted within the window.
+        private boolean firstSeen(String userId, String content, long now) {
+            Key key = new Key(userId, content);
+            Buckets b = rotate(now);
+            Long previous = b.previous().get(key);
+            if (previous != null && now - previous < windowMillis) {
+                return false;
+            }
+            boolean[] fresh = {true};
+            b.current().compute(key, (k, last) -> {
+                if (last != null && now - last < windowMillis) {
+                    fresh[0] = false;
+                    return last;
+                }
+                return now;
+            });
+            return fresh[0];
+        }
+
+        private Buckets rotate(long now) {
+            while (true) {
+                Buckets b = buckets.get();
+                long age = now - b.start();
+                if (age < windowMillis) {
+                    return b;
+                }
+                // after two idle windows the old current bucket can't hold anything still in range
+                Map<Key, Long> previous = age < 2 * windowMillis ? b.current() : new ConcurrentHashMap<>();
+                Buckets next = new Buckets(now, new ConcurrentHashMap<>(), previous);
+                if (buckets.compareAndSet(b, next)) {
+                    return next;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.realscribe.realscribe.Service;
+
+import com.realscribe.realscribe.DTO.UserPresence;
+import com.realscribe.realscribe.Service.PresenceService.UserBinding;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Presence is locked per room: join and leave only take the monitor of the room they touch,
+// so churn in one room never waits on another. A session's binding is published inside its
+// room's monitor after the session is added, and removed before the session is, which is what
+// lets the orphan sweep check one binding at a time without pausing the node.
+// The default store: each node sees only the sessions connected to it.
+@Service
+@ConditionalOnProperty(name = "realscribe.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryPresenceStore implements PresenceStore {
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryPresenceStore.class);
+
+    // roomId -> users in the room, each with its display name and open sessions
+    private final Map<String, RoomPresence> roomUsers = new ConcurrentHashMap<>();
+    // sessionId -> (roomId, userId, name)
+    private final Map<String, UserBinding> sessions = new ConcurrentHashMap<>();
+
+    private final int sweepBatchSize;
+    // weakly consistent, so it can be resumed across sweep runs; only the sweep touches it
+    private Iterator<Map.Entry<String, UserBinding>> sweepCursor = Collections.emptyIterator();
+    private int sweepCleaned;
+
+    public InMemoryPresenceStore(@Value("${realscribe.presence.sweep-batch-size:500}") int sweepBatchSize) {
+        this.sweepBatchSize = Math.max(1, sweepBatchSize);
+    }
+
+    @Override
+    public boolean join(String roomId, String userId, String name, String sessionId) {
+        // Remove any existing session binding for this sessionId to prevent duplicates
+        UserBinding existingBinding = sessions.remove(sessionId);
+        if (existingBinding != null) {
+            // Clean up the old binding
+            cleanupSessionFromRoom(existingBinding.roomId(), existingBinding.userId(), sessionId);
+        }
+
+        UserBinding binding = new UserBinding(roomId, userId, name);
+        while (true) {
+            RoomPresence room = roomUsers.computeIfAbsent(roomId, r -> new RoomPresence());
+            synchronized (room) {
+                if (room.retired) {
+                    // emptied and removed concurrently; take the replacement
+                    continue;
+                }
+                UserRecord user = room.users.computeIfAbsent(userId, u -> new UserRecord(name));
+
+                boolean isFirstSession = user.sessions.isEmpty();
+                user.sessions.add(sessionId);
+                if (isFirstSession || !user.name.equals(name)) {
+                    // the latest join decides the display name
+                    user.name = name;
+                    room.membershipChanged();
+                }
+                sessions.put(sessionId, binding);
+                return isFirstSession;
+            }
+        }
+    }
+
+    @Override
+    public Optional<String> roomOf(String sessionId) {
+        UserBinding binding = sessions.get(sessionId);
+        return binding == null ? Optional.empty() : Optional.of(binding.roomId());
+    }
+
+    @Override
+    public Optional<UserBinding> leave(String sessionId) {
+        UserBinding binding = sessions.remove(sessionId);
+        if (binding == null) {
+            logger.debug("presence_leave_session_not_found sessionId={}", sessionId);
+            return Optional.empty();
+        }
+
+        boolean userFullyLeft = cleanupSessionFromRoom(binding.roomId(), binding.userId(), sessionId);
+
+        return userFullyLeft ? Optional.of(binding) : Optional.empty();
+    }
+
+    private boolean cleanupSessionFromRoom(String roomId, String userId, String sessionId) {
+        RoomPresence room = roomUsers.get(roomId);
+        if (room == null) return true;
+
+        synchronized (room) {
+            if (room.retired) return true;
+
+            UserRecord user = room.users.get(userId);
+            if (user != null) {
+                user.sessions.remove(sessionId);
+
+                if (user.sessions.isEmpty()) {
+                    room.users.remove(userId);
+                    room.membershipChanged();
+
+                    if (room.users.isEmpty()) {
+                        room.retired = true;
+                        roomUsers.remove(roomId, room);
+                        logger.info("presence_room_empty roomId={}", roomId);
+                    }
+                    return true; // User fully left
+                }
+            }
+            return false; // User still has other sessions
+        }
+    }
+
+    // Sorted by name; rebuilt only after someone joins, leaves or renames, otherwise shared.
+    @Override
+    public List<UserPresence> list(String roomId) {
+        RoomPresence room = roomUsers.get(roomId);
+        return room == null ? new ArrayList<>() : room.sortedUsers();
+    }
+
+    // Cleanup orphaned sessions incrementally: each run checks the next slice of bindings,
+    // taking only the monitor of the room a binding points at.
+    @Override
+    public void sweep() {
+        if (!sweepCursor.hasNext()) {
+            if (sweepCleaned > 0) {
+                logger.info("presence_orphaned_sessions_cleaned count={}", sweepCleaned);
+                sweepCleaned = 0;
+            }
+            sweepCursor = sessions.entrySet().iterator();
+        }
+
+        for (int i = 0; i < sweepBatchSize && sweepCursor.hasNext(); i++) {
+            Map.Entry<String, UserBinding> entry = sweepCursor.next();
+            String sessionId = entry.getKey();
+            UserBinding binding = entry.getValue();
+
+            RoomPresence room = roomUsers.get(binding.roomId());
+            boolean orphaned;
+            if (room == null) {
+                orphaned = true;
+            } else {
+                synchronized (room) {
+                    UserRecord user = room.users.get(binding.userId());
+                    orphaned = room.retired || user == null || !user.sessions.contains(sessionId);
+                }
+            }
+
+            // by identity, so a binding a concurrent join put back (even an equal one) survives
+            if (orphaned && removeBinding(sessionId, binding)) {
+                sweepCleaned++;
+                logger.debug("presence_orphaned_session_cleaned sessionId={} user={}", sessionId, binding.name());
+            }
+        }
+    }
+
+    private boolean removeBinding(String sessionId, UserBinding binding) {
+        boolean[] removed = {false};
+        sessions.computeIfPresent(sessionId, (k, current) -> {
+            if (current == binding) {
+                removed[0] = true;
+                return null;
+            }
+            return current;
+        });
+        return removed[0];
+    }
+
+    @Override
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("sessions", (long) sessions.size());
+        stats.put("rooms", (long) roomUsers.size());
+        return stats;
+    }
+
+    private static final class UserRecord {
+        private volatile String name;
+        private final Set<String> sessions = ConcurrentHashMap.newKeySet();
+
+        private UserRecord(String name) {
+            this.name = name;
+        }
+    }
+
+    // Mutated under its own monitor; list() reads without it.
+    private static final class RoomPresence {
+        private record SortedUsers(long version, List<UserPresence> users) {}
+
+        // userId -> record, only users with at least one open session
+        private final Map<String, UserRecord> users = new ConcurrentHashMap<>();
+        private final AtomicLong version = new AtomicLong();
+        private volatile SortedUsers sorted;
+        // set when the room emptied and left the map; joiners retry with a fresh one
+        private boolean retired;
+
+        private void membershipChanged() {
+            version.incrementAndGet();
+        }
+
+        private List<UserPresence> sortedUsers() {
+            long v = version.get();
+            SortedUsers cached = sorted;
+            if (cached != null && cached.version() == v) {
+                return cached.users();
+            }
+            List<UserPresence> list = new ArrayList<>(users.size());
+            users.forEach((userId, user) -> list.add(new UserPresence(userId, user.name)));
+            list.sort(Comparator.comparing(UserPresence::name));
+            List<UserPresence> result = List.copyOf(list);
+            // a change that raced with the copy bumps the version, so this entry is never served
+            sorted = new SortedUsers(v, result);
+            return result;
+        }
+    }
+}
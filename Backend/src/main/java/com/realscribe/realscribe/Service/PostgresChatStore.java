@@ -0,0 +1,182 @@
+package com.realscribe.realscribe.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.realscribe.realscribe.DTO.ChatMessage;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Chat shared by every replica. History is chat_messages as always; the recent-message rings
+// are a local cache that every replica keeps current by NOTIFYing the others of each message
+// it appends (and of cleared rooms). A replica that gets a message for a room it holds nothing
+// for starts a ring there, which reads past its start fall through to the table as usual.
+// Duplicate suppression stays per replica.
+@Service
+@ConditionalOnProperty(name = "realscribe.store", havingValue = "postgres")
+public class PostgresChatStore implements ChatStore {
+    private static final Logger logger = LoggerFactory.getLogger(PostgresChatStore.class);
+
+    private static final String CHANNEL = "realscribe_chat";
+    // NOTIFY payloads are limited to 8000 bytes
+    private static final int MAX_PAYLOAD_BYTES = 7900;
+
+    private final InMemoryChatStore local;
+    private final PostgresNotifications notifications;
+    private final ObjectMapper objectMapper;
+    private final String replicaId = UUID.randomUUID().toString();
+    private final List<Consumer<ChatMessage>> listeners = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong remoteMessages = new AtomicLong();
+    private final AtomicLong oversized = new AtomicLong();
+
+    // message is null when the room's cache must be dropped: it was cleared, or the message
+    // did not fit in a notification
+    private record Notice(String replica, String roomId, ChatMessage message) {}
+
+    public PostgresChatStore(
+            PostgresNotifications notifications,
+            ObjectMapper objectMapper,
+            @Value("${realscribe.chat.max-messages-per-room:500}") int maxMessagesPerRoom) {
+        this.local = new InMemoryChatStore(maxMessagesPerRoom);
+        this.notifications = notifications;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    public void init() {
+        notifications.subscribe(CHANNEL, this::onNotification, local::clearAll);
+    }
+
+    @Override
+    public Room room(String roomId) {
+        return new SharedRoom(roomId, local.room(roomId));
+    }
+
+    @Override
+    public Room existing(String roomId) {
+        Room room = local.existing(roomId);
+        return room == null ? null : new SharedRoom(roomId, room);
+    }
+
+    @Override
+    public void clear(Collection<String> roomIds) {
+        local.clear(roomIds);
+        for (String roomId : roomIds) {
+            publish(new Notice(replicaId, roomId, null));
+        }
+    }
+
+    @Override
+    public void evictIdle(long idleMillis) {
+        local.evictIdle(idleMillis);
+    }
+
+    @Override
+    public void onRemoteMessage(Consumer<ChatMessage> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>(local.stats());
+        stats.put("published", published.get());
+        stats.put("remoteMessages", remoteMessages.get());
+        stats.put("oversized", oversized.get());
+        return stats;
+    }
+
+    private void publish(Notice notice) {
+        try {
+            String payload = objectMapper.writeValueAsString(notice);
+            if (payload.getBytes(StandardCharsets.UTF_8).length > MAX_PAYLOAD_BYTES) {
+                // the others drop their ring and read the message from the table once it is written
+                oversized.incrementAndGet();
+                payload = objectMapper.writeValueAsString(new Notice(replicaId, notice.roomId(), null));
+            }
+            notifications.notify(CHANNEL, payload);
+            published.incrementAndGet();
+        } catch (Exception e) {
+            logger.warn("chat_notify_failed roomId={} error={}", notice.roomId(), e.toString());
+        }
+    }
+
+    private void onNotification(String payload) {
+        Notice notice;
+        try {
+            notice = objectMapper.readValue(payload, Notice.class);
+        } catch (Exception e) {
+            logger.warn("chat_notification_invalid error={}", e.toString());
+            return;
+        }
+        if (replicaId.equals(notice.replica())) {
+            return;
+        }
+        if (notice.message() == null) {
+            local.clear(List.of(notice.roomId()));
+            return;
+        }
+        remoteMessages.incrementAndGet();
+        local.room(notice.roomId()).append(notice.message());
+        for (Consumer<ChatMessage> listener : listeners) {
+            listener.accept(notice.message());
+        }
+    }
+
+    // The local ring, announcing what is appended to it.
+    private final class SharedRoom implements Room {
+        private final String roomId;
+        private final Room ring;
+
+        private SharedRoom(String roomId, Room ring) {
+            this.roomId = roomId;
+            this.ring = ring;
+        }
+
+        @Override
+        public boolean firstSeen(String userId, String content, long windowMillis, long now) {
+            return ring.firstSeen(userId, content, windowMillis, now);
+        }
+
+        @Override
+        public void append(ChatMessage message) {
+            ring.append(message);
+            publish(new Notice(replicaId, roomId, message));
+        }
+
+        @Override
+        public Window before(String beforeId, int limit) {
+            return ring.before(beforeId, limit);
+        }
+
+        @Override
+        public int size() {
+            return ring.size();
+        }
+
+        @Override
+        public int trimTo(int keepLastN) {
+            return ring.trimTo(keepLastN);
+        }
+
+        // Another replica's messages may still be in its write-behind queue, so an empty table
+        // proves nothing here: reads that reach the ring's start always check it.
+        @Override
+        public boolean noOlderHistory() {
+            return false;
+        }
+
+        @Override
+        public void markNoOlderHistory() {
+        }
+    }
+}
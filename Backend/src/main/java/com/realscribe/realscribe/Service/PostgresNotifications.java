@@ -0,0 +1,156 @@
+package com.realscribe.realscribe.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// LISTEN/NOTIFY fan-out between replicas for the Postgres stores. One connection, opened with
+// the driver outside the pool so it never takes a pooled one for good, is held for listening and
+// polled by a daemon thread; notifications are sent with pg_notify on
+// whatever connection the caller's JdbcTemplate uses. NOTIFY is not durable: whatever is sent
+// while the listener is reconnecting is lost, so subscribers are told to drop their caches.
+@Service
+@ConditionalOnProperty(name = "realscribe.store", havingValue = "postgres")
+public class PostgresNotifications {
+    private static final Logger logger = LoggerFactory.getLogger(PostgresNotifications.class);
+
+    private static final int POLL_MILLIS = 500;
+    private static final long RECONNECT_MILLIS = 1000;
+
+    private final DataSourceProperties dataSource;
+    private final JdbcTemplate jdbc;
+    // channel -> subscriber; channels are fixed identifiers, never user input
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+    private final Thread listener;
+    private volatile boolean running = true;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+
+    private record Subscription(Consumer<String> onMessage, Runnable onReset) {}
+
+    public PostgresNotifications(DataSourceProperties dataSource, JdbcTemplate jdbc) {
+        this.dataSource = dataSource;
+        this.jdbc = jdbc;
+        this.listener = new Thread(this::listen, "store-notifications");
+        this.listener.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        listener.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        listener.interrupt();
+    }
+
+    // onReset runs after the listener reconnected, when notifications may have been missed.
+    public void subscribe(String channel, Consumer<String> onMessage, Runnable onReset) {
+        subscriptions.put(channel, new Subscription(onMessage, onReset));
+    }
+
+    // Payloads must stay under Postgres' 8000 byte limit.
+    public void notify(String channel, String payload) {
+        jdbc.queryForList("SELECT pg_notify(?, ?)", channel, payload);
+        sent.incrementAndGet();
+    }
+
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("sent", sent.get());
+        stats.put("received", received.get());
+        stats.put("reconnects", reconnects.get());
+        return stats;
+    }
+
+    private void listen() {
+        boolean connectedBefore = false;
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(
+                    dataSource.determineUrl(), dataSource.determineUsername(), dataSource.determinePassword())) {
+                connection.setAutoCommit(true);
+                PGConnection pg = connection.unwrap(PGConnection.class);
+                Set<String> listening = new HashSet<>();
+                listenToNew(connection, listening);
+                if (connectedBefore) {
+                    // only after LISTEN: whatever is sent from here on is delivered, so the reset
+                    // covers exactly the notifications that may have been missed
+                    reconnects.incrementAndGet();
+                    for (String channel : listening) {
+                        reset(channel);
+                    }
+                }
+                connectedBefore = true;
+
+                while (running) {
+                    // subscribers registered after startup are picked up here
+                    listenToNew(connection, listening);
+                    PGNotification[] notifications = pg.getNotifications(POLL_MILLIS);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        received.incrementAndGet();
+                        Subscription subscription = subscriptions.get(notification.getName());
+                        if (subscription == null) {
+                            continue;
+                        }
+                        try {
+                            subscription.onMessage().accept(notification.getParameter());
+                        } catch (Exception e) {
+                            logger.error("store_notification_failed channel={} error={}", notification.getName(), e.toString());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                logger.warn("store_listener_disconnected error={}", e.toString());
+                try {
+                    Thread.sleep(RECONNECT_MILLIS);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void listenToNew(Connection connection, Set<String> listening) throws SQLException {
+        for (String channel : subscriptions.keySet()) {
+            if (listening.add(channel)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+            }
+        }
+    }
+
+    private void reset(String channel) {
+        try {
+            subscriptions.get(channel).onReset().run();
+        } catch (Exception e) {
+            logger.error("store_notification_reset_failed channel={} error={}", channel, e.toString());
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.realscribe.realscribe.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.realscribe.realscribe.Cluster.ClusterService;
+import com.realscribe.realscribe.DTO.UserPresence;
+import com.realscribe.realscribe.Service.PresenceService.UserBinding;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Presence shared by every replica through one unlogged Postgres table (presence is transient:
+// losing it in a crash only means clients rejoin). Each replica writes the sessions connected
+// to it, reads room lists through a local cache, and tells the others about joins and leaves
+// with NOTIFY so they can drop their cached list and send presence deltas to their own clients.
+//
+// Sessions carry a heartbeat: every sweep a replica refreshes the rows of its own sessions and
+// deletes rows nobody refreshed within the TTL, i.e. the sessions of a replica that died.
+//
+// Whether a join is the user's first session in the room, or a leave their last, is decided in
+// the same transaction as the write, under an advisory lock on (room, user), so replicas
+// changing the same user's sessions can't both miss each other and announce a wrong delta.
+@Service
+@ConditionalOnProperty(name = "realscribe.store", havingValue = "postgres")
+public class PostgresPresenceStore implements PresenceStore {
+    private static final Logger logger = LoggerFactory.getLogger(PostgresPresenceStore.class);
+
+    private static final String CHANNEL = "realscribe_presence";
+
+    private static final String UPSERT_SQL = """
+            INSERT INTO presence_sessions (session_id, room_id, user_id, name, replica_id, joined_at, last_seen)
+            VALUES (?, ?, ?, ?, ?, now(), now())
+            ON CONFLICT (session_id) DO UPDATE SET
+                room_id = EXCLUDED.room_id, user_id = EXCLUDED.user_id, name = EXCLUDED.name,
+                joined_at = now(), last_seen = now()
+            """;
+
+    // the latest join decides the display name
+    private static final String LIST_SQL = """
+            SELECT DISTINCT ON (user_id) user_id, name FROM presence_sessions
+            WHERE room_id = ? ORDER BY user_id, joined_at DESC
+            """;
+
+    // transaction-scoped, so it is released with the commit
+    private static final String LOCK_USER_SQL = "SELECT pg_advisory_xact_lock(hashtext(?), hashtext(?))";
+
+    private static final String OTHER_SESSIONS_SQL =
+            "SELECT count(*) FROM presence_sessions WHERE room_id = ? AND user_id = ? AND session_id <> ?";
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transactions;
+    private final PostgresNotifications notifications;
+    private final ObjectMapper objectMapper;
+    private final long sessionTtlMillis;
+    // session ids are only unique per replica; rows are keyed by "{replica}/{sessionId}"
+    private final String replicaId = UUID.randomUUID().toString();
+
+    // sessionId -> binding, for the sessions connected to this replica
+    private final Map<String, UserBinding> localSessions = new ConcurrentHashMap<>();
+    // roomId -> sorted users, dropped whenever any replica changes the room
+    private final Map<String, List<UserPresence>> cache = new ConcurrentHashMap<>();
+    // bumped on every invalidation, so a list loaded across one is never cached
+    private final AtomicLong cacheEpoch = new AtomicLong();
+    private final List<Consumer<Change>> listeners = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    private record Notice(String replica, String roomId, String userId, String name,
+                          boolean presentBefore, boolean presentAfter) {}
+
+    public PostgresPresenceStore(
+            JdbcTemplate jdbc,
+            PlatformTransactionManager transactionManager,
+            PostgresNotifications notifications,
+            ObjectMapper objectMapper,
+            ClusterService cluster,
+            @Value("${realscribe.presence.session-ttl-ms:30000}") long sessionTtlMillis) {
+        if (cluster.enabled()) {
+            // cluster mode already keeps each room's presence on its home node and relays broadcasts
+            throw new IllegalStateException("realscribe.store=postgres cannot be combined with realscribe.cluster.enabled");
+        }
+        this.jdbc = jdbc;
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.notifications = notifications;
+        this.objectMapper = objectMapper;
+        this.sessionTtlMillis = Math.max(1000, sessionTtlMillis);
+    }
+
+    // Unlogged tables can't be declared through JPA, so the table is created here.
+    @PostConstruct
+    public void init() {
+        jdbc.execute("""
+                CREATE UNLOGGED TABLE IF NOT EXISTS presence_sessions (
+                    session_id TEXT PRIMARY KEY,
+                    room_id TEXT NOT NULL,
+                    user_id TEXT NOT NULL,
+                    name TEXT NOT NULL,
+                    replica_id TEXT NOT NULL,
+                    joined_at TIMESTAMPTZ NOT NULL,
+                    last_seen TIMESTAMPTZ NOT NULL
+                )
+                """);
+        jdbc.execute("CREATE INDEX IF NOT EXISTS idx_presence_sessions_room_user ON presence_sessions (room_id, user_id)");
+        jdbc.execute("CREATE INDEX IF NOT EXISTS idx_presence_sessions_replica ON presence_sessions (replica_id)");
+        notifications.subscribe(CHANNEL, this::onNotification, this::invalidateAll);
+        logger.info("presence_store_postgres replicaId={} sessionTtlMs={}", replicaId, sessionTtlMillis);
+    }
+
+    @Override
+    public boolean join(String roomId, String userId, String name, String sessionId) {
+        UserBinding previous = localSessions.get(sessionId);
+        if (previous != null && !(previous.roomId().equals(roomId) && previous.userId().equals(userId))) {
+            // same session joining elsewhere: leave the old room first
+            leave(sessionId);
+        }
+
+        String key = key(sessionId);
+        boolean isFirstSession = Boolean.TRUE.equals(transactions.execute(status -> {
+            lockUser(roomId, userId);
+            Long others = jdbc.queryForObject(OTHER_SESSIONS_SQL, Long.class, roomId, userId, key);
+            jdbc.update(UPSERT_SQL, key, roomId, userId, name, replicaId);
+            return others == null || others == 0;
+        }));
+        localSessions.put(sessionId, new UserBinding(roomId, userId, name));
+
+        invalidate(roomId);
+        publish(new Notice(replicaId, roomId, userId, name, !isFirstSession, true));
+        return isFirstSession;
+    }
+
+    @Override
+    public Optional<String> roomOf(String sessionId) {
+        UserBinding binding = localSessions.get(sessionId);
+        return binding == null ? Optional.empty() : Optional.of(binding.roomId());
+    }
+
+    @Override
+    public Optional<UserBinding> leave(String sessionId) {
+        UserBinding binding = localSessions.remove(sessionId);
+        if (binding == null) {
+            logger.debug("presence_leave_session_not_found sessionId={}", sessionId);
+            return Optional.empty();
+        }
+
+        boolean userFullyLeft = Boolean.TRUE.equals(transactions.execute(status -> {
+            lockUser(binding.roomId(), binding.userId());
+            jdbc.update("DELETE FROM presence_sessions WHERE session_id = ?", key(sessionId));
+            return !hasSessions(binding.roomId(), binding.userId());
+        }));
+        invalidate(binding.roomId());
+        if (userFullyLeft) {
+            publish(new Notice(replicaId, binding.roomId(), binding.userId(), binding.name(), true, false));
+        }
+        return userFullyLeft ? Optional.of(binding) : Optional.empty();
+    }
+
+    @Override
+    public List<UserPresence> list(String roomId) {
+        List<UserPresence> cached = cache.get(roomId);
+        if (cached != null) {
+            cacheHits.incrementAndGet();
+            return cached;
+        }
+        cacheMisses.incrementAndGet();
+        long epoch = cacheEpoch.get();
+        List<UserPresence> users = new ArrayList<>(jdbc.query(LIST_SQL,
+                (rs, i) -> new UserPresence(rs.getString("user_id"), rs.getString("name")), roomId));
+        users.sort(Comparator.comparing(UserPresence::name));
+        List<UserPresence> result = List.copyOf(users);
+        if (cacheEpoch.get() == epoch) {
+            cache.put(roomId, result);
+        }
+        return result;
+    }
+
+    // Heartbeat for this replica's sessions, then expiry of everyone else's stale ones.
+    @Override
+    public void sweep() {
+        try {
+            jdbc.update("UPDATE presence_sessions SET last_seen = now() WHERE replica_id = ?", replicaId);
+            List<UserBinding> removed = jdbc.query("""
+                    DELETE FROM presence_sessions
+                    WHERE last_seen < now() - (? * interval '1 millisecond')
+                    RETURNING room_id, user_id, name
+                    """, (rs, i) -> new UserBinding(rs.getString("room_id"), rs.getString("user_id"), rs.getString("name")),
+                    sessionTtlMillis);
+            if (removed.isEmpty()) {
+                // rooms nobody is in are not worth keeping in the cache
+                cache.values().removeIf(List::isEmpty);
+                return;
+            }
+            expired.addAndGet(removed.size());
+            logger.info("presence_sessions_expired count={}", removed.size());
+
+            Set<List<String>> seen = new HashSet<>();
+            for (UserBinding binding : removed) {
+                if (!seen.add(List.of(binding.roomId(), binding.userId()))) {
+                    continue;
+                }
+                invalidate(binding.roomId());
+                // under the lock: a join that counted the expired row has committed its own by now
+                boolean gone = Boolean.TRUE.equals(transactions.execute(status -> {
+                    lockUser(binding.roomId(), binding.userId());
+                    return !hasSessions(binding.roomId(), binding.userId());
+                }));
+                if (gone) {
+                    // nobody else announces these: tell this replica's clients and the other replicas
+                    Notice notice = new Notice(replicaId, binding.roomId(), binding.userId(), binding.name(), true, false);
+                    deliver(notice);
+                    publish(notice);
+                }
+            }
+        } catch (Exception e) {
+            logger.error("presence_sweep_failed error={}", e.toString());
+        }
+    }
+
+    @Override
+    public void onRemoteChange(Consumer<Change> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("sessions", (long) localSessions.size());
+        stats.put("cachedRooms", (long) cache.size());
+        stats.put("cacheHits", cacheHits.get());
+        stats.put("cacheMisses", cacheMisses.get());
+        stats.put("expired", expired.get());
+        return stats;
+    }
+
+    private void lockUser(String roomId, String userId) {
+        jdbc.query(LOCK_USER_SQL, rs -> null, roomId, userId);
+    }
+
+    private boolean hasSessions(String roomId, String userId) {
+        Long count = jdbc.queryForObject(
+                "SELECT count(*) FROM presence_sessions WHERE room_id = ? AND user_id = ?", Long.class, roomId, userId);
+        return count != null && count > 0;
+    }
+
+    private void publish(Notice notice) {
+        try {
+            notifications.notify(CHANNEL, objectMapper.writeValueAsString(notice));
+        } catch (Exception e) {
+            // the others still see the change in their next uncached list
+            logger.warn("presence_notify_failed roomId={} error={}", notice.roomId(), e.toString());
+        }
+    }
+
+    private void onNotification(String payload) {
+        Notice notice;
+        try {
+            notice = objectMapper.readValue(payload, Notice.class);
+        } catch (Exception e) {
+            logger.warn("presence_notification_invalid error={}", e.toString());
+            return;
+        }
+        if (replicaId.equals(notice.replica())) {
+            return;
+        }
+        invalidate(notice.roomId());
+        deliver(notice);
+    }
+
+    private void deliver(Notice notice) {
+        Change change = new Change(notice.roomId(), new UserPresence(notice.userId(), notice.name()),
+                notice.presentBefore(), notice.presentAfter());
+        for (Consumer<Change> listener : listeners) {
+            listener.accept(change);
+        }
+    }
+
+    private void invalidate(String roomId) {
+        cacheEpoch.incrementAndGet();
+        cache.remove(roomId);
+    }
+
+    // notifications may have been missed: nothing cached can be trusted
+    private void invalidateAll() {
+        cacheEpoch.incrementAndGet();
+        cache.clear();
+    }
+
+    private String key(String sessionId) {
+        return replicaId + "/" + sessionId;
+    }
+}
@@ -0,0 +1,153 @@
+package com.realscribe.realscribe.Service;
+
+import com.realscribe.realscribe.DTO.PresenceDelta;
+import com.realscribe.realscribe.DTO.PresenceSnapshot;
+import com.realscribe.realscribe.DTO.UserPresence;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Presence goes out as versioned deltas instead of the full user list per join/leave.
+// Changes are collected per room and flushed once per coalesce window, so a join wave costs
+// one small message per window; a user who joins and leaves inside a window is never sent.
+// Clients that see a fromVersion they don't hold fetch a snapshot (GET /api/rooms/{id}/presence).
+@Service
+public class PresenceBroadcaster {
+    private static final Logger logger = LoggerFactory.getLogger(PresenceBroadcaster.class);
+
+    private final PresenceService presence;
+    private final SimpMessagingTemplate broker;
+
+    // roomId -> last broadcast version and the changes collected since
+    private final Map<String, RoomDeltas> rooms = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "presence-broadcaster");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public PresenceBroadcaster(
+            PresenceService presence,
+            SimpMessagingTemplate broker,
+            @Value("${realscribe.presence.coalesce-ms:100}") long coalesceMillis) {
+        this.presence = presence;
+        this.broker = broker;
+        long window = Math.max(10, coalesceMillis);
+        flusher.scheduleWithFixedDelay(() -> {
+            try {
+                flushAll();
+            } catch (Exception e) {
+                logger.error("presence_delta_flush_failed error={}", e.toString());
+            }
+        }, window, window, TimeUnit.MILLISECONDS);
+    }
+
+    // firstSession: the user was not in the room before this join
+    public void joined(String roomId, UserPresence user, boolean firstSession) {
+        record(roomId, user, !firstSession, true);
+    }
+
+    // Only called when the user's last session in the room is gone.
+    public void left(String roomId, UserPresence user) {
+        record(roomId, user, true, false);
+    }
+
+    // Full list plus the delta version it corresponds to. Changes still being coalesced may
+    // already be in the list; the following delta repeats them, which clients apply idempotently.
+    public PresenceSnapshot snapshot(String roomId) {
+        long version;
+        while (true) {
+            RoomDeltas deltas = rooms.computeIfAbsent(roomId, k -> new RoomDeltas());
+            synchronized (deltas) {
+                if (deltas.retired) {
+                    continue;
+                }
+                version = deltas.version;
+                break;
+            }
+        }
+        return new PresenceSnapshot("presence_sync", roomId, version, presence.list(roomId));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdownNow();
+    }
+
+    private void record(String roomId, UserPresence user, boolean presentBefore, boolean presentAfter) {
+        while (true) {
+            RoomDeltas deltas = rooms.computeIfAbsent(roomId, k -> new RoomDeltas());
+            synchronized (deltas) {
+                if (deltas.retired) {
+                    continue;
+                }
+                Change change = deltas.changes.get(user.id());
+                if (change == null) {
+                    deltas.changes.put(user.id(), new Change(user, presentBefore, presentAfter));
+                } else {
+                    // keep where the window started, take the latest outcome
+                    deltas.changes.put(user.id(), new Change(user, change.presentBefore(), presentAfter));
+                }
+                return;
+            }
+        }
+    }
+
+    private void flushAll() {
+        for (Map.Entry<String, RoomDeltas> entry : rooms.entrySet()) {
+            String roomId = entry.getKey();
+            RoomDeltas deltas = entry.getValue();
+            PresenceDelta delta;
+            synchronized (deltas) {
+                if (deltas.changes.isEmpty()) {
+                    // nothing pending and nobody left to notify: forget the room's version
+                    if (presence.list(roomId).isEmpty()) {
+                        deltas.retired = true;
+                        rooms.remove(roomId, deltas);
+                    }
+                    continue;
+                }
+                List<UserPresence> added = new ArrayList<>();
+                List<UserPresence> removed = new ArrayList<>();
+                for (Change change : deltas.changes.values()) {
+                    if (change.presentAfter()) {
+                        added.add(change.user());
+                    } else if (change.presentBefore()) {
+                        removed.add(change.user());
+                    }
+                }
+                deltas.changes.clear();
+                if (added.isEmpty() && removed.isEmpty()) {
+                    continue;
+                }
+                long from = deltas.version++;
+                delta = new PresenceDelta("presence_delta", roomId, from, deltas.version, added, removed);
+            }
+            try {
+                broker.convertAndSend("/topic/room." + roomId + ".presence", delta);
+            } catch (Exception e) {
+                // clients detect the gap on the next delta and resync
+                logger.warn("presence_delta_broadcast_failed roomId={} error={}", roomId, e.toString());
+            }
+        }
+    }
+
+    private record Change(UserPresence user, boolean presentBefore, boolean presentAfter) {}
+
+    private static final class RoomDeltas {
+        // starts from the clock so a room that is forgotten and recreated never reuses a version
+        private long version = System.currentTimeMillis();
+        private final Map<String, Change> changes = new LinkedHashMap<>();
+        // set when forgotten; writers retry with a fresh entry
+        private boolean retired;
+    }
+}
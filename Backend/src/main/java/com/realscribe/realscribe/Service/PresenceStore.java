@@ -0,0 +1,39 @@
+package com.realscribe.realscribe.Service;
+
+import com.realscribe.realscribe.DTO.UserPresence;
+import com.realscribe.realscribe.Service.PresenceService.UserBinding;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+// Where room presence is kept, picked with realscribe.store: "memory" (InMemoryPresenceStore,
+// the default) or "postgres" (PostgresPresenceStore, shared by every replica). Arguments are
+// already validated by PresenceService.
+public interface PresenceStore {
+
+    // A user appearing in or disappearing from a room, as seen by the store.
+    record Change(String roomId, UserPresence user, boolean presentBefore, boolean presentAfter) {}
+
+    // Returns true when this is the user's first session in the room.
+    boolean join(String roomId, String userId, String name, String sessionId);
+
+    Optional<String> roomOf(String sessionId);
+
+    // The binding, only when this was the user's last session in the room.
+    Optional<UserBinding> leave(String sessionId);
+
+    // Users in the room sorted by name.
+    List<UserPresence> list(String roomId);
+
+    // Periodic upkeep: orphaned bindings, heartbeats, expired sessions.
+    void sweep();
+
+    // Changes made elsewhere (other replicas, expired sessions) that this node's clients
+    // have not been told about yet. Local joins and leaves are never reported here.
+    default void onRemoteChange(Consumer<Change> listener) {
+    }
+
+    Map<String, Long> stats();
+}
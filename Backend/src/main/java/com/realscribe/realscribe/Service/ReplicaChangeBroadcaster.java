@@ -0,0 +1,33 @@
+package com.realscribe.realscribe.Service;
+
+import com.realscribe.realscribe.DTO.ChatEvent;
+import com.realscribe.realscribe.DTO.ChatMessage;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+// With a shared store, presence and chat changes made on other replicas reach this node through
+// the store; this passes them on to the clients subscribed here, in the room's mailbox like the
+// local ones. The in-memory stores never report any.
+@Service
+public class ReplicaChangeBroadcaster {
+
+    public ReplicaChangeBroadcaster(
+            PresenceService presence,
+            PresenceBroadcaster presenceBroadcaster,
+            ChatService chatService,
+            SimpMessagingTemplate broker,
+            RoomTaskExecutor roomTasks) {
+        presence.onRemoteChange(change -> roomTasks.execute(change.roomId(), () -> {
+            if (change.presentAfter()) {
+                presenceBroadcaster.joined(change.roomId(), change.user(), !change.presentBefore());
+            } else {
+                presenceBroadcaster.left(change.roomId(), change.user());
+            }
+        }));
+        chatService.onRemoteMessage(message -> roomTasks.execute(message.roomId(), () -> {
+            String type = message.type() == ChatMessage.MessageType.SYSTEM ? "system_message" : "message_sent";
+            broker.convertAndSend("/topic/room." + message.roomId() + ".chat",
+                    new ChatEvent(type, message.roomId(), message, null));
+        }));
+    }
+}
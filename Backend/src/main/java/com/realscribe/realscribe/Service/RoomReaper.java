@@ -0,0 +1,208 @@
+package com.realscribe.realscribe.Service;
+
+import com.realscribe.realscribe.Cluster.ClusterService;
+import com.realscribe.realscribe.Repo.DrawingOperationRepository;
+import com.realscribe.realscribe.Repo.RoomRepository;
+import com.realscribe.realscribe.Repo.TextOperationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Deletes rooms whose last user has left, after a grace period. Leaving only marks the room
+// idle; a rejoin inside the grace period unmarks it and finds the canvas, text and chat caches
+// still warm. Each reap run checks its expired rooms once more inside their mailboxes, so a join
+// queued for a room either lands before the check (and keeps the room) or after it. The rooms
+// still empty are deleted together, with one statement per table, by the mailbox task of the
+// last one checked; a join for a room of that batch waits in markActive until it is deleted.
+@Service
+public class RoomReaper {
+    private static final Logger logger = LoggerFactory.getLogger(RoomReaper.class);
+
+    // rooms deleted by one set of statements; a large backlog (after startup) takes several
+    private static final int MAX_ROOMS_PER_BATCH = 500;
+
+    private final PresenceService presence;
+    private final RoomRepository roomRepository;
+    private final DrawingOperationRepository drawingOperationRepository;
+    private final TextOperationRepository textOperationRepository;
+    private final StrokeWriteBehindService strokeWriter;
+    private final CanvasStateCache canvasCache;
+    private final TextDocumentService textDocuments;
+    private final TextOperationLogService textLog;
+    private final ChatService chatService;
+    private final RoomTaskExecutor roomTasks;
+    private final ClusterService cluster;
+    private final long graceMillis;
+
+    // roomId -> time after which the room may be deleted
+    private final Map<String, Long> idleUntil = new ConcurrentHashMap<>();
+    // roomId -> completion of the batch deleting it, between its check and the delete
+    private final Map<String, CompletableFuture<Void>> reaping = new ConcurrentHashMap<>();
+    private final AtomicLong reaped = new AtomicLong();
+    private final AtomicLong revived = new AtomicLong();
+
+    public RoomReaper(
+            PresenceService presence,
+            RoomRepository roomRepository,
+            DrawingOperationRepository drawingOperationRepository,
+            TextOperationRepository textOperationRepository,
+            StrokeWriteBehindService strokeWriter,
+            CanvasStateCache canvasCache,
+            TextDocumentService textDocuments,
+            TextOperationLogService textLog,
+            ChatService chatService,
+            RoomTaskExecutor roomTasks,
+            ClusterService cluster,
+            @Value("${realscribe.rooms.idle-grace-ms:60000}") long graceMillis) {
+        this.presence = presence;
+        this.roomRepository = roomRepository;
+        this.drawingOperationRepository = drawingOperationRepository;
+        this.textOperationRepository = textOperationRepository;
+        this.strokeWriter = strokeWriter;
+        this.canvasCache = canvasCache;
+        this.textDocuments = textDocuments;
+        this.textLog = textLog;
+        this.chatService = chatService;
+        this.roomTasks = roomTasks;
+        this.cluster = cluster;
+        this.graceMillis = graceMillis;
+    }
+
+    // The room just emptied; it is deleted once the grace period passes with nobody back.
+    public void markIdle(String roomId) {
+        idleUntil.put(roomId, System.currentTimeMillis() + graceMillis);
+        logger.debug("room_marked_idle roomId={} graceMs={}", roomId, graceMillis);
+    }
+
+    // Rooms left empty while this node was down (or before it restarted with an in-memory
+    // presence store) never get a leave to mark them; they start out idle instead. Only rooms
+    // that were used: one created through the REST api that nobody has joined yet is kept.
+    @EventListener(ApplicationReadyEvent.class)
+    public void markEmptyRoomsIdle() {
+        int marked = 0;
+        for (String roomId : roomRepository.findIdsWithHistory()) {
+            // rooms homed on other nodes are their reapers' business
+            if (cluster.isLocal(roomId) && presence.list(roomId).isEmpty()
+                    && idleUntil.putIfAbsent(roomId, System.currentTimeMillis() + graceMillis) == null) {
+                marked++;
+            }
+        }
+        logger.info("room_reaper_seeded idleRooms={} graceMs={}", marked, graceMillis);
+    }
+
+    // Someone joined; keep the room and everything cached for it. Runs in the room's mailbox.
+    public void markActive(String roomId) {
+        CompletableFuture<Void> deleting = reaping.get(roomId);
+        if (deleting != null) {
+            // checked empty and already being deleted: the join lands after the delete
+            deleting.join();
+        }
+        if (idleUntil.remove(roomId) != null) {
+            revived.incrementAndGet();
+            logger.debug("room_revived roomId={}", roomId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${realscribe.rooms.reap-interval-ms:15000}")
+    public void reap() {
+        long now = System.currentTimeMillis();
+        List<String> expired = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : idleUntil.entrySet()) {
+            String roomId = entry.getKey();
+            Long deadline = entry.getValue();
+            // conditional, so a room marked idle again meanwhile keeps its new deadline
+            if (deadline <= now && idleUntil.remove(roomId, deadline)) {
+                expired.add(roomId);
+            }
+        }
+        for (int from = 0; from < expired.size(); from += MAX_ROOMS_PER_BATCH) {
+            List<String> rooms = expired.subList(from, Math.min(expired.size(), from + MAX_ROOMS_PER_BATCH));
+            ReapBatch batch = new ReapBatch(rooms.size());
+            for (String roomId : rooms) {
+                roomTasks.execute(roomId, () -> check(roomId, batch));
+            }
+        }
+    }
+
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("idle", (long) idleUntil.size());
+        stats.put("reaped", reaped.get());
+        stats.put("revived", revived.get());
+        return stats;
+    }
+
+    // Runs in the room's mailbox: drops what is cached for the room if it is still empty, and
+    // deletes the batch once its last room is checked.
+    private void check(String roomId, ReapBatch batch) {
+        try {
+            // a join, or a leave that marked the room idle again, got in before this task
+            if (idleUntil.containsKey(roomId) || !presence.list(roomId).isEmpty()) {
+                logger.debug("room_reap_skipped roomId={}", roomId);
+            } else {
+                strokeWriter.dropRoom(roomId);
+                canvasCache.evict(roomId);
+                textDocuments.dropRoom(roomId);
+                reaping.put(roomId, batch.deleted);
+                batch.roomIds.add(roomId);
+            }
+        } catch (Exception e) {
+            idleUntil.putIfAbsent(roomId, System.currentTimeMillis() + graceMillis);
+            logger.error("room_reap_failed roomId={} error={}", roomId, e.toString());
+        } finally {
+            if (batch.unchecked.decrementAndGet() == 0) {
+                deleteRooms(batch);
+            }
+        }
+    }
+
+    // Delete all data associated with the batch's rooms.
+    private void deleteRooms(ReapBatch batch) {
+        List<String> roomIds = List.copyOf(batch.roomIds);
+        if (roomIds.isEmpty()) {
+            return;
+        }
+        try {
+            drawingOperationRepository.deleteAllByRoomIdIn(roomIds);
+            textOperationRepository.deleteAllByRoomIdIn(roomIds);
+            textLog.deleteRooms(roomIds);
+            chatService.clearRooms(roomIds);
+            roomRepository.deleteAllByIdInBatch(roomIds);
+            reaped.addAndGet(roomIds.size());
+            logger.info("room_reaped rooms={}", roomIds.size());
+            logger.debug("room_reaped roomIds={}", roomIds);
+        } catch (Exception e) {
+            // retried on a later reap unless someone rejoins first
+            for (String roomId : roomIds) {
+                idleUntil.putIfAbsent(roomId, System.currentTimeMillis() + graceMillis);
+            }
+            logger.error("room_reap_failed rooms={} error={}", roomIds.size(), e.toString());
+        } finally {
+            for (String roomId : roomIds) {
+                reaping.remove(roomId, batch.deleted);
+            }
+            batch.deleted.complete(null);
+        }
+    }
+
+    private static final class ReapBatch {
+        private final Queue<String> roomIds = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger unchecked;
+        private final CompletableFuture<Void> deleted = new CompletableFuture<>();
+
+        private ReapBatch(int rooms) {
+            this.unchecked = new AtomicInteger(rooms);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.realscribe.realscribe.Service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Per-room mailboxes. Every mutation of a room's live state (strokes, text, chat, presence)
+// is submitted here by the STOMP handlers, the disconnect listener and the text patch tick,
+// and a room's tasks run one at a time in submission order, so operations on a room are
+// applied in a single deterministic order without callers coordinating. Rooms are independent
+// and run in parallel on a fixed pool, so throughput scales with threads and a slow query
+// (a canvas load, write-behind backpressure) only delays its own room. A room that runs many
+// tasks yields the thread after a short run so busy rooms can't starve quiet ones.
+//
+// A task never runs outside its room's mailbox. Client frames go through offer(), which refuses
+// them once the room is maxQueuedPerRoom behind; the caller tells the client to resync. Internal
+// work (ticks, disconnects, replica changes, presence) goes through execute() and is always
+// queued: it is bounded by its own sources and must not be lost.
+@Service
+public class RoomTaskExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(RoomTaskExecutor.class);
+
+    // tasks a room runs before giving its thread to the next room
+    private static final int TASKS_PER_TURN = 32;
+
+    private final int maxQueuedPerRoom;
+    private final ThreadPoolExecutor pool;
+    private final Map<String, RoomQueue> rooms = new ConcurrentHashMap<>();
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong runNanos = new AtomicLong();
+    private final AtomicLong maxRunNanos = new AtomicLong();
+
+    public RoomTaskExecutor(
+            @Value("${realscribe.rooms.tasks.threads:8}") int threads,
+            @Value("${realscribe.rooms.tasks.max-queued-per-room:1000}") int maxQueuedPerRoom) {
+        this.maxQueuedPerRoom = Math.max(1, maxQueuedPerRoom);
+        AtomicInteger threadIds = new AtomicInteger();
+        int size = Math.max(1, threads);
+        // a room occupies at most one slot in the pool queue, so it is bounded by the room count
+        this.pool = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "room-task-" + threadIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    public void execute(String roomId, Runnable task) {
+        submit(roomId, task, Integer.MAX_VALUE);
+    }
+
+    // Queues a client's task unless the room is maxQueuedPerRoom behind; false when refused.
+    public boolean offer(String roomId, Runnable task) {
+        if (submit(roomId, task, maxQueuedPerRoom)) {
+            return true;
+        }
+        rejected.incrementAndGet();
+        logger.warn("room_tasks_backpressure roomId={} queued={}", roomId, maxQueuedPerRoom);
+        return false;
+    }
+
+    private boolean submit(String roomId, Runnable task, int limit) {
+        Task queuedTask = new Task(task, System.nanoTime());
+        while (true) {
+            RoomQueue room = rooms.computeIfAbsent(roomId, RoomQueue::new);
+            boolean startDrain;
+            synchronized (room) {
+                if (room.retired) {
+                    continue;
+                }
+                if (room.tasks.size() >= limit) {
+                    return false;
+                }
+                room.tasks.addLast(queuedTask);
+                queued.incrementAndGet();
+                startDrain = !room.scheduled;
+                room.scheduled = true;
+            }
+            submitted.incrementAndGet();
+            if (startDrain) {
+                try {
+                    pool.execute(() -> drain(room));
+                } catch (RejectedExecutionException e) {
+                    // shutting down: run what is queued here
+                    drainInline(room);
+                }
+            }
+            return true;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warn("room_tasks_shutdown_timeout queued={}", queued.get());
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pool.shutdownNow();
+        }
+    }
+
+    public Map<String, Long> stats() {
+        long done = Math.max(1, completed.get() + failed.get());
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("rooms", (long) rooms.size());
+        stats.put("queued", (long) queued.get());
+        stats.put("activeThreads", (long) pool.getActiveCount());
+        stats.put("submitted", submitted.get());
+        stats.put("completed", completed.get());
+        stats.put("failed", failed.get());
+        stats.put("rejected", rejected.get());
+        stats.put("avgWaitMicros", waitNanos.get() / done / 1_000);
+        stats.put("maxWaitMicros", maxWaitNanos.get() / 1_000);
+        stats.put("avgRunMicros", runNanos.get() / done / 1_000);
+        stats.put("maxRunMicros", maxRunNanos.get() / 1_000);
+        return stats;
+    }
+
+    private void drain(RoomQueue room) {
+        for (int i = 0; i < TASKS_PER_TURN; i++) {
+            Task task;
+            synchronized (room) {
+                task = room.tasks.pollFirst();
+                if (task == null) {
+                    room.scheduled = false;
+                    // idle rooms give their queue back; a concurrent execute sees it retired and retries
+                    room.retired = true;
+                    rooms.remove(room.roomId, room);
+                    return;
+                }
+            }
+            queued.decrementAndGet();
+            run(task);
+        }
+        // more to do: go to the back of the pool queue so other rooms get a turn
+        try {
+            pool.execute(() -> drain(room));
+        } catch (RejectedExecutionException e) {
+            drainInline(room);
+        }
+    }
+
+    private void drainInline(RoomQueue room) {
+        Task task;
+        while (true) {
+            synchronized (room) {
+                task = room.tasks.pollFirst();
+                if (task == null) {
+                    room.scheduled = false;
+                    return;
+                }
+            }
+            queued.decrementAndGet();
+            run(task);
+        }
+    }
+
+    private void run(Task task) {
+        long start = System.nanoTime();
+        record(waitNanos, maxWaitNanos, start - task.submittedAt);
+        try {
+            task.runnable.run();
+            completed.incrementAndGet();
+        } catch (Throwable e) {
+            // an Error must not escape drain() either, or the room stays scheduled and never runs again
+            failed.incrementAndGet();
+            logger.error("room_task_failed error={}", e.toString(), e);
+        } finally {
+            record(runNanos, maxRunNanos, System.nanoTime() - start);
+        }
+    }
+
+    private static void record(AtomicLong total, AtomicLong max, long nanos) {
+        total.addAndGet(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    private record Task(Runnable runnable, long submittedAt) {}
+
+    private static final class RoomQueue {
+        private final String roomId;
+        private final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        // a drain for this room is queued or running
+        private boolean scheduled;
+        private boolean retired;
+
+        private RoomQueue(String roomId) {
+            this.roomId = roomId;
+        }
+    }
+}
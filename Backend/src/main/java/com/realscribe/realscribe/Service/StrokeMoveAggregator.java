@@ -0,0 +1,311 @@
+package com.realscribe.realscribe.Service;
+
+import com.realscribe.realscribe.DTO.WsMessage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Throttles stroke_move relay. Points of a stroke (per session) are collected for one frame
+// budget, thinned with Ramer-Douglas-Peucker, and broadcast as one stroke_move per stroke per
+// frame, so what a room receives is bounded by the number of people drawing, not by how fast
+// their devices sample. Clients append stroke_move points, so merging batches is transparent.
+//
+// stroke_end flushes the stroke's pending points first so peers see moves before the end. Frame
+// flushes run in the room's mailbox too, so a stroke_move never goes out after its stroke_end.
+@Service
+public class StrokeMoveAggregator {
+    private static final Logger logger = LoggerFactory.getLogger(StrokeMoveAggregator.class);
+
+    // strokes with nothing pending and no input for this long are forgotten (no stroke_end came)
+    private static final long IDLE_STROKE_MILLIS = 10_000;
+
+    private final SimpMessagingTemplate messaging;
+    private final RoomTaskExecutor roomTasks;
+    private final long frameMillis;
+    private final double epsilon;
+
+    // sessionId + '\0' + strokeId -> points waiting for the next frame
+    private final Map<String, PendingStroke> strokes = new ConcurrentHashMap<>();
+    // rooms with a frame flush waiting in their mailbox, so a slow room gets one at a time
+    private final Set<String> flushQueued = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "stroke-move-aggregator");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicLong movesIn = new AtomicLong();
+    private final AtomicLong movesOut = new AtomicLong();
+    private final AtomicLong pointsIn = new AtomicLong();
+    private final AtomicLong pointsOut = new AtomicLong();
+
+    public StrokeMoveAggregator(
+            SimpMessagingTemplate messaging,
+            RoomTaskExecutor roomTasks,
+            @Value("${realscribe.draw.move.frame-ms:16}") long frameMillis,
+            @Value("${realscribe.draw.move.epsilon:0.5}") double epsilon) {
+        this.messaging = messaging;
+        this.roomTasks = roomTasks;
+        this.frameMillis = frameMillis;
+        this.epsilon = Math.max(0, epsilon);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (frameMillis > 0) {
+            ticker.scheduleAtFixedRate(this::tick, frameMillis, frameMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ticker.shutdownNow();
+    }
+
+    public void submit(String sessionId, String roomId, WsMessage message) {
+        movesIn.incrementAndGet();
+        List<?> points = points(message);
+        if (frameMillis <= 0 || points == null || message.getStrokeId() == null) {
+            // throttling off, or a shape we don't merge (e.g. legacy single x/y): relay as is
+            send(roomId, message);
+            return;
+        }
+        pointsIn.addAndGet(points.size());
+
+        String key = key(sessionId, message.getStrokeId());
+        while (true) {
+            PendingStroke stroke = strokes.computeIfAbsent(key, k -> new PendingStroke(roomId, message));
+            synchronized (stroke) {
+                if (stroke.closed) {
+                    continue;
+                }
+                stroke.points.addAll(points);
+                stroke.lastInput = System.currentTimeMillis();
+                return;
+            }
+        }
+    }
+
+    // The stroke ended: broadcast what is still pending before the caller broadcasts stroke_end.
+    public void finish(String sessionId, String strokeId) {
+        if (strokeId == null) {
+            return;
+        }
+        PendingStroke stroke = strokes.remove(key(sessionId, strokeId));
+        if (stroke != null) {
+            flush(stroke, true);
+        }
+    }
+
+    // The session's unfinished strokes won't get a stroke_end; what they had pending still goes out.
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        String prefix = event.getSessionId() + '\0';
+        for (Map.Entry<String, PendingStroke> entry : strokes.entrySet()) {
+            PendingStroke stroke = entry.getValue();
+            if (entry.getKey().startsWith(prefix) && strokes.remove(entry.getKey(), stroke)) {
+                roomTasks.execute(stroke.roomId, () -> flush(stroke, true));
+            }
+        }
+    }
+
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("activeStrokes", (long) strokes.size());
+        stats.put("movesIn", movesIn.get());
+        stats.put("movesOut", movesOut.get());
+        stats.put("pointsIn", pointsIn.get());
+        stats.put("pointsOut", pointsOut.get());
+        return stats;
+    }
+
+    // Hands each room's strokes to the room's mailbox for this frame's flush.
+    private void tick() {
+        try {
+            Map<String, List<Map.Entry<String, PendingStroke>>> byRoom = new HashMap<>();
+            for (Map.Entry<String, PendingStroke> entry : strokes.entrySet()) {
+                byRoom.computeIfAbsent(entry.getValue().roomId, k -> new ArrayList<>()).add(entry);
+            }
+            byRoom.forEach((roomId, roomStrokes) -> {
+                if (flushQueued.add(roomId)) {
+                    roomTasks.execute(roomId, () -> {
+                        flushQueued.remove(roomId);
+                        flushRoom(roomStrokes);
+                    });
+                }
+            });
+        } catch (Exception e) {
+            // keep the ticker alive; a failed frame only delays points to the next one
+            logger.error("stroke_move_flush_failed error={}", e.toString());
+        }
+    }
+
+    private void flushRoom(List<Map.Entry<String, PendingStroke>> roomStrokes) {
+        long idleBefore = System.currentTimeMillis() - IDLE_STROKE_MILLIS;
+        for (Map.Entry<String, PendingStroke> entry : roomStrokes) {
+            PendingStroke stroke = entry.getValue();
+            if (!flush(stroke, false) && stroke.lastInput < idleBefore) {
+                strokes.remove(entry.getKey(), stroke);
+                synchronized (stroke) {
+                    stroke.closed = true;
+                }
+                // points that slipped in before closing still go out
+                flush(stroke, false);
+            }
+        }
+    }
+
+    // Broadcasts the pending points of a stroke as one stroke_move; false when nothing was pending.
+    private boolean flush(PendingStroke stroke, boolean close) {
+        WsMessage merged;
+        synchronized (stroke) {
+            if (close) {
+                stroke.closed = true;
+            }
+            if (stroke.points.isEmpty()) {
+                return false;
+            }
+            List<Object> kept = decimate(stroke.anchor, stroke.points, epsilon);
+            stroke.anchor = xy(stroke.points.get(stroke.points.size() - 1));
+            stroke.points.clear();
+
+            merged = new WsMessage();
+            merged.setType("stroke_move");
+            merged.setRoomId(stroke.roomId);
+            merged.setUserId(stroke.userId);
+            merged.setName(stroke.name);
+            merged.setStrokeId(stroke.strokeId);
+            Map<String, Object> payload = new LinkedHashMap<>(stroke.style);
+            payload.put("points", kept);
+            merged.setPayload(payload);
+            pointsOut.addAndGet(kept.size());
+        }
+        send(stroke.roomId, merged);
+        return true;
+    }
+
+    private void send(String roomId, WsMessage message) {
+        movesOut.incrementAndGet();
+        messaging.convertAndSend("/topic/room." + roomId, message);
+    }
+
+    // Ramer-Douglas-Peucker over x/y. The anchor (last point already sent, if any) takes part
+    // so the new segment joins the previous one, but is not returned; the last point is always kept.
+    static List<Object> decimate(double[] anchor, List<Object> points, double epsilon) {
+        int offset = anchor != null ? 1 : 0;
+        int n = points.size() + offset;
+        if (epsilon <= 0 || n <= 2) {
+            return new ArrayList<>(points);
+        }
+        double[][] xy = new double[n][];
+        if (anchor != null) {
+            xy[0] = anchor;
+        }
+        for (int i = 0; i < points.size(); i++) {
+            xy[i + offset] = xy(points.get(i));
+        }
+
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        Deque<int[]> ranges = new ArrayDeque<>();
+        ranges.push(new int[]{0, n - 1});
+        while (!ranges.isEmpty()) {
+            int[] range = ranges.pop();
+            int first = range[0], last = range[1];
+            double maxDistance = -1;
+            int farthest = -1;
+            for (int i = first + 1; i < last; i++) {
+                double d = distanceToSegment(xy[i], xy[first], xy[last]);
+                if (d > maxDistance) {
+                    maxDistance = d;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0 && maxDistance > epsilon) {
+                keep[farthest] = true;
+                ranges.push(new int[]{first, farthest});
+                ranges.push(new int[]{farthest, last});
+            }
+        }
+
+        List<Object> kept = new ArrayList<>();
+        for (int i = offset; i < n; i++) {
+            if (keep[i]) {
+                kept.add(points.get(i - offset));
+            }
+        }
+        return kept;
+    }
+
+    private static double distanceToSegment(double[] p, double[] a, double[] b) {
+        double dx = b[0] - a[0], dy = b[1] - a[1];
+        double lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared == 0) {
+            return Math.hypot(p[0] - a[0], p[1] - a[1]);
+        }
+        double t = Math.max(0, Math.min(1, ((p[0] - a[0]) * dx + (p[1] - a[1]) * dy) / lengthSquared));
+        return Math.hypot(p[0] - (a[0] + t * dx), p[1] - (a[1] + t * dy));
+    }
+
+    private static double[] xy(Object point) {
+        List<?> coords = (List<?>) point;
+        return new double[]{((Number) coords.get(0)).doubleValue(), ((Number) coords.get(1)).doubleValue()};
+    }
+
+    // The points list when every point is [x, y] or [x, y, pressure] numbers; null otherwise.
+    private static List<?> points(WsMessage message) {
+        Map<String, Object> payload = message.getPayload();
+        if (payload == null || !(payload.get("points") instanceof List<?> points)) {
+            return null;
+        }
+        for (Object point : points) {
+            if (!(point instanceof List<?> coords) || coords.size() < 2
+                    || !(coords.get(0) instanceof Number) || !(coords.get(1) instanceof Number)) {
+                return null;
+            }
+        }
+        return points;
+    }
+
+    private static String key(String sessionId, String strokeId) {
+        return sessionId + '\0' + strokeId;
+    }
+
+    private static final class PendingStroke {
+        private final String roomId;
+        private final String userId;
+        private final String name;
+        private final String strokeId;
+        // tool, width, color... everything but the points, from the first move of the stroke
+        private final Map<String, Object> style;
+        private final List<Object> points = new ArrayList<>();
+        // last point broadcast, so decimation of the next frame connects to it
+        private double[] anchor;
+        private long lastInput = System.currentTimeMillis();
+        private boolean closed;
+
+        private PendingStroke(String roomId, WsMessage first) {
+            this.roomId = roomId;
+            this.userId = first.getUserId();
+            this.name = first.getName();
+            this.strokeId = first.getStrokeId();
+            Map<String, Object> style = new LinkedHashMap<>(first.getPayload());
+            style.remove("points");
+            this.style = style;
+        }
+    }
+}
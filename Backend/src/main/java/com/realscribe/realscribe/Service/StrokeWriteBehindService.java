@@ -0,0 +1,384 @@
+package com.realscribe.realscribe.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.realscribe.realscribe.Codec.StrokeCodec;
+import com.realscribe.realscribe.Entity.DrawingOperation;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Write-behind stage for finished strokes: callers enqueue and return immediately,
+// queued operations are written as JDBC batch upserts when a room's queue reaches
+// the batch size or on the periodic flush, whichever comes first. A room whose queue is full
+// (the database is down or behind) refuses new operations rather than making the producer
+// wait for a flush.
+//
+// A batch that fails is put back and retried. When it keeps failing with an error that isn't
+// about the connection (a row the database refuses), it is written in halves after max-attempts
+// until the offending rows are isolated; those are dropped with a log line so the rest of the
+// room's strokes get through.
+@Service
+public class StrokeWriteBehindService {
+    private static final Logger logger = LoggerFactory.getLogger(StrokeWriteBehindService.class);
+
+    // tombstones go through the same upsert with deleted = true and a null payload
+    private static final String UPSERT_SQL =
+            "INSERT INTO drawing_operations (id, room_id, operation_type, payload, payload_bin, seq, deleted) " +
+            "VALUES (?, ?, ?, CAST(? AS jsonb), ?, ?, ?) " +
+            "ON CONFLICT (id) DO UPDATE SET room_id = EXCLUDED.room_id, " +
+            "operation_type = EXCLUDED.operation_type, payload = EXCLUDED.payload, " +
+            "payload_bin = EXCLUDED.payload_bin, seq = EXCLUDED.seq, deleted = EXCLUDED.deleted";
+
+    private final JdbcTemplate jdbc;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final int maxQueuedPerRoom;
+    private final int maxAttempts;
+    // store encodable payloads in payload_bin instead of the jsonb column
+    private final boolean binaryStorage;
+
+    private final Map<String, RoomQueue> queues = new ConcurrentHashMap<>();
+    // size-triggered and backpressure flushes run here so producers never wait on JDBC
+    private final ExecutorService flushExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "stroke-write-behind");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong persisted = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong backpressureFlushes = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+    private final Timer upsertTimer;
+
+    public StrokeWriteBehindService(
+            JdbcTemplate jdbc,
+            ObjectMapper objectMapper,
+            @Value("${realscribe.draw.write-behind.batch-size:100}") int batchSize,
+            @Value("${realscribe.draw.write-behind.max-queued-per-room:2000}") int maxQueuedPerRoom,
+            @Value("${realscribe.draw.write-behind.max-attempts:3}") int maxAttempts,
+            @Value("${realscribe.draw.storage-codec:json}") String storageCodec,
+            MeterRegistry meters) {
+        this.jdbc = jdbc;
+        this.objectMapper = objectMapper;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxQueuedPerRoom = Math.max(this.batchSize, maxQueuedPerRoom);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.binaryStorage = "binary".equalsIgnoreCase(storageCodec.trim());
+        this.upsertTimer = Timer.builder("realscribe.db.batch")
+                .tags("table", "drawing_operations", "operation", "upsert").register(meters);
+    }
+
+    // Whether n more operations fit in the room's queue, for callers that must refuse the
+    // operation before applying it. When they don't, the room's flush is handed to the flush
+    // thread (never run here: callers are room mailboxes) and the refusal counts as dropped.
+    public boolean admit(String roomId, int n) {
+        RoomQueue queue = queues.get(roomId);
+        if (queue == null || queue.size() + n <= maxQueuedPerRoom) {
+            return true;
+        }
+        refused(queue, n);
+        return false;
+    }
+
+    // Queues the operation; false when the room's queue is full, in which case it is dropped.
+    public boolean enqueue(DrawingOperation op) {
+        RoomQueue queue;
+        int size;
+        do {
+            queue = queues.computeIfAbsent(op.getRoomId(), RoomQueue::new);
+            size = queue.offer(op, maxQueuedPerRoom);
+        } while (size == RoomQueue.RETIRED);
+
+        if (size == RoomQueue.FULL) {
+            refused(queue, 1);
+            logger.error("draw_write_behind_dropped roomId={} strokeId={}", op.getRoomId(), op.getId());
+            return false;
+        }
+        enqueued.incrementAndGet();
+        if (size >= batchSize) {
+            scheduleFlush(queue);
+        }
+        return true;
+    }
+
+    private void refused(RoomQueue queue, int n) {
+        dropped.addAndGet(n);
+        if (scheduleFlush(queue)) {
+            backpressureFlushes.incrementAndGet();
+            logger.warn("draw_write_behind_backpressure roomId={} queued={}", queue.roomId, queue.size());
+        }
+    }
+
+    // Hands the room's flush to the flush thread unless one is already waiting there.
+    private boolean scheduleFlush(RoomQueue queue) {
+        if (!queue.flushScheduled.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            flushExecutor.execute(() -> {
+                queue.flushScheduled.set(false);
+                flushRoom(queue);
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            // shutting down: the @PreDestroy flush picks it up
+            queue.flushScheduled.set(false);
+            return false;
+        }
+    }
+
+    // Snapshot of operations for a room that are queued but not yet persisted.
+    // Waits for an in-flight flush so an operation is always visible either here or in the table.
+    public List<DrawingOperation> pending(String roomId) {
+        RoomQueue queue = queues.get(roomId);
+        return queue == null ? List.of() : queue.snapshot();
+    }
+
+    // Drops everything queued for a room that is being deleted.
+    public void dropRoom(String roomId) {
+        RoomQueue queue = queues.remove(roomId);
+        if (queue != null) {
+            int cleared = queue.retire(true);
+            if (cleared > 0) {
+                logger.info("draw_write_behind_room_dropped roomId={} discarded={}", roomId, cleared);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${realscribe.draw.write-behind.flush-interval-ms:250}")
+    public void flushAll() {
+        for (RoomQueue queue : queues.values()) {
+            flushRoom(queue);
+            // Idle rooms give their queue back; a concurrent enqueue sees it retired and retries.
+            if (queue.retire(false) >= 0) {
+                queues.remove(queue.roomId, queue);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdown();
+        flushAll();
+        logger.info("draw_write_behind_shutdown persisted={} dropped={}", persisted.get(), dropped.get());
+    }
+
+    public Map<String, Long> stats() {
+        long queued = 0;
+        for (RoomQueue queue : queues.values()) {
+            queued += queue.size();
+        }
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("queued", queued);
+        stats.put("enqueued", enqueued.get());
+        stats.put("persisted", persisted.get());
+        stats.put("failedBatches", failedBatches.get());
+        stats.put("backpressureFlushes", backpressureFlushes.get());
+        stats.put("dropped", dropped.get());
+        stats.put("deadLettered", deadLettered.get());
+        return stats;
+    }
+
+    private void flushRoom(RoomQueue queue) {
+        queue.flushLock.lock();
+        try {
+            List<DrawingOperation> batch;
+            while (!(batch = queue.drain(batchSize)).isEmpty()) {
+                try {
+                    writeBatch(batch);
+                    persisted.addAndGet(batch.size());
+                    queue.failedAttempts = 0;
+                } catch (Exception e) {
+                    failedBatches.incrementAndGet();
+                    List<DrawingOperation> unwritten = batch;
+                    if (!isTransient(e) && ++queue.failedAttempts >= maxAttempts) {
+                        logger.warn("draw_write_behind_isolating roomId={} batch={} attempts={} error={}",
+                                queue.roomId, batch.size(), queue.failedAttempts, e.toString());
+                        queue.failedAttempts = 0;
+                        unwritten = isolate(queue.roomId, batch);
+                        if (unwritten.isEmpty()) {
+                            continue;
+                        }
+                    }
+                    int requeued = queue.requeue(unwritten, maxQueuedPerRoom);
+                    dropped.addAndGet(unwritten.size() - requeued);
+                    logger.error("draw_write_behind_flush_failed roomId={} batch={} requeued={} error={}",
+                            queue.roomId, unwritten.size(), requeued, e.toString());
+                    return;
+                }
+            }
+        } finally {
+            queue.flushLock.unlock();
+        }
+    }
+
+    // Writes the batch in halves down to the single rows that fail on their own, which are
+    // dropped. Returns what is left unwritten because the database became unreachable meanwhile.
+    private List<DrawingOperation> isolate(String roomId, List<DrawingOperation> batch) {
+        try {
+            writeBatch(batch);
+            persisted.addAndGet(batch.size());
+            return List.of();
+        } catch (Exception e) {
+            if (isTransient(e)) {
+                return batch;
+            }
+            if (batch.size() == 1) {
+                DrawingOperation op = batch.get(0);
+                deadLettered.incrementAndGet();
+                logger.error("draw_write_behind_dead_letter roomId={} strokeId={} seq={} deleted={} error={}",
+                        roomId, op.getId(), op.getSeq(), op.isDeleted(), e.toString());
+                return List.of();
+            }
+            int mid = batch.size() / 2;
+            List<DrawingOperation> left = isolate(roomId, batch.subList(0, mid));
+            if (!left.isEmpty()) {
+                List<DrawingOperation> unwritten = new ArrayList<>(left);
+                unwritten.addAll(batch.subList(mid, batch.size()));
+                return unwritten;
+            }
+            return isolate(roomId, batch.subList(mid, batch.size()));
+        }
+    }
+
+    // Connection trouble, timeouts, deadlocks: worth retrying as is
+    static boolean isTransient(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof TransientDataAccessException || t instanceof RecoverableDataAccessException
+                    || t instanceof DataAccessResourceFailureException
+                    || t instanceof SQLTransientException || t instanceof SQLRecoverableException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeBatch(List<DrawingOperation> batch) throws Exception {
+        List<Object[]> args = new ArrayList<>(batch.size());
+        for (DrawingOperation op : batch) {
+            byte[] payloadBin = binaryStorage && op.getPayload() != null ? StrokeCodec.encodePayload(op.getPayload()) : null;
+            // payloads the codec can't carry stay JSON even in binary mode
+            String payload = op.getPayload() != null && payloadBin == null
+                    ? objectMapper.writeValueAsString(op.getPayload()) : null;
+            args.add(new Object[]{op.getId(), op.getRoomId(), op.getOperationType(), payload, payloadBin,
+                    op.getSeq(), op.isDeleted()});
+        }
+        upsertTimer.record(() -> jdbc.batchUpdate(UPSERT_SQL, args));
+    }
+
+    private static final class RoomQueue {
+        private final String roomId;
+        private final ArrayDeque<DrawingOperation> ops = new ArrayDeque<>();
+        // guards ops; held only for in-memory work
+        private final Object lock = new Object();
+        // held for the whole drain + write so readers never see an operation in neither place
+        private final ReentrantLock flushLock = new ReentrantLock();
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        // consecutive failures of the batch at the head; guarded by flushLock
+        private int failedAttempts;
+        private boolean retired;
+
+        private static final int FULL = -1;
+        private static final int RETIRED = -2;
+
+        private RoomQueue(String roomId) {
+            this.roomId = roomId;
+        }
+
+        // Returns the new size, FULL, or RETIRED when the queue was removed from the map.
+        private int offer(DrawingOperation op, int capacity) {
+            synchronized (lock) {
+                if (retired) {
+                    return RETIRED;
+                }
+                if (ops.size() >= capacity) {
+                    return FULL;
+                }
+                ops.addLast(op);
+                return ops.size();
+            }
+        }
+
+        private List<DrawingOperation> drain(int max) {
+            synchronized (lock) {
+                int n = Math.min(max, ops.size());
+                List<DrawingOperation> batch = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) {
+                    batch.add(ops.pollFirst());
+                }
+                return batch;
+            }
+        }
+
+        // Puts a failed batch back at the head, keeping order; returns how many fit.
+        private int requeue(List<DrawingOperation> batch, int capacity) {
+            synchronized (lock) {
+                int room = Math.max(0, capacity - ops.size());
+                int n = Math.min(room, batch.size());
+                for (int i = n - 1; i >= 0; i--) {
+                    ops.addFirst(batch.get(i));
+                }
+                return n;
+            }
+        }
+
+        private List<DrawingOperation> snapshot() {
+            flushLock.lock();
+            try {
+                synchronized (lock) {
+                    return new ArrayList<>(ops);
+                }
+            } finally {
+                flushLock.unlock();
+            }
+        }
+
+        // Marks the queue unusable. Without force it only retires an empty queue and
+        // returns -1 otherwise; with force it discards whatever is queued and returns the count.
+        private int retire(boolean force) {
+            flushLock.lock();
+            try {
+                synchronized (lock) {
+                    if (!force && !ops.isEmpty()) {
+                        return -1;
+                    }
+                    int n = ops.size();
+                    ops.clear();
+                    retired = true;
+                    return n;
+                }
+            } finally {
+                flushLock.unlock();
+            }
+        }
+
+        private int size() {
+            synchronized (lock) {
+                return ops.size();
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.realscribe.realscribe.Service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.realscribe.realscribe.Entity.TextOperation;
+import com.realscribe.realscribe.Repo.TextOperationRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Authoritative per-room text document. text_update only replaces the in-memory copy;
+// the document is written to text_operations when it has been dirty for a snapshot interval
+// or after a number of changes, so a busy room costs a few writes per minute instead of
+// a SELECT + UPDATE per edit. Rooms that stay idle and clean are dropped from memory.
+// Each snapshot records the text log sequence it covers (base_seq), which is what lets the
+// log compactor delete older patches and clients replay only the patches after it.
+@Service
+public class TextDocumentService {
+    private static final Logger logger = LoggerFactory.getLogger(TextDocumentService.class);
+
+    private final TextOperationRepository textRepo;
+    private final TextOperationLogService textLog;
+    private final int snapshotAfterChanges;
+    private final long idleEvictMillis;
+
+    private final Map<String, RoomDocument> documents = new ConcurrentHashMap<>();
+    private final ExecutorService snapshotExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "text-snapshot");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong snapshots = new AtomicLong();
+    private final AtomicLong failedSnapshots = new AtomicLong();
+
+    public record Document(JsonNode payload, long baseSeq) {}
+
+    public TextDocumentService(
+            TextOperationRepository textRepo,
+            TextOperationLogService textLog,
+            @Value("${realscribe.text.snapshot-after-changes:50}") int snapshotAfterChanges,
+            @Value("${realscribe.text.idle-evict-ms:300000}") long idleEvictMillis) {
+        this.textRepo = textRepo;
+        this.textLog = textLog;
+        this.snapshotAfterChanges = Math.max(1, snapshotAfterChanges);
+        this.idleEvictMillis = idleEvictMillis;
+    }
+
+    public void apply(String roomId, String userId, JsonNode payload) {
+        // the full document is taken to include every patch logged before it arrived
+        long baseSeq = textLog.currentSeq(roomId);
+        while (true) {
+            RoomDocument doc = documents.computeIfAbsent(roomId, RoomDocument::new);
+            boolean snapshotDue;
+            synchronized (doc) {
+                if (doc.retired) {
+                    continue;
+                }
+                doc.payload = payload;
+                doc.userId = userId;
+                doc.baseSeq = Math.max(doc.baseSeq, baseSeq);
+                doc.version++;
+                doc.lastTouched = System.currentTimeMillis();
+                snapshotDue = doc.version - doc.savedVersion >= snapshotAfterChanges;
+            }
+            updates.incrementAndGet();
+
+            if (snapshotDue && doc.snapshotScheduled.compareAndSet(false, true)) {
+                try {
+                    snapshotExecutor.execute(() -> {
+                        doc.snapshotScheduled.set(false);
+                        snapshot(doc);
+                    });
+                } catch (RejectedExecutionException e) {
+                    // shutting down: the @PreDestroy flush writes it
+                    doc.snapshotScheduled.set(false);
+                }
+            }
+            return;
+        }
+    }
+
+    // The hot in-memory document when the room has one, otherwise the last snapshot row.
+    public Optional<Document> latest(String roomId) {
+        RoomDocument doc = documents.get(roomId);
+        if (doc != null) {
+            synchronized (doc) {
+                if (!doc.retired && doc.payload != null) {
+                    return Optional.of(new Document(doc.payload, doc.baseSeq));
+                }
+            }
+        }
+        return textRepo.findTopByRoomIdOrderByIdDesc(roomId)
+                .filter(row -> row.getPayload() != null)
+                .map(row -> new Document(row.getPayload(), row.getBaseSeq() != null ? row.getBaseSeq() : 0));
+    }
+
+    // Forgets the room without writing it; used when the room is deleted.
+    public void dropRoom(String roomId) {
+        RoomDocument doc = documents.remove(roomId);
+        if (doc != null) {
+            doc.snapshotLock.lock();
+            try {
+                synchronized (doc) {
+                    doc.retired = true;
+                }
+            } finally {
+                doc.snapshotLock.unlock();
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${realscribe.text.snapshot-interval-ms:10000}")
+    public void snapshotDirty() {
+        long now = System.currentTimeMillis();
+        for (RoomDocument doc : documents.values()) {
+            snapshot(doc);
+            synchronized (doc) {
+                if (!doc.retired && doc.version == doc.savedVersion && now - doc.lastTouched >= idleEvictMillis) {
+                    doc.retired = true;
+                    documents.remove(doc.roomId, doc);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        snapshotExecutor.shutdown();
+        for (RoomDocument doc : documents.values()) {
+            snapshot(doc);
+        }
+        logger.info("text_documents_shutdown snapshots={} failed={}", snapshots.get(), failedSnapshots.get());
+    }
+
+    public Map<String, Long> stats() {
+        long dirty = 0;
+        for (RoomDocument doc : documents.values()) {
+            if (doc.version != doc.savedVersion) {
+                dirty++;
+            }
+        }
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("rooms", (long) documents.size());
+        stats.put("dirty", dirty);
+        stats.put("updates", updates.get());
+        stats.put("snapshots", snapshots.get());
+        stats.put("failedSnapshots", failedSnapshots.get());
+        return stats;
+    }
+
+    private void snapshot(RoomDocument doc) {
+        doc.snapshotLock.lock();
+        try {
+            JsonNode payload;
+            String userId;
+            long baseSeq;
+            long version;
+            synchronized (doc) {
+                if (doc.retired || doc.version == doc.savedVersion) {
+                    return;
+                }
+                payload = doc.payload;
+                userId = doc.userId;
+                baseSeq = doc.baseSeq;
+                version = doc.version;
+            }
+
+            try {
+                // one row per room, updated in place; the id is looked up once per hot period
+                TextOperation row = null;
+                if (doc.rowId != null) {
+                    row = textRepo.findById(doc.rowId).orElse(null);
+                }
+                if (row == null) {
+                    row = textRepo.findTopByRoomIdOrderByIdDesc(doc.roomId).orElseGet(TextOperation::new);
+                }
+                row.setRoomId(doc.roomId);
+                row.setUserId(userId);
+                row.setPayload(payload);
+                row.setBaseSeq(baseSeq);
+                doc.rowId = textRepo.save(row).getId();
+                snapshots.incrementAndGet();
+            } catch (Exception e) {
+                failedSnapshots.incrementAndGet();
+                logger.error("text_snapshot_failed roomId={} error={}", doc.roomId, e.toString());
+                return;
+            }
+
+            synchronized (doc) {
+                doc.savedVersion = version;
+            }
+        } finally {
+            doc.snapshotLock.unlock();
+        }
+    }
+
+    private static final class RoomDocument {
+        private final String roomId;
+        private JsonNode payload;
+        private String userId;
+        // last text log sequence the document is known to contain
+        private long baseSeq;
+        // incremented per update; dirty while it differs from savedVersion
+        private long version;
+        private long savedVersion;
+        private long lastTouched = System.currentTimeMillis();
+        private boolean retired;
+        private volatile Integer rowId;
+        private final AtomicBoolean snapshotScheduled = new AtomicBoolean();
+        // held for the whole snapshot write so a dropped room is never written back
+        private final ReentrantLock snapshotLock = new ReentrantLock();
+
+        private RoomDocument(String roomId) {
+            this.roomId = roomId;
+        }
+    }
+}
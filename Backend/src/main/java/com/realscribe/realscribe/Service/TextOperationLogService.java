@@ -0,0 +1,277 @@
+package com.realscribe.realscribe.Service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.realscribe.realscribe.DTO.WsMessage;
+import com.realscribe.realscribe.Entity.TextOperationLogEntry;
+import com.realscribe.realscribe.Repo.TextOperationLogRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Append-only log of text patches. Each merged text_patch gets the room's next sequence and is
+// buffered, then inserted in JDBC batches; nothing in the log is ever updated. The compactor
+// deletes entries the room's text_operations snapshot already covers (base_seq) once they are
+// older than the replay retention, so reconnecting clients can still catch up from the log.
+@Service
+public class TextOperationLogService {
+    private static final Logger logger = LoggerFactory.getLogger(TextOperationLogService.class);
+
+    private static final String INSERT_SQL =
+            "INSERT INTO text_operation_log (room_id, seq, user_id, payload, created_at) " +
+            "VALUES (?, ?, ?, CAST(? AS jsonb), now())";
+
+    // compaction may have deleted every row up to the snapshot's base_seq, so the counter resumes
+    // from whichever is higher
+    private static final String LAST_SEQ_SQL =
+            "SELECT GREATEST(" +
+            "COALESCE((SELECT MAX(seq) FROM text_operation_log WHERE room_id = ?), 0), " +
+            "COALESCE((SELECT MAX(base_seq) FROM text_operations WHERE room_id = ?), 0))";
+
+    private static final String COMPACT_SQL =
+            "DELETE FROM text_operation_log l USING text_operations t " +
+            "WHERE l.room_id = t.room_id AND t.base_seq IS NOT NULL AND l.seq <= t.base_seq " +
+            "AND l.created_at < now() - make_interval(secs => ?)";
+
+    private final TextOperationLogRepository logRepo;
+    private final JdbcTemplate jdbc;
+    private final ObjectMapper objectMapper;
+    private final long retentionSeconds;
+    private final int maxPendingPerRoom;
+
+    private final Map<String, RoomLog> rooms = new ConcurrentHashMap<>();
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong compacted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Timer insertTimer;
+
+    public TextOperationLogService(
+            TextOperationLogRepository logRepo,
+            JdbcTemplate jdbc,
+            ObjectMapper objectMapper,
+            @Value("${realscribe.text.log.retention-seconds:600}") long retentionSeconds,
+            @Value("${realscribe.text.log.max-pending-per-room:5000}") int maxPendingPerRoom,
+            MeterRegistry meters) {
+        this.logRepo = logRepo;
+        this.jdbc = jdbc;
+        this.objectMapper = objectMapper;
+        this.retentionSeconds = retentionSeconds;
+        this.maxPendingPerRoom = Math.max(1, maxPendingPerRoom);
+        this.insertTimer = Timer.builder("realscribe.db.batch")
+                .tags("table", "text_operation_log", "operation", "insert").register(meters);
+    }
+
+    // Assigns the next per-room sequence to a (merged) patch and buffers it for insertion.
+    public long append(String roomId, WsMessage patch) {
+        while (true) {
+            RoomLog log = rooms.computeIfAbsent(roomId, RoomLog::new);
+            synchronized (log) {
+                if (log.retired) {
+                    continue;
+                }
+                initialize(log);
+                long seq = ++log.lastSeq;
+                if (log.pending.size() >= maxPendingPerRoom) {
+                    // the table has been unreachable for a while: the oldest entry goes, and a client
+                    // replaying across the gap reloads the snapshot instead
+                    log.pending.pollFirst();
+                    if (dropped.incrementAndGet() % 1000 == 1) {
+                        logger.warn("text_log_buffer_full roomId={} pending={} dropped={}",
+                                roomId, log.pending.size(), dropped.get());
+                    }
+                }
+                log.pending.addLast(new Object[]{roomId, seq, patch.getUserId(), patch.getPayload()});
+                log.lastTouched = System.currentTimeMillis();
+                appended.incrementAndGet();
+                return seq;
+            }
+        }
+    }
+
+    // Highest sequence handed out for the room so far (0 when it has no log).
+    public long currentSeq(String roomId) {
+        while (true) {
+            RoomLog log = rooms.computeIfAbsent(roomId, RoomLog::new);
+            synchronized (log) {
+                if (log.retired) {
+                    continue;
+                }
+                initialize(log);
+                return log.lastSeq;
+            }
+        }
+    }
+
+    // Entries after `since`, from the table plus whatever is still buffered.
+    public List<Map<String, Object>> since(String roomId, long since) {
+        List<Map<String, Object>> ops = new ArrayList<>();
+        RoomLog log = rooms.get(roomId);
+        List<Object[]> buffered = List.of();
+        if (log != null) {
+            // wait for an in-flight insert so every entry is either in the table or in the buffer
+            log.flushLock.lock();
+            try {
+                synchronized (log) {
+                    buffered = new ArrayList<>(log.pending);
+                }
+            } finally {
+                log.flushLock.unlock();
+            }
+        }
+
+        long last = since;
+        for (TextOperationLogEntry entry : logRepo.findByRoomIdAndSeqGreaterThanOrderBySeqAsc(roomId, since)) {
+            ops.add(op(entry.getSeq(), entry.getUserId(), entry.getPayload()));
+            last = entry.getSeq();
+        }
+        for (Object[] row : buffered) {
+            long seq = (Long) row[1];
+            if (seq > last) {
+                ops.add(op(seq, (String) row[2], row[3]));
+            }
+        }
+        return ops;
+    }
+
+    // Forgets the room's buffer and counter and deletes its log rows; used when the room is deleted.
+    public void deleteRoom(String roomId) {
+        deleteRooms(List.of(roomId));
+    }
+
+    // Same for many rooms, with one DELETE for all of them.
+    public void deleteRooms(Collection<String> roomIds) {
+        for (String roomId : roomIds) {
+            RoomLog log = rooms.remove(roomId);
+            if (log != null) {
+                log.flushLock.lock();
+                try {
+                    synchronized (log) {
+                        log.pending.clear();
+                        log.retired = true;
+                    }
+                } finally {
+                    log.flushLock.unlock();
+                }
+            }
+        }
+        logRepo.deleteAllByRoomIdIn(roomIds);
+    }
+
+    @Scheduled(fixedDelayString = "${realscribe.text.log.flush-interval-ms:1000}")
+    public void flush() {
+        long now = System.currentTimeMillis();
+        for (RoomLog log : rooms.values()) {
+            flush(log);
+            synchronized (log) {
+                // idle rooms forget their counter; it is re-read from the table on next use
+                if (!log.retired && log.pending.isEmpty() && now - log.lastTouched >= retentionSeconds * 1000) {
+                    log.retired = true;
+                    rooms.remove(log.roomId, log);
+                }
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${realscribe.text.log.compact-interval-ms:60000}")
+    public void compact() {
+        try {
+            int deleted = jdbc.update(COMPACT_SQL, retentionSeconds);
+            if (deleted > 0) {
+                compacted.addAndGet(deleted);
+                logger.debug("text_log_compacted deleted={}", deleted);
+            }
+        } catch (Exception e) {
+            logger.error("text_log_compaction_failed error={}", e.toString());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (RoomLog log : rooms.values()) {
+            flush(log);
+        }
+    }
+
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("rooms", (long) rooms.size());
+        stats.put("appended", appended.get());
+        stats.put("written", written.get());
+        stats.put("compacted", compacted.get());
+        stats.put("dropped", dropped.get());
+        return stats;
+    }
+
+    private void initialize(RoomLog log) {
+        if (log.lastSeq < 0) {
+            Long lastSeq = jdbc.queryForObject(LAST_SEQ_SQL, Long.class, log.roomId, log.roomId);
+            log.lastSeq = lastSeq != null ? lastSeq : 0;
+        }
+    }
+
+    private void flush(RoomLog log) {
+        log.flushLock.lock();
+        try {
+            List<Object[]> batch;
+            synchronized (log) {
+                if (log.pending.isEmpty()) {
+                    return;
+                }
+                batch = new ArrayList<>(log.pending);
+            }
+            try {
+                List<Object[]> args = new ArrayList<>(batch.size());
+                for (Object[] row : batch) {
+                    args.add(new Object[]{row[0], row[1], row[2], objectMapper.writeValueAsString(row[3])});
+                }
+                insertTimer.record(() -> jdbc.batchUpdate(INSERT_SQL, args));
+                written.addAndGet(batch.size());
+            } catch (Exception e) {
+                // left in the buffer; retried on the next flush
+                logger.error("text_log_flush_failed roomId={} entries={} error={}", log.roomId, batch.size(), e.toString());
+                return;
+            }
+            synchronized (log) {
+                // by identity: entries dropped from a full buffer meanwhile may have shifted the head
+                log.pending.removeAll(new HashSet<>(batch));
+            }
+        } finally {
+            log.flushLock.unlock();
+        }
+    }
+
+    private Map<String, Object> op(long seq, String userId, Object payload) {
+        Map<String, Object> op = new LinkedHashMap<>();
+        op.put("seq", seq);
+        op.put("userId", userId);
+        op.put("payload", payload instanceof JsonNode ? payload : objectMapper.valueToTree(payload));
+        return op;
+    }
+
+    private static final class RoomLog {
+        private final String roomId;
+        // -1 until read from the table
+        private long lastSeq = -1;
+        // {roomId, seq, userId, payload} waiting for the next batch insert
+        private final ArrayDeque<Object[]> pending = new ArrayDeque<>();
+        private long lastTouched = System.currentTimeMillis();
+        private boolean retired;
+        private final ReentrantLock flushLock = new ReentrantLock();
+
+        private RoomLog(String roomId) {
+            this.roomId = roomId;
+        }
+    }
+}
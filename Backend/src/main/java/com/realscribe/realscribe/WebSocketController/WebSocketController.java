@@ -2,17 +2,23 @@ package com.realscribe.realscribe.WebSocketController;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import com.realscribe.realscribe.Config.OutboundBackpressure;
 import com.realscribe.realscribe.DTO.WsMessage;
 import com.realscribe.realscribe.Entity.DrawingOperation;
-import com.realscribe.realscribe.Entity.TextOperation;
-import com.realscribe.realscribe.Repo.DrawingOperationRepository;
-import com.realscribe.realscribe.Repo.TextOperationRepository;
+import com.realscribe.realscribe.Service.CanvasStateCache;
+import com.realscribe.realscribe.Service.RoomTaskExecutor;
+import com.realscribe.realscribe.Service.StrokeMoveAggregator;
+import com.realscribe.realscribe.Service.StrokeWriteBehindService;
+import com.realscribe.realscribe.Service.TextDocumentService;
+import com.realscribe.realscribe.Service.TextOperationLogService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.messaging.handler.annotation.*;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
-import org.springframework.transaction.annotation.Transactional;
 import jakarta.annotation.PreDestroy;
 
 import java.util.*;
@@ -30,29 +36,58 @@ public class WebSocketController {
     //this will be used to convert json <--> object
     private final ObjectMapper objectMapper;
 //    //repo -> add to database
-    private final DrawingOperationRepository opRepo;
 //    private final RoomRepository roomRepo;
-    private final TextOperationRepository textRepo;
-    private final Map<String, WsMessage> pendingTextPatches = new ConcurrentHashMap<>();
+    private final TextDocumentService textDocuments;
+    private final TextOperationLogService textLog;
+    private final StrokeWriteBehindService strokeWriter;
+    private final CanvasStateCache canvasCache;
+    private final StrokeMoveAggregator strokeMoves;
+    private final RoomTaskExecutor roomTasks;
+    private final OutboundBackpressure backpressure;
+    // roomId -> patches received since the last tick, in arrival order.
+    // Only touched inside compute()/remove() so producers never append to a drained list.
+    private final Map<String, List<WsMessage>> pendingTextPatches = new ConcurrentHashMap<>();
     private final ScheduledExecutorService textPatchBroadcaster = Executors.newSingleThreadScheduledExecutor();
 
+    // time to apply a message in its room's mailbox, by type; unknown types share "other"
+    private final Map<String, Timer> messageTimers = new HashMap<>();
+    private final Timer textPatchFlushTimer;
+    private final Counter textPatchesReceived;
+    private final Counter textPatchesCoalesced;
+
     //to maintain live users logic
 //    private final PresenceService presenceService;
 
     public WebSocketController(SimpMessagingTemplate messaging, ObjectMapper objectMapper,
-                               DrawingOperationRepository opRepo, TextOperationRepository textRepo
+                               TextDocumentService textDocuments, TextOperationLogService textLog,
+                               StrokeWriteBehindService strokeWriter, CanvasStateCache canvasCache,
+                               StrokeMoveAggregator strokeMoves, RoomTaskExecutor roomTasks,
+                               OutboundBackpressure backpressure, MeterRegistry meters
     ) {
         this.messaging = messaging;
         this.objectMapper = objectMapper;
-        this.opRepo = opRepo;
-        this.textRepo = textRepo;
+        this.textDocuments = textDocuments;
+        this.textLog = textLog;
+        this.strokeWriter = strokeWriter;
+        this.canvasCache = canvasCache;
+        this.strokeMoves = strokeMoves;
+        this.roomTasks = roomTasks;
+        this.backpressure = backpressure;
+
+        for (String type : List.of("stroke_move", "stroke_end", "text_update", "text_patch", "clear", "other")) {
+            messageTimers.put(type, Timer.builder("realscribe.ws.messages").tag("type", type).register(meters));
+        }
+        this.textPatchFlushTimer = Timer.builder("realscribe.text.patch.flush").register(meters);
+        this.textPatchesReceived = Counter.builder("realscribe.text.patches.received").register(meters);
+        // patches folded into another one by mergeTextPatches
+        this.textPatchesCoalesced = Counter.builder("realscribe.text.patches.coalesced").register(meters);
 
-        // Coalesce bursty patch traffic: keep latest patch per room and broadcast at fixed cadence.
+        // Coalesce bursty patch traffic: every patch received in a tick is merged per room, in order,
+        // and the merged patches are broadcast once per tick instead of keeping only the latest.
+        // The flush runs in the room's mailbox so it is ordered with the room's other operations.
         textPatchBroadcaster.scheduleAtFixedRate(() -> {
-            for (Map.Entry<String, WsMessage> entry : pendingTextPatches.entrySet()) {
-                if (pendingTextPatches.remove(entry.getKey(), entry.getValue())) {
-                    messaging.convertAndSend("/topic/write/room." + entry.getKey(), entry.getValue());
-                }
+            for (String roomId : pendingTextPatches.keySet()) {
+                roomTasks.execute(roomId, () -> broadcastTextPatches(roomId));
             }
         }, 40, 40, TimeUnit.MILLISECONDS);
     }
@@ -62,81 +97,171 @@ public class WebSocketController {
         textPatchBroadcaster.shutdownNow();
     }
 
+    private void broadcastTextPatches(String roomId) {
+        List<WsMessage> patches = pendingTextPatches.remove(roomId);
+        if (patches == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            List<WsMessage> mergedPatches = mergeTextPatches(patches);
+            textPatchesCoalesced.increment(patches.size() - mergedPatches.size());
+            for (WsMessage merged : mergedPatches) {
+                // appended to the text operation log, clients can replay after a known seq
+                merged.setSeq(textLog.append(roomId, merged));
+                messaging.convertAndSend("/topic/write/room." + roomId, merged);
+            }
+        } catch (Exception e) {
+            logger.error("text_patch_broadcast_failed roomId={} patches={}", roomId, patches.size(), e);
+        } finally {
+            textPatchFlushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
     // Example: clients publish to /app/room/{roomId}/msg
+    // Not @Transactional: strokes are persisted by the write-behind stage, and holding a
+    // transaction here would pin a pooled connection for every stroke_move.
     @MessageMapping("/room/{roomId}/msg")
-    @Transactional
     public void onMessage(@DestinationVariable String roomId, @Payload WsMessage message,
-                          @Header("simpSessionId") String sessionId) throws Exception {
+                          @Header("simpSessionId") String sessionId) {
+        // every operation on the room is applied in its mailbox, one at a time, in arrival order
+        boolean accepted = roomTasks.offer(roomId, () -> {
+            long start = System.nanoTime();
+            try {
+                route(roomId, sessionId, message);
+            } finally {
+                messageTimers.getOrDefault(message.getType(), messageTimers.get("other"))
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        });
+        if (!accepted) {
+            // the room is too far behind to take it; the sender reloads instead of diverging
+            String type = message.getType();
+            String topic = type != null && type.startsWith("text_") ? "/topic/write/room." : "/topic/room.";
+            backpressure.requestResync(sessionId, topic + roomId);
+        }
+    }
 
+    private void route(String roomId, String sessionId, WsMessage message) {
         // Basic routing
         switch (message.getType()) {
             //when cursor moves
             case "stroke_move":
-                // broadcast to others
-                messaging.convertAndSend("/topic/room." + roomId, message);
+                // merged per frame and decimated before it is broadcast to others
+                strokeMoves.submit(sessionId, roomId, message);
                 break;
             case "stroke_end":
-                try {
-                    // persist to DB
-                    DrawingOperation op = new DrawingOperation();
-                    op.setRoomId(roomId);
-                    op.setId(message.getStrokeId());
-                    op.setOperationType("stroke");
-                    op.setPayload(objectMapper.valueToTree(message.getPayload())); // Convert to JsonNode
-                    
-                    opRepo.save(op);
-                    
-                    // broadcast
-                    messaging.convertAndSend("/topic/room." + roomId, message);
-                } catch (Exception e) {
-                    logger.error("Failed to save stroke_end for room {} and stroke {}", roomId, message.getStrokeId(), e);
-                    // Still broadcast to keep clients in sync even if DB fails? 
-                    // Better to fail visibly? For now, let's try to broadcast anyway so users can draw
-                    messaging.convertAndSend("/topic/room." + roomId, message);
-                }
+                recordStrokeEnd(roomId, sessionId, message);
                 break;
             case "text_update":
-                // Update latest row in-place when possible (reduces write amplification and table churn).
-                TextOperation textOperation = textRepo.findTopByRoomIdOrderByIdDesc(roomId)
-                        .orElseGet(TextOperation::new);
-                textOperation.setRoomId(roomId);
-                textOperation.setUserId(message.getUserId());
-                textOperation.setPayload(objectMapper.valueToTree(message.getPayload())); // Convert to JsonNode
-                textRepo.save(textOperation);
+                // Applied to the in-memory document; TextDocumentService snapshots it to the table.
+                textDocuments.apply(roomId, message.getUserId(), objectMapper.valueToTree(message.getPayload()));
 
                 messaging.convertAndSend("/topic/write/room." + roomId, message);
                 break;
             case "text_patch":
-                pendingTextPatches.put(roomId, message);
+                textPatchesReceived.increment();
+                pendingTextPatches.compute(roomId, (key, patches) -> {
+                    List<WsMessage> list = patches != null ? patches : new ArrayList<>();
+                    list.add(message);
+                    return list;
+                });
                 break;
             case "clear":
-                try {
-                    Map<String, Object> payload = message.getPayload();
-                    Object erasedStrokesObj = payload.get("erasedStrokes");
-
-                    // Safely convert to List<String>
-                    List<String> erasedStrokeIds = new ArrayList<>();
-                    if (erasedStrokesObj instanceof List) {
-                        for (Object id : (List<?>) erasedStrokesObj) {
-                            if (id != null) {
-                                erasedStrokeIds.add(id.toString());
-                            }
-                        }
-                    }
-
-                    // Batch delete in transaction
-                    if (!erasedStrokeIds.isEmpty()) {
-                        opRepo.deleteAllByIdIn(erasedStrokeIds);
-                    }
-
-                    messaging.convertAndSend("/topic/room." + roomId, message);
-                } catch (Exception e) {
-                    logger.error("Error processing clear operation for room {}", roomId, e);
-                }
+                recordClear(roomId, sessionId, message);
                 break;
             default:
                 messaging.convertAndSend("/topic/room." + roomId, message);
         }
     }
 
+    private void recordStrokeEnd(String roomId, String sessionId, WsMessage message) {
+        // moves still waiting for their frame go out before the end
+        strokeMoves.finish(sessionId, message.getStrokeId());
+        DrawingOperation op = new DrawingOperation();
+        op.setRoomId(roomId);
+        op.setId(message.getStrokeId());
+        op.setOperationType("stroke");
+        op.setPayload(objectMapper.valueToTree(message.getPayload())); // Convert to JsonNode
+        try {
+            // sequenced + cached + queued for the write-behind flush
+            OptionalLong seq = canvasCache.recordStroke(op);
+            if (seq.isEmpty()) {
+                // the room can't persist it (database down or behind): the sender reloads the canvas
+                backpressure.requestResync(sessionId, "/topic/room." + roomId);
+                return;
+            }
+            message.setSeq(seq.getAsLong());
+        } catch (Exception e) {
+            // e.g. the room could not be loaded: still persist it, unsequenced
+            logger.error("Failed to record stroke_end for room {} and stroke {}", roomId, message.getStrokeId(), e);
+            strokeWriter.enqueue(op);
+        }
+        // broadcast even if recording failed so users can keep drawing
+        messaging.convertAndSend("/topic/room." + roomId, message);
+    }
+
+    private void recordClear(String roomId, String sessionId, WsMessage message) {
+        try {
+            Map<String, Object> payload = message.getPayload();
+            Object erasedStrokesObj = payload.get("erasedStrokes");
+
+            // Safely convert to List<String>
+            List<String> erasedStrokeIds = new ArrayList<>();
+            if (erasedStrokesObj instanceof List) {
+                for (Object id : (List<?>) erasedStrokesObj) {
+                    if (id != null) {
+                        erasedStrokeIds.add(id.toString());
+                    }
+                }
+            }
+
+            // Erased strokes become tombstones (persisted by the write-behind flush) so
+            // delta sync can tell reconnecting clients what disappeared.
+            OptionalLong seq = canvasCache.recordErase(roomId, erasedStrokeIds);
+            if (seq.isEmpty()) {
+                backpressure.requestResync(sessionId, "/topic/room." + roomId);
+                return;
+            }
+            message.setSeq(seq.getAsLong());
+
+            messaging.convertAndSend("/topic/room." + roomId, message);
+        } catch (Exception e) {
+            logger.error("Error processing clear operation for room {}", roomId, e);
+        }
+    }
+
+    // Concatenates the ProseMirror steps of consecutive patches from the same user into one patch.
+    // Runs are split when the author changes, because clients skip patches carrying their own userId.
+    // A patch without a steps array is passed through on its own.
+    static List<WsMessage> mergeTextPatches(List<WsMessage> patches) {
+        List<WsMessage> merged = new ArrayList<>();
+        WsMessage current = null;
+        List<Object> currentSteps = null;
+
+        for (WsMessage patch : patches) {
+            Object steps = patch.getPayload() != null ? patch.getPayload().get("steps") : null;
+            if (!(steps instanceof List<?> stepList)) {
+                merged.add(patch);
+                current = null;
+                continue;
+            }
+            if (current != null && Objects.equals(current.getUserId(), patch.getUserId())) {
+                currentSteps.addAll(stepList);
+                continue;
+            }
+
+            current = new WsMessage();
+            current.setType(patch.getType());
+            current.setRoomId(patch.getRoomId());
+            current.setName(patch.getName());
+            current.setUserId(patch.getUserId());
+            currentSteps = new ArrayList<>(stepList);
+            Map<String, Object> payload = new HashMap<>(patch.getPayload());
+            payload.put("steps", currentSteps);
+            current.setPayload(payload);
+            merged.add(current);
+        }
+        return merged;
+    }
 }
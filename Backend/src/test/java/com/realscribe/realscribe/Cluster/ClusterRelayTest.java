@@ -0,0 +1,156 @@
+package com.realscribe.realscribe.Cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClusterRelayTest {
+    private static final long PEER_TIMEOUT_MS = 1_000;
+
+    private final List<Node> nodes = new ArrayList<>();
+    private Node a;
+    private Node b;
+    private String roomOnB;
+
+    @BeforeEach
+    void startCluster() {
+        a = start("a");
+        b = start("b");
+        for (int i = 0; roomOnB == null; i++) {
+            if ("b".equals(a.cluster.homeOf("room-" + i))) {
+                roomOnB = "room-" + i;
+            }
+        }
+    }
+
+    @AfterEach
+    void stopCluster() {
+        nodes.forEach(node -> node.cluster.shutdown());
+    }
+
+    @Test
+    void forwardsAFrameForARemoteRoomToItsHomeNode() {
+        Message<?> result = join(a, "s1");
+
+        assertThat(result).isNull();
+        assertThat(b.inbound).hasSize(1);
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(b.inbound.get(0).getHeaders());
+        assertThat(sessionId).startsWith("a/").endsWith("/s1");
+        assertThat(SimpMessageHeaderAccessor.getSessionAttributes(b.inbound.get(0).getHeaders()))
+                .containsEntry("userId", "u1")
+                .containsEntry("roomId", roomOnB);
+        assertThat(b.relay.stats()).containsEntry("remoteSessions", 1L);
+    }
+
+    @Test
+    void expiresTheSessionsOfAPeerThatWentSilent() {
+        join(a, "s1");
+        // crash: a stops heartbeating and never sends the disconnect
+        a.cluster.shutdown();
+
+        b.relay.expireSilentPeers(System.currentTimeMillis() + PEER_TIMEOUT_MS / 2);
+        assertThat(b.disconnects).isEmpty();
+
+        b.relay.expireSilentPeers(System.currentTimeMillis() + PEER_TIMEOUT_MS + 1);
+        assertThat(b.disconnects).hasSize(1);
+        SessionDisconnectEvent event = b.disconnects.get(0);
+        assertThat(event.getSessionId()).startsWith("a/").endsWith("/s1");
+        assertThat(SimpMessageHeaderAccessor.getSessionAttributes(event.getMessage().getHeaders()))
+                .containsEntry("roomId", roomOnB);
+        assertThat(b.relay.stats())
+                .containsEntry("remoteSessions", 0L)
+                .containsEntry("expiredSessions", 1L);
+    }
+
+    @Test
+    void keepsTheSessionsOfAPeerThatHeartbeats() {
+        join(a, "s1");
+
+        a.relay.heartbeat();
+        b.relay.expireSilentPeers(System.currentTimeMillis() + PEER_TIMEOUT_MS / 2);
+
+        assertThat(b.disconnects).isEmpty();
+        assertThat(b.relay.stats()).containsEntry("remoteSessions", 1L);
+    }
+
+    @Test
+    void expiresTheSessionsOfAPeersPreviousBootWhenItComesBack() {
+        a.relay.heartbeat();
+        join(a, "s1");
+        a.cluster.shutdown();
+
+        Node restarted = start("a");
+        join(restarted, "s2");
+        restarted.relay.heartbeat();
+
+        assertThat(b.disconnects).hasSize(1);
+        assertThat(b.disconnects.get(0).getSessionId()).endsWith("/s1");
+        assertThat(b.relay.stats()).containsEntry("remoteSessions", 1L);
+    }
+
+    @Test
+    void disconnectOfARemoteSessionReachesTheHomeNode() {
+        join(a, "s1");
+        Map<String, Object> attributes = new HashMap<>(Map.of("roomId", roomOnB));
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.DISCONNECT);
+        accessor.setSessionId("s1");
+        accessor.setSessionAttributes(attributes);
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+
+        a.relay.onDisconnect(new SessionDisconnectEvent(this, message, "s1", CloseStatus.NORMAL));
+
+        assertThat(b.disconnects).hasSize(1);
+        assertThat(b.relay.stats()).containsEntry("remoteSessions", 0L);
+    }
+
+    private Message<?> join(Node node, String sessionId) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SEND);
+        accessor.setDestination("/app/room/" + roomOnB + "/presence.join");
+        accessor.setSessionId(sessionId);
+        accessor.setSessionAttributes(new HashMap<>(Map.of("userId", "u1", "name", "Ada")));
+        Message<byte[]> message = MessageBuilder.createMessage(
+                "{\"userId\":\"u1\",\"name\":\"Ada\"}".getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+        return node.relay.inboundInterceptor().preSend(message, node.inboundChannel);
+    }
+
+    private Node start(String nodeId) {
+        Node node = new Node(nodeId);
+        node.relay.start();
+        nodes.add(node);
+        return node;
+    }
+
+    private static final class Node {
+        private final List<Message<?>> inbound = new CopyOnWriteArrayList<>();
+        private final List<SessionDisconnectEvent> disconnects = new CopyOnWriteArrayList<>();
+        private final MessageChannel inboundChannel = (message, timeout) -> inbound.add(message);
+        private final ClusterService cluster;
+        private final ClusterRelay relay;
+
+        private Node(String nodeId) {
+            cluster = new ClusterService(new ObjectMapper(), true, nodeId, "a,b", "", "loopback", "", 128, 1000);
+            MessageChannel brokerChannel = (message, timeout) -> true;
+            relay = new ClusterRelay(cluster, inboundChannel, brokerChannel, event -> {
+                if (event instanceof SessionDisconnectEvent disconnect) {
+                    disconnects.add(disconnect);
+                }
+            }, PEER_TIMEOUT_MS);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.realscribe.realscribe.Cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConsistentHashRingTest {
+    private static final int ROOMS = 10_000;
+
+    @Test
+    void placesARoomTheSameWayWhateverOrderTheNodesAreListedIn() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c"), 128);
+        ConsistentHashRing shuffled = new ConsistentHashRing(List.of("c", "a", "b"), 128);
+
+        for (int i = 0; i < ROOMS; i++) {
+            assertThat(shuffled.nodeFor("room-" + i)).isEqualTo(ring.nodeFor("room-" + i));
+        }
+        assertThat(ring.nodes()).containsExactly("a", "b", "c");
+    }
+
+    @Test
+    void spreadsRoomsRoughlyEvenly() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c", "d"), 128);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < ROOMS; i++) {
+            counts.merge(ring.nodeFor("room-" + i), 1, Integer::sum);
+        }
+
+        assertThat(counts).hasSize(4);
+        // an even share is 2500
+        assertThat(counts.values()).allSatisfy(count -> assertThat(count).isBetween(1_750, 3_250));
+    }
+
+    @Test
+    void addingANodeOnlyMovesRoomsOntoIt() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of("a", "b", "c"), 128);
+        ConsistentHashRing after = new ConsistentHashRing(List.of("a", "b", "c", "d"), 128);
+
+        int moved = 0;
+        for (int i = 0; i < ROOMS; i++) {
+            String was = before.nodeFor("room-" + i);
+            String is = after.nodeFor("room-" + i);
+            if (!was.equals(is)) {
+                assertThat(is).isEqualTo("d");
+                moved++;
+            }
+        }
+        // about a quarter of the rooms, not a reshuffle
+        assertThat(moved).isBetween(ROOMS / 8, ROOMS * 3 / 8);
+    }
+
+    @Test
+    void refusesAnEmptyNodeList() {
+        assertThatThrownBy(() -> new ConsistentHashRing(List.of(), 128))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
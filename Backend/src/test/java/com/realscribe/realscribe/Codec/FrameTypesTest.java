@@ -0,0 +1,44 @@
+package com.realscribe.realscribe.Codec;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FrameTypesTest {
+
+    @Test
+    void readsTheTopLevelType() {
+        assertThat(type("{\"type\":\"stroke_move\",\"roomId\":\"r1\"}")).isEqualTo("stroke_move");
+        assertThat(type(" { \"roomId\" : \"r1\" ,\n \"type\" : \"clear\" } ")).isEqualTo("clear");
+    }
+
+    @Test
+    void ignoresATypeNestedInThePayload() {
+        assertThat(type("{\"payload\":{\"type\":\"x\"},\"type\":\"stroke_end\"}")).isEqualTo("stroke_end");
+        assertThat(type("{\"payload\":[{\"type\":\"x\"}],\"n\":1,\"ok\":true}")).isNull();
+        assertThat(type("{\"note\":\"\\\"type\\\":\\\"x\\\"\",\"type\":\"chat\"}")).isEqualTo("chat");
+    }
+
+    @Test
+    void takesTheLastOfARepeatedTypeLikeJackson() {
+        assertThat(type("{\"type\":\"stroke_move\",\"type\":\"stroke_end\"}")).isEqualTo("stroke_end");
+    }
+
+    @Test
+    void givesUpOnEscapesAndMalformedFrames() {
+        assertThat(type("{\"\\u0074ype\":\"stroke_end\",\"type\":\"stroke_move\"}")).isNull();
+        assertThat(type("{\"type\":\"stroke\\u005fend\"}")).isNull();
+        assertThat(type("{\"type\":1}")).isNull();
+        assertThat(type("{\"type\":\"stroke_end\"")).isNull();
+        assertThat(type("{\"payload\":{\"type\":\"x\"")).isNull();
+        assertThat(type("[\"type\",\"clear\"]")).isNull();
+        assertThat(type("{}")).isNull();
+        assertThat(type("")).isNull();
+    }
+
+    private static String type(String json) {
+        return FrameTypes.peekJsonType(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,159 @@
+package com.realscribe.realscribe.Codec;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompDecoder;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SharedFrameStompEncoderTest {
+    private static final byte[] PAYLOAD = "{\"type\":\"stroke_move\",\"strokeId\":\"s1\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final SharedFrameStompEncoder encoder = new SharedFrameStompEncoder();
+    private final StompEncoder stock = new StompEncoder();
+
+    @Test
+    void encodesEverySubscriberFrameLikeTheStockEncoderFromOneHead() {
+        Object key = broadcastKey(encoder, "/topic/room.r1");
+
+        for (int i = 0; i < 50; i++) {
+            Map<String, Object> headers = subscriberHeaders(key, "/topic/room.r1", "sub-" + i, "m-" + i);
+            assertSameFrame(encoder.encode(headers, PAYLOAD), stock.encode(headers, PAYLOAD));
+        }
+
+        assertThat(encoder.stats()).containsEntry("sharedFrames", 50L).containsEntry("encodedHeads", 1L);
+    }
+
+    @Test
+    void keepsTheHeadsOfTwoBroadcastsOfTheSamePayloadApart() {
+        Object room = broadcastKey(encoder, "/topic/room.r1");
+        Object chat = broadcastKey(encoder, "/topic/room.r1.chat");
+
+        byte[] first = encoder.encode(subscriberHeaders(room, "/topic/room.r1", "sub-0", "m-0"), PAYLOAD);
+        byte[] second = encoder.encode(subscriberHeaders(chat, "/topic/room.r1.chat", "sub-1", "m-1"), PAYLOAD);
+
+        assertThat(decode(first).getDestination()).isEqualTo("/topic/room.r1");
+        assertThat(decode(second).getDestination()).isEqualTo("/topic/room.r1.chat");
+        assertThat(encoder.stats()).containsEntry("encodedHeads", 2L);
+    }
+
+    @Test
+    void keepsAHeadPerPayloadAndHeaderVariantOfOneBroadcast() {
+        Object key = broadcastKey(encoder, "/topic/room.r1");
+        byte[] binary = {1, 2, 3, 0, 4};
+
+        // JSON and binary subscribers interleaved, as the broker delivers them
+        for (int i = 0; i < 10; i++) {
+            Map<String, Object> json = subscriberHeaders(key, "/topic/room.r1", "sub-j" + i, "m-j" + i);
+            Map<String, Object> bin = binaryHeaders(key, "sub-b" + i, "m-b" + i);
+            assertSameFrame(encoder.encode(json, PAYLOAD), stock.encode(json, PAYLOAD));
+            assertSameFrame(encoder.encode(bin, binary), stock.encode(bin, binary));
+        }
+
+        assertThat(encoder.stats()).containsEntry("sharedFrames", 20L).containsEntry("encodedHeads", 2L);
+    }
+
+    @Test
+    void neverReusesAHeadForAnotherPayloadOrHeaderValue() {
+        Object key = broadcastKey(encoder, "/topic/room.r1");
+        byte[] longer = "{\"type\":\"stroke_move\",\"strokeId\":\"s12345\"}".getBytes(StandardCharsets.UTF_8);
+        Map<String, Object> headers = subscriberHeaders(key, "/topic/room.r1", "sub-0", "m-0");
+        StompHeaderAccessor custom = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        custom.setDestination("/topic/room.r1");
+        custom.setContentType(MimeTypeUtils.TEXT_PLAIN);
+        custom.setSubscriptionId("sub-1");
+        custom.setMessageId("m-1");
+        custom.setHeader(SharedFrameStompEncoder.FRAME_KEY_HEADER, key);
+        Map<String, Object> other = custom.getMessageHeaders();
+
+        assertSameFrame(encoder.encode(headers, PAYLOAD), stock.encode(headers, PAYLOAD));
+        assertSameFrame(encoder.encode(headers, longer), stock.encode(headers, longer));
+        assertSameFrame(encoder.encode(other, PAYLOAD), stock.encode(other, PAYLOAD));
+
+        assertThat(encoder.stats()).containsEntry("encodedHeads", 3L);
+    }
+
+    @Test
+    void encodesUntaggedFramesWithoutSharingAHead() {
+        Map<String, Object> headers = subscriberHeaders(null, "/topic/room.r1", "sub-0", "m-0");
+
+        assertSameFrame(encoder.encode(headers, PAYLOAD), stock.encode(headers, PAYLOAD));
+        assertSameFrame(encoder.encode(headers, PAYLOAD), stock.encode(headers, PAYLOAD));
+
+        assertThat(encoder.stats()).containsEntry("encodedHeads", 2L);
+    }
+
+    @Test
+    void escapesHeaderValues() {
+        Object key = broadcastKey(encoder, "/topic/room.a:b");
+        Map<String, Object> headers = subscriberHeaders(key, "/topic/room.a:b", "sub\\0", "m\n0");
+
+        assertSameFrame(encoder.encode(headers, PAYLOAD), stock.encode(headers, PAYLOAD));
+    }
+
+    // The key the broker-channel tagger puts on a broadcast, as the broker copies it to subscribers
+    static Object broadcastKey(SharedFrameStompEncoder encoder, String destination) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        accessor.setDestination(destination);
+        Message<?> tagged = encoder.broadcastTagger().preSend(
+                MessageBuilder.createMessage(PAYLOAD, accessor.getMessageHeaders()), null);
+        return tagged.getHeaders().get(SharedFrameStompEncoder.FRAME_KEY_HEADER);
+    }
+
+    static Map<String, Object> subscriberHeaders(Object key, String destination, String subscription, String messageId) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        accessor.setDestination(destination);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setSubscriptionId(subscription);
+        accessor.setMessageId(messageId);
+        if (key != null) {
+            accessor.setHeader(SharedFrameStompEncoder.FRAME_KEY_HEADER, key);
+        }
+        return accessor.getMessageHeaders();
+    }
+
+    // what StrokeCodecInterceptor turns an opted-in subscriber's message into
+    private static Map<String, Object> binaryHeaders(Object key, String subscription, String messageId) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        accessor.setDestination("/topic/room.r1");
+        accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        accessor.setNativeHeader(StrokeCodec.HEADER, StrokeCodec.VERSION_NAME);
+        accessor.setSubscriptionId(subscription);
+        accessor.setMessageId(messageId);
+        accessor.setHeader(SharedFrameStompEncoder.FRAME_KEY_HEADER, key);
+        return accessor.getMessageHeaders();
+    }
+
+    private static void assertSameFrame(byte[] actual, byte[] expected) {
+        Message<byte[]> got = decodeMessage(actual);
+        Message<byte[]> want = decodeMessage(expected);
+        assertThat(StompHeaderAccessor.wrap(got).getCommand()).isEqualTo(StompCommand.MESSAGE);
+        assertThat(StompHeaderAccessor.wrap(got).toNativeHeaderMap())
+                .isEqualTo(StompHeaderAccessor.wrap(want).toNativeHeaderMap());
+        assertThat(got.getPayload()).isEqualTo(want.getPayload());
+        assertThat(actual).hasSameSizeAs(expected);
+        assertThat(actual[actual.length - 1]).isZero();
+    }
+
+    private static StompHeaderAccessor decode(byte[] frame) {
+        Message<byte[]> message = decodeMessage(frame);
+        assertThat(message.getPayload()).isEqualTo(PAYLOAD);
+        return StompHeaderAccessor.wrap(message);
+    }
+
+    private static Message<byte[]> decodeMessage(byte[] frame) {
+        List<Message<byte[]>> messages = new StompDecoder().decode(ByteBuffer.wrap(frame));
+        assertThat(messages).hasSize(1);
+        return messages.get(0);
+    }
+}
@@ -0,0 +1,143 @@
+package com.realscribe.realscribe.Codec;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Per-subscriber cost of encoding a broadcast MESSAGE frame: the stock encoder, the shared head
+// with one exactly-sized array per frame, and the shared head assembled in a pooled per-thread
+// buffer (which still has to be copied out, since the session keeps the frame in its send
+// buffer; it also skips header escaping, so it is a lower bound). Run with: mvn test -Dtest=StompFrameEncodingBenchmarkTest -Dbenchmarks=true
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+class StompFrameEncodingBenchmarkTest {
+    private static final int BROADCASTS = 200;
+    private static final int SUBSCRIBERS = 50;
+    private static final int WARMUP_ROUNDS = 50;
+    private static final int ROUNDS = 200;
+
+    private static final ThreadLocal<byte[]> POOL = ThreadLocal.withInitial(() -> new byte[4096]);
+
+    @Test
+    void perSubscriberFrameCost() {
+        List<byte[]> payloads = new ArrayList<>();
+        for (int i = 0; i < BROADCASTS; i++) {
+            payloads.add(strokeMove(i));
+        }
+
+        StompEncoder stock = new StompEncoder();
+        double stockNanos = measure(payloads, (broadcast, headers, payload) -> stock.encode(headers, payload).length);
+
+        SharedFrameStompEncoder shared = new SharedFrameStompEncoder();
+        double sharedNanos = measure(payloads, new Encoder() {
+            private Object key;
+            private int keyFor = -1;
+
+            @Override
+            public int encode(int broadcast, Map<String, Object> headers, byte[] payload) {
+                return shared.encode(headers, payload).length;
+            }
+
+            @Override
+            public Object key(int broadcast) {
+                if (keyFor != broadcast) {
+                    key = SharedFrameStompEncoderTest.broadcastKey(shared, "/topic/room.r-1a2b3c");
+                    keyFor = broadcast;
+                }
+                return key;
+            }
+        });
+
+        double pooledNanos = measure(payloads, new Encoder() {
+            private byte[] head;
+            private int headFor = -1;
+
+            @Override
+            public int encode(int broadcast, Map<String, Object> headers, byte[] payload) {
+                if (headFor != broadcast) {
+                    head = ("MESSAGE\ndestination:/topic/room.r-1a2b3c\ncontent-type:application/json\ncontent-length:"
+                            + payload.length + "\n").getBytes(StandardCharsets.UTF_8);
+                    headFor = broadcast;
+                }
+                return pooledFrame(head, headers, payload).length;
+            }
+        });
+
+        System.out.printf("stomp MESSAGE, %d subscribers: stock %.0f ns, shared head %.0f ns, pooled buffer %.0f ns per frame%n",
+                SUBSCRIBERS, stockNanos, sharedNanos, pooledNanos);
+        assertThat(sharedNanos).isPositive();
+    }
+
+    private interface Encoder {
+        int encode(int broadcast, Map<String, Object> headers, byte[] payload);
+
+        default Object key(int broadcast) {
+            return null;
+        }
+    }
+
+    // Subscriber headers are built outside the timed part, fresh each round as the broker does.
+    private static double measure(List<byte[]> payloads, Encoder encoder) {
+        long sink = 0;
+        long nanos = 0;
+        for (int r = 0; r < WARMUP_ROUNDS + ROUNDS; r++) {
+            List<List<Map<String, Object>>> headers = new ArrayList<>();
+            for (int b = 0; b < payloads.size(); b++) {
+                Object key = encoder.key(r * BROADCASTS + b);
+                List<Map<String, Object>> subscribers = new ArrayList<>();
+                for (int s = 0; s < SUBSCRIBERS; s++) {
+                    subscribers.add(SharedFrameStompEncoderTest.subscriberHeaders(
+                            key, "/topic/room.r-1a2b3c", "sub-" + s, "m-" + b + "-" + s));
+                }
+                headers.add(subscribers);
+            }
+            long start = System.nanoTime();
+            for (int b = 0; b < payloads.size(); b++) {
+                for (Map<String, Object> subscriber : headers.get(b)) {
+                    sink += encoder.encode(r * BROADCASTS + b, subscriber, payloads.get(b));
+                }
+            }
+            if (r >= WARMUP_ROUNDS) {
+                nanos += System.nanoTime() - start;
+            }
+        }
+        assertThat(sink).isPositive();
+        return nanos / (double) ROUNDS / BROADCASTS / SUBSCRIBERS;
+    }
+
+    private static byte[] pooledFrame(byte[] head, Map<String, Object> headers, byte[] payload) {
+        @SuppressWarnings("unchecked")
+        Map<String, List<String>> nativeHeaders = (Map<String, List<String>>) headers.get("nativeHeaders");
+        byte[] lines = ("subscription:" + nativeHeaders.get("subscription").get(0)
+                + "\nmessage-id:" + nativeHeaders.get("message-id").get(0) + "\n\n").getBytes(StandardCharsets.UTF_8);
+        int length = head.length + lines.length + payload.length + 1;
+        byte[] buf = POOL.get();
+        if (buf.length < length) {
+            buf = new byte[Math.max(length, buf.length * 2)];
+            POOL.set(buf);
+        }
+        System.arraycopy(head, 0, buf, 0, head.length);
+        System.arraycopy(lines, 0, buf, head.length, lines.length);
+        System.arraycopy(payload, 0, buf, head.length + lines.length, payload.length);
+        buf[length - 1] = 0;
+        return Arrays.copyOf(buf, length);
+    }
+
+    private static byte[] strokeMove(int i) {
+        StringBuilder points = new StringBuilder();
+        for (int p = 0; p < 24; p++) {
+            points.append(p == 0 ? "" : ",").append('[').append(400 + p * 1.25).append(',').append(300 + i % 50 + p * 0.75).append(",0.5]");
+        }
+        return ("{\"type\":\"stroke_move\",\"userId\":\"u-3f2a9c1e\",\"strokeId\":\"s-" + (100000 + i)
+                + "\",\"payload\":{\"points\":[" + points + "],\"tool\":\"pen\",\"width\":2,\"color\":\"#000000\"}}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,77 @@
+package com.realscribe.realscribe.Codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StrokeCodecInterceptorTest {
+    private static final String TOPIC = "/topic/room.r1";
+    private static final byte[] JSON = ("{\"type\":\"stroke_move\",\"roomId\":\"r1\",\"userId\":\"u1\",\"strokeId\":\"s1\","
+            + "\"payload\":{\"points\":[[1.5,2.5,0.5]],\"tool\":\"pen\",\"width\":2,\"color\":\"#000000\"}}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final StrokeCodecInterceptor interceptor = new StrokeCodecInterceptor(new ObjectMapper());
+    private final SharedFrameStompEncoder encoder = new SharedFrameStompEncoder();
+
+    @BeforeEach
+    void connectBinarySessions() {
+        for (String session : new String[] {"s-a", "s-b"}) {
+            StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+            connect.setSessionId(session);
+            connect.setSessionAttributes(new HashMap<>());
+            connect.setNativeHeader(StrokeCodec.HEADER, StrokeCodec.VERSION_NAME);
+            interceptor.preSend(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()), null);
+        }
+    }
+
+    @Test
+    void encodesABroadcastOnceForAllItsBinarySubscribers() {
+        Object key = SharedFrameStompEncoderTest.broadcastKey(encoder, TOPIC);
+
+        Message<?> first = interceptor.preSend(delivery(key, "s-a"), null);
+        Message<?> second = interceptor.preSend(delivery(key, "s-b"), null);
+
+        assertThat(first.getPayload()).isInstanceOf(byte[].class).isSameAs(second.getPayload());
+        assertThat(StrokeCodec.decodeMessage((byte[]) first.getPayload()).getStrokeId()).isEqualTo("s1");
+        assertThat(StompHeaderAccessor.wrap(second).getContentType()).isEqualTo(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        assertThat(interceptor.stats()).containsEntry("binaryFrames", 2L);
+    }
+
+    @Test
+    void encodesUntaggedDeliveriesOnTheirOwn() {
+        Message<?> first = interceptor.preSend(delivery(null, "s-a"), null);
+        Message<?> second = interceptor.preSend(delivery(null, "s-b"), null);
+
+        assertThat(first.getPayload()).isNotSameAs(second.getPayload()).isEqualTo(second.getPayload());
+    }
+
+    @Test
+    void leavesJsonSessionsAlone() {
+        Message<byte[]> message = delivery(SharedFrameStompEncoderTest.broadcastKey(encoder, TOPIC), "s-json");
+
+        assertThat(interceptor.preSend(message, null)).isSameAs(message);
+    }
+
+    // a broadcast as the broker hands it to one subscriber
+    private static Message<byte[]> delivery(Object key, String session) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        accessor.setDestination(TOPIC);
+        accessor.setSessionId(session);
+        accessor.setSubscriptionId("sub-" + session);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        if (key != null) {
+            accessor.setHeader(SharedFrameStompEncoder.FRAME_KEY_HEADER, key);
+        }
+        return MessageBuilder.createMessage(JSON, accessor.getMessageHeaders());
+    }
+}
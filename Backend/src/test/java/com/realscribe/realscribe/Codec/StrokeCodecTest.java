@@ -0,0 +1,135 @@
+package com.realscribe.realscribe.Codec;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.realscribe.realscribe.DTO.WsMessage;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+// The byte vectors are shared with Frontend/src/utils/strokeCodec.test.js
+class StrokeCodecTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final JsonNode VECTORS = load();
+
+    @TestFactory
+    Stream<DynamicTest> encodesEachMessageToItsVector() {
+        return valid().map(vector -> DynamicTest.dynamicTest(vector.path("name").asText(), () ->
+                assertThat(HexFormat.of().formatHex(StrokeCodec.encodeMessage(vector.get("message"))))
+                        .isEqualTo(vector.get("hex").asText())));
+    }
+
+    @TestFactory
+    Stream<DynamicTest> decodesEachVectorBackToItsMessage() {
+        return valid().map(vector -> DynamicTest.dynamicTest(vector.path("name").asText(), () -> {
+            JsonNode expected = vector.get("message");
+            WsMessage decoded = StrokeCodec.decodeMessage(HexFormat.of().parseHex(vector.get("hex").asText()));
+
+            assertThat(decoded.getType()).isEqualTo(expected.get("type").asText());
+            assertThat(decoded.getRoomId()).isEqualTo(expected.get("roomId").textValue());
+            assertThat(decoded.getUserId()).isEqualTo(expected.get("userId").textValue());
+            assertThat(decoded.getStrokeId()).isEqualTo(expected.get("strokeId").textValue());
+            assertThat(decoded.getName()).isEqualTo(expected.get("name").textValue());
+            assertThat(decoded.getSeq()).isEqualTo(expected.get("seq").isNull() ? null : expected.get("seq").asLong());
+            assertSamePayload(decoded.getPayload(), expected.get("payload"));
+        }));
+    }
+
+    @TestFactory
+    Stream<DynamicTest> rejectsMalformedFrames() {
+        return stream(VECTORS.get("invalid")).map(vector -> DynamicTest.dynamicTest(vector.path("name").asText(), () -> {
+            byte[] frame = HexFormat.of().parseHex(vector.get("hex").asText());
+            assertThatThrownBy(() -> StrokeCodec.decodeMessage(frame)).isInstanceOf(IllegalArgumentException.class);
+        }));
+    }
+
+    @Test
+    void peeksTheTypeOnlyOfKnownFrames() {
+        byte[] move = HexFormat.of().parseHex(valid().findFirst().orElseThrow().get("hex").asText());
+        assertThat(StrokeCodec.peekType(move)).isEqualTo("stroke_move");
+
+        move[2] = 3;
+        assertThat(StrokeCodec.peekType(move)).isNull();
+        assertThat(StrokeCodec.peekType("{\"type\":\"stroke_move\"}".getBytes())).isNull();
+    }
+
+    @Test
+    void roundTripsAPayloadForStorage() {
+        JsonNode payload = valid().findFirst().orElseThrow().get("message").get("payload");
+
+        JsonNode decoded = StrokeCodec.decodePayload(StrokeCodec.encodePayload(payload));
+
+        // tool, color and width come back first; numbers print the same whatever node type holds them
+        assertThat(decoded.toString()).isEqualTo("{\"tool\":\"pen\",\"color\":\"#000000\",\"width\":2,"
+                + "\"points\":[[400.25,300.5,0.5],[401.75,299.0,0.625],[403.0,298.25,0.75]]}");
+    }
+
+    @Test
+    void leavesPayloadsItCannotCarryAsJson() throws IOException {
+        assertThat(StrokeCodec.encodeMessage(MAPPER.readTree(
+                "{\"type\":\"stroke_move\",\"payload\":{\"points\":[[1,2]],\"opacity\":0.5}}"))).isNull();
+        assertThat(StrokeCodec.encodeMessage(MAPPER.readTree(
+                "{\"type\":\"stroke_move\",\"payload\":{\"points\":[[1,2],[1,2,3]]}}"))).isNull();
+        assertThat(StrokeCodec.encodeMessage(MAPPER.readTree(
+                "{\"type\":\"text_patch\",\"payload\":{\"points\":[]}}"))).isNull();
+    }
+
+    private static void assertSamePayload(Map<String, Object> actual, JsonNode expected) {
+        assertThat(actual.keySet()).containsExactlyInAnyOrderElementsOf(fieldNames(expected));
+        expected.properties().forEach(field -> {
+            Object value = actual.get(field.getKey());
+            JsonNode want = field.getValue();
+            if (want.isArray()) {
+                List<?> points = (List<?>) value;
+                assertThat(points).hasSize(want.size());
+                for (int i = 0; i < want.size(); i++) {
+                    List<?> coords = (List<?>) points.get(i);
+                    assertThat(coords).hasSize(want.get(i).size());
+                    for (int c = 0; c < coords.size(); c++) {
+                        assertThat(((Number) coords.get(c)).doubleValue()).isCloseTo(want.get(i).get(c).asDouble(), within(1e-9));
+                    }
+                }
+            } else if (want.isNumber()) {
+                assertThat(((Number) value).doubleValue()).isEqualTo(want.asDouble());
+            } else {
+                assertThat(value).isEqualTo(want.asText());
+            }
+        });
+    }
+
+    private static List<String> fieldNames(JsonNode node) {
+        List<String> names = new ArrayList<>();
+        node.properties().forEach(field -> names.add(field.getKey()));
+        return names;
+    }
+
+    private static Stream<JsonNode> valid() {
+        return stream(VECTORS.get("valid"));
+    }
+
+    private static Stream<JsonNode> stream(JsonNode array) {
+        List<JsonNode> nodes = new ArrayList<>();
+        array.forEach(nodes::add);
+        return nodes.stream();
+    }
+
+    private static JsonNode load() {
+        try (InputStream in = StrokeCodecTest.class.getResourceAsStream("/stroke-codec-v1-vectors.json")) {
+            return MAPPER.readTree(in);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
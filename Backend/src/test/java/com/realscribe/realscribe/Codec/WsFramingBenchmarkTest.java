@@ -0,0 +1,213 @@
+package com.realscribe.realscribe.Codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.util.MimeType;
+import org.springframework.web.socket.sockjs.frame.Jackson2SockJsMessageCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Bytes on the wire and encode time per broadcast frame over /ws (SockJS) and /ws-native, with
+// JSON and binary stroke payloads: STOMP MESSAGE encode, SockJS array framing where used, and
+// the WebSocket frame header; deflated sizes use permessage-deflate with context takeover, as
+// Tomcat negotiates it. Single-threaded, 200 representative frames per message type.
+// Run with: mvn test -Dtest=WsFramingBenchmarkTest -Dbenchmarks=true
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+class WsFramingBenchmarkTest {
+    private static final int FRAMES = 200;
+    private static final int WARMUP_ROUNDS = 300;
+    private static final int ROUNDS = 1000;
+    // deflating a stroke_end takes ~0.4 ms, so fewer rounds
+    private static final int DEFLATE_WARMUP_ROUNDS = 30;
+    private static final int DEFLATE_ROUNDS = 100;
+
+    private static final String CANVAS = "/topic/room.r-1a2b3c";
+    private static final String WRITE = "/topic/write/room.r-1a2b3c";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Random random = new Random(1);
+
+    private record Framing(double bytes, double deflated, double nanos) {}
+
+    @Test
+    void framingCostPerMessageType() throws Exception {
+        List<ObjectNode> moves = new ArrayList<>();
+        List<ObjectNode> ends = new ArrayList<>();
+        List<ObjectNode> patches = new ArrayList<>();
+        for (int i = 0; i < FRAMES; i++) {
+            moves.add(stroke("stroke_move", 24, i));
+            ends.add(stroke("stroke_end", 200, i));
+            patches.add(patch(i));
+        }
+        report("stroke_move", moves, CANVAS, true);
+        report("stroke_end", ends, CANVAS, true);
+        report("text_patch", patches, WRITE, false);
+    }
+
+    private void report(String name, List<ObjectNode> messages, String destination, boolean strokes) throws Exception {
+        List<byte[]> json = new ArrayList<>();
+        for (ObjectNode message : messages) {
+            json.add(mapper.writeValueAsBytes(message));
+        }
+        Framing sockJs = measure(json, "application/json", destination, true);
+        Framing nativeJson = measure(json, "application/json", destination, false);
+        System.out.printf("%-12s sockjs      %7.0f B  deflate n/a       %6.0f ns%n", name, sockJs.bytes(), sockJs.nanos());
+        System.out.printf("%-12s native json %7.0f B  deflate %6.0f B  %6.0f ns (+%.0f ns deflate)%n", name,
+                nativeJson.bytes(), nativeJson.deflated(), nativeJson.nanos(), deflateNanos(json, "application/json", destination));
+        assertThat(nativeJson.bytes()).isLessThan(sockJs.bytes());
+        if (!strokes) {
+            return;
+        }
+
+        List<byte[]> binary = new ArrayList<>();
+        for (ObjectNode message : messages) {
+            binary.add(StrokeCodec.encodeMessage(message));
+        }
+        long start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+            for (ObjectNode message : messages) {
+                StrokeCodec.encodeMessage(message);
+            }
+        }
+        double codecNanos = (System.nanoTime() - start) / ((double) ROUNDS * messages.size());
+        Framing nativeBinary = measure(binary, "application/octet-stream", destination, false);
+        System.out.printf("%-12s native bin  %7.0f B  deflate %6.0f B  %6.0f ns (+%.0f ns codec, once per broadcast)%n", name,
+                nativeBinary.bytes(), nativeBinary.deflated(), nativeBinary.nanos(), codecNanos);
+        assertThat(nativeBinary.bytes()).isLessThan(nativeJson.bytes());
+    }
+
+    private static Framing measure(List<byte[]> payloads, String contentType, String destination, boolean sockJs) {
+        Jackson2SockJsMessageCodec sockJsCodec = new Jackson2SockJsMessageCodec();
+        StompEncoder encoder = new StompEncoder();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        byte[] buffer = new byte[1 << 20];
+        long bytes = 0;
+        long deflated = 0;
+        try {
+            for (int i = 0; i < payloads.size(); i++) {
+                byte[] frame = frame(encoder, payloads.get(i), contentType, destination, i);
+                byte[] wire = sockJs ? sockJs(sockJsCodec, frame).getBytes(StandardCharsets.UTF_8) : frame;
+                bytes += wire.length + wsHeader(wire.length);
+                deflater.setInput(wire);
+                // SYNC_FLUSH ends with 00 00 ff ff, which permessage-deflate leaves off the wire
+                int n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH) - 4;
+                deflated += n + wsHeader(n);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        long sink = 0;
+        long nanos = 0;
+        for (int r = 0; r < WARMUP_ROUNDS + ROUNDS; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < payloads.size(); i++) {
+                byte[] frame = frame(encoder, payloads.get(i), contentType, destination, i);
+                sink += sockJs ? sockJs(sockJsCodec, frame).length() : frame.length;
+            }
+            if (r >= WARMUP_ROUNDS) {
+                nanos += System.nanoTime() - start;
+            }
+        }
+        assertThat(sink).isPositive();
+        return new Framing(bytes / (double) payloads.size(), deflated / (double) payloads.size(),
+                nanos / ((double) ROUNDS * payloads.size()));
+    }
+
+    // Deflate time per frame, paid for every subscriber since each session has its own context.
+    private static double deflateNanos(List<byte[]> payloads, String contentType, String destination) {
+        StompEncoder encoder = new StompEncoder();
+        List<byte[]> frames = new ArrayList<>();
+        for (int i = 0; i < payloads.size(); i++) {
+            frames.add(frame(encoder, payloads.get(i), contentType, destination, i));
+        }
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        byte[] buffer = new byte[1 << 20];
+        long nanos = 0;
+        try {
+            for (int r = 0; r < DEFLATE_WARMUP_ROUNDS + DEFLATE_ROUNDS; r++) {
+                long start = System.nanoTime();
+                for (byte[] frame : frames) {
+                    deflater.setInput(frame);
+                    deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                }
+                if (r >= DEFLATE_WARMUP_ROUNDS) {
+                    nanos += System.nanoTime() - start;
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+        return nanos / ((double) DEFLATE_ROUNDS * frames.size());
+    }
+
+    private static byte[] frame(StompEncoder encoder, byte[] body, String contentType, String destination, int seq) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        accessor.setDestination(destination);
+        accessor.setSubscriptionId("sub-0");
+        accessor.setMessageId("ab12cd34-" + seq);
+        accessor.setContentType(MimeType.valueOf(contentType));
+        accessor.setContentLength(body.length);
+        return encoder.encode(accessor.getMessageHeaders(), body);
+    }
+
+    private static String sockJs(Jackson2SockJsMessageCodec codec, byte[] frame) {
+        return codec.encode(new String(frame, StandardCharsets.UTF_8));
+    }
+
+    private static int wsHeader(int length) {
+        return length < 126 ? 2 : length < 65536 ? 4 : 10;
+    }
+
+    private ObjectNode stroke(String type, int points, int i) {
+        ObjectNode message = mapper.createObjectNode();
+        message.put("type", type);
+        message.put("userId", "u-3f2a9c1e");
+        message.put("strokeId", "s-" + (100000 + i));
+        ObjectNode payload = message.putObject("payload");
+        ArrayNode list = payload.putArray("stroke_end".equals(type) ? "currentStrokes" : "points");
+        double x = 400 + random.nextInt(200);
+        double y = 300 + random.nextInt(200);
+        for (int k = 0; k < points; k++) {
+            // a hand-drawn line: small random steps, two decimals
+            x += random.nextGaussian() * 3;
+            y += random.nextGaussian() * 3;
+            ArrayNode point = list.addArray();
+            point.add(Math.round(x * 100) / 100.0);
+            point.add(Math.round(y * 100) / 100.0);
+            point.add(0.5);
+        }
+        payload.put("tool", "pen");
+        payload.put("width", 2);
+        payload.put("color", "#000000");
+        return message;
+    }
+
+    private ObjectNode patch(int i) {
+        ObjectNode message = mapper.createObjectNode();
+        message.put("type", "text_patch");
+        message.put("userId", "u-3f2a9c1e");
+        ArrayNode steps = message.putObject("payload").putArray("steps");
+        for (int k = 0; k < 3; k++) {
+            ObjectNode step = steps.addObject();
+            step.put("stepType", "replace");
+            step.put("from", 120 + i + k);
+            step.put("to", 120 + i + k);
+            step.putObject("slice").putArray("content").addObject()
+                    .put("type", "text").put("text", "\"quoted\" word " + k);
+        }
+        return message;
+    }
+}
@@ -0,0 +1,112 @@
+package com.realscribe.realscribe.Config;
+
+import com.realscribe.realscribe.Config.OutboundBackpressure.FrameClass;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OutboundBackpressureTest {
+    private static final String CANVAS = "/topic/room.r1";
+    private static final String WRITE = "/topic/write/room.r1";
+
+    private final MessageChannel clientOutbound = mock(MessageChannel.class);
+    private OutboundBackpressure backpressure;
+    private WebSocketSession session;
+
+    @BeforeEach
+    void connect() throws Exception {
+        backpressure = new OutboundBackpressure(clientOutbound, 2, 4);
+        WebSocketHandler handler = mock(WebSocketHandler.class);
+        WebSocketSession raw = mock(WebSocketSession.class);
+        when(raw.getId()).thenReturn("s1");
+        backpressure.decoratorFactory().decorate(handler).afterConnectionEstablished(raw);
+        ArgumentCaptor<WebSocketSession> counted = ArgumentCaptor.forClass(WebSocketSession.class);
+        verify(handler).afterConnectionEstablished(counted.capture());
+        session = counted.getValue();
+    }
+
+    @Test
+    void classifiesByDestinationAndTopLevelType() {
+        assertThat(OutboundBackpressure.classify(CANVAS, json("stroke_move"))).isEqualTo(FrameClass.EPHEMERAL);
+        assertThat(OutboundBackpressure.classify(CANVAS, json("stroke_end"))).isEqualTo(FrameClass.ESSENTIAL);
+        assertThat(OutboundBackpressure.classify(CANVAS, json("clear"))).isEqualTo(FrameClass.ESSENTIAL);
+        assertThat(OutboundBackpressure.classify(WRITE, json("text_patch"))).isEqualTo(FrameClass.PATCH);
+        assertThat(OutboundBackpressure.classify(WRITE, json("text_update"))).isEqualTo(FrameClass.ESSENTIAL);
+        // chat and presence topics hang off the room topic
+        assertThat(OutboundBackpressure.classify(CANVAS + ".chat", json("stroke_move"))).isEqualTo(FrameClass.ESSENTIAL);
+        assertThat(OutboundBackpressure.classify(CANVAS, "not bytes")).isEqualTo(FrameClass.ESSENTIAL);
+    }
+
+    @Test
+    void dropsSupersededFramesPastTheSoftLimitAndEverythingPastTheHardLimit() {
+        assertThat(send(CANVAS, "stroke_end")).isNotNull();
+        assertThat(send(CANVAS, "stroke_end")).isNotNull();
+
+        // depth 2: soft limit
+        assertThat(send(CANVAS, "stroke_move")).isNull();
+        assertThat(send(WRITE, "text_patch")).isNull();
+        assertThat(send(CANVAS, "stroke_end")).isNotNull();
+        assertThat(send(CANVAS, "stroke_end")).isNotNull();
+
+        // depth 4: hard limit
+        assertThat(send(CANVAS, "stroke_end")).isNull();
+        assertThat(backpressure.stats())
+                .containsEntry("droppedEphemeral", 1L)
+                .containsEntry("droppedPatch", 1L)
+                .containsEntry("droppedEssential", 1L)
+                .containsEntry("maxDepth", 4L);
+    }
+
+    @Test
+    void asksForAResyncOfWhatWasLostOnceTheQueueDrains() throws Exception {
+        send(CANVAS, "stroke_end");
+        send(CANVAS, "stroke_end");
+        send(CANVAS, "stroke_move");
+        verify(clientOutbound, never()).send(any());
+
+        send(WRITE, "text_patch");
+        verify(clientOutbound, never()).send(any());
+        // resume depth is half the soft limit: one frame written gets there
+        session.sendMessage(new TextMessage("frame"));
+
+        ArgumentCaptor<Message<?>> resync = messageCaptor();
+        verify(clientOutbound).send(resync.capture());
+        assertThat(SimpMessageHeaderAccessor.getDestination(resync.getValue().getHeaders())).isEqualTo(WRITE);
+        assertThat(new String((byte[]) resync.getValue().getPayload(), StandardCharsets.UTF_8)).contains("resync_required");
+        assertThat(backpressure.stats()).containsEntry("resyncsSent", 1L).containsEntry("awaitingResync", 0L);
+    }
+
+    private Message<?> send(String destination, String type) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId("s1");
+        accessor.setSubscriptionId(destination.equals(WRITE) ? "sub-write" : "sub-canvas");
+        accessor.setDestination(destination);
+        return backpressure.preSend(MessageBuilder.createMessage(json(type), accessor.getMessageHeaders()), clientOutbound);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ArgumentCaptor<Message<?>> messageCaptor() {
+        return (ArgumentCaptor) ArgumentCaptor.forClass(Message.class);
+    }
+
+    private static byte[] json(String type) {
+        return ("{\"type\":\"" + type + "\",\"payload\":{\"type\":\"stroke_move\"}}").getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,35 @@
+package com.realscribe.realscribe.Config;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StompRateLimitInterceptorTest {
+
+    @Test
+    void chargesAFrameByItsOwnTypeNotOneInItsPayload() {
+        assertThat(category("{\"payload\":{\"type\":\"stroke_move\"},\"type\":\"stroke_end\"}")).isEqualTo("edit");
+        assertThat(category("{\"type\":\"stroke_move\",\"payload\":{\"type\":\"clear\"}}")).isEqualTo("move");
+        assertThat(category("{\"type\":\"cursor\"}")).isEqualTo("other");
+    }
+
+    @Test
+    void chargesAFrameWhoseTypeCantBeReadAsAnEdit() {
+        assertThat(category("{\"\\u0074ype\":\"stroke_end\"}")).isEqualTo("edit");
+        assertThat(category("{\"payload\":{\"type\":\"cursor\"}}")).isEqualTo("edit");
+    }
+
+    @Test
+    void chargesByDestinationOutsideMsg() {
+        byte[] body = "{\"type\":\"stroke_move\"}".getBytes(StandardCharsets.UTF_8);
+        assertThat(StompRateLimitInterceptor.category("/app/room/r1/chat.send", body)).isEqualTo("chat");
+        assertThat(StompRateLimitInterceptor.category("/app/room/r1/presence.join", body)).isEqualTo("presence");
+        assertThat(StompRateLimitInterceptor.category(null, body)).isEqualTo("other");
+    }
+
+    private static String category(String json) {
+        return StompRateLimitInterceptor.category("/app/room/r1/msg", json.getBytes(StandardCharsets.UTF_8));
+    }
+}
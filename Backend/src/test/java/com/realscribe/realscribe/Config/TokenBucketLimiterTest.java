@@ -0,0 +1,51 @@
+package com.realscribe.realscribe.Config;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketLimiterTest {
+
+    @Test
+    void allowsABurstThenRefillsOverTime() throws Exception {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(100, 3, 1000);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.tryAcquire("a")).isTrue();
+        }
+        assertThat(limiter.tryAcquire("a")).isFalse();
+        // other keys have their own bucket
+        assertThat(limiter.tryAcquire("b")).isTrue();
+
+        Thread.sleep(50);
+        assertThat(limiter.tryAcquire("a")).isTrue();
+        assertThat(limiter.stats()).containsEntry("allowed", 5L).containsEntry("rejected", 1L);
+    }
+
+    @Test
+    void dropsBucketsThatHaveRefilledWithoutCountingThemAsEvicted() throws Exception {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(1000, 1, 100_000);
+        for (int i = 0; i < 1000; i++) {
+            limiter.tryAcquire("a" + i);
+        }
+        Thread.sleep(20);
+        for (int i = 0; i < 1000; i++) {
+            limiter.tryAcquire("b" + i);
+        }
+
+        assertThat(limiter.stats().get("keys")).isLessThanOrEqualTo(1000L);
+        assertThat(limiter.stats()).containsEntry("evicted", 0L);
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedPastMaxKeys() {
+        // one key per stripe, buckets that take a minute to refill
+        TokenBucketLimiter limiter = new TokenBucketLimiter(1, 60, 64);
+        for (int i = 0; i < 1000; i++) {
+            limiter.tryAcquire("k" + i);
+        }
+
+        assertThat(limiter.stats().get("keys")).isLessThanOrEqualTo(64L);
+        assertThat(limiter.stats().get("evicted")).isEqualTo(1000L - limiter.stats().get("keys"));
+    }
+}
@@ -0,0 +1,111 @@
+package com.realscribe.realscribe.Service;
+
+import com.realscribe.realscribe.DTO.ChatMessage;
+import com.realscribe.realscribe.Entity.ChatMessageRecord;
+import com.realscribe.realscribe.Repo.ChatMessageRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+// History reads: the ring first, then chat_messages by keyset plus the writer's unwritten queue.
+class ChatServiceTest {
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    private final InMemoryChatStore store = new InMemoryChatStore(4);
+    private final ChatWriteBehindService writer = mock(ChatWriteBehindService.class);
+    private final ChatMessageRepository repo = mock(ChatMessageRepository.class);
+    private final ChatService chat = new ChatService(store, writer, repo, 10, 600_000);
+
+    @Test
+    void servesWhatTheRingHoldsWithoutTheTable() {
+        append(0, 6);
+
+        assertThat(ids(chat.getRoomMessages("r1", null, 3))).containsExactly("m3", "m4", "m5");
+        assertThat(ids(chat.getRoomMessages("r1", "m4", 2))).containsExactly("m2", "m3");
+        verifyNoInteractions(repo);
+    }
+
+    @Test
+    void fillsTheRestFromTheTableBeforeTheRingsOldestMessage() {
+        // capacity 4: m0 and m1 were overwritten and only the table has them
+        append(0, 6);
+        when(repo.findPageBefore("r1", message(2).timestamp(), "m2", PageRequest.of(0, 3)))
+                .thenReturn(List.of(row(1), row(0)));
+
+        assertThat(ids(chat.getRoomMessages("r1", null, 7))).containsExactly("m0", "m1", "m2", "m3", "m4", "m5");
+    }
+
+    @Test
+    void mergesUnwrittenMessagesWithTheTableOnce() {
+        append(0, 6);
+        // m1 is still queued; m0 and m1 both come back from the table too
+        when(writer.pending("r1")).thenReturn(List.of(message(1), message(3)));
+        when(repo.findPageBefore(anyString(), any(), anyString(), any())).thenReturn(List.of(row(1), row(0)));
+
+        assertThat(ids(chat.getRoomMessages("r1", null, 10))).containsExactly("m0", "m1", "m2", "m3", "m4", "m5");
+    }
+
+    @Test
+    void readsTheNewestFromTheTableWhenTheRoomHasNoRing() {
+        when(writer.pending("r1")).thenReturn(List.of(message(2)));
+        when(repo.findByRoomIdOrderByCreatedAtDescIdDesc("r1", PageRequest.of(0, 2))).thenReturn(List.of(row(1), row(0)));
+
+        assertThat(ids(chat.getRoomMessages("r1", null, 2))).containsExactly("m1", "m2");
+    }
+
+    @Test
+    void findsACursorTheRingNoLongerHolds() {
+        append(0, 6);
+        when(repo.findById("m1")).thenReturn(Optional.of(row(1)));
+        when(repo.findPageBefore("r1", message(1).timestamp(), "m1", PageRequest.of(0, 5))).thenReturn(List.of(row(0)));
+
+        assertThat(ids(chat.getRoomMessages("r1", "m1", 5))).containsExactly("m0");
+    }
+
+    @Test
+    void stopsAskingTheTableOnceNothingPrecedesTheRing() {
+        append(0, 3);
+
+        assertThat(ids(chat.getRoomMessages("r1", null, 10))).containsExactly("m0", "m1", "m2");
+        assertThat(ids(chat.getRoomMessages("r1", null, 10))).containsExactly("m0", "m1", "m2");
+
+        verify(repo, times(1)).findPageBefore(anyString(), any(), anyString(), any());
+    }
+
+    private void append(int from, int to) {
+        ChatStore.Room room = store.room("r1");
+        for (int i = from; i < to; i++) {
+            room.append(message(i));
+        }
+    }
+
+    private static ChatMessage message(int i) {
+        return new ChatMessage("m" + i, "r1", "u1", "Ada", "hello " + i,
+                ChatMessage.MessageType.MESSAGE, T0.plusSeconds(i));
+    }
+
+    private static ChatMessageRecord row(int i) {
+        ChatMessage message = message(i);
+        ChatMessageRecord row = new ChatMessageRecord();
+        row.setId(message.id());
+        row.setRoomId(message.roomId());
+        row.setUserId(message.userId());
+        row.setSenderName(message.senderName());
+        row.setContent(message.content());
+        row.setType(message.type().name());
+        row.setCreatedAt(message.timestamp());
+        return row;
+    }
+
+    private static List<String> ids(List<ChatMessage> messages) {
+        return messages.stream().map(ChatMessage::id).toList();
+    }
+}
@@ -0,0 +1,175 @@
+package com.realscribe.realscribe.Service;
+
+import com.realscribe.realscribe.DTO.ChatMessage;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryChatStoreTest {
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    private final InMemoryChatStore store = new InMemoryChatStore(4);
+
+    @Test
+    void returnsTheNewestMessagesOldestFirst() {
+        ChatStore.Room room = appended(3);
+
+        ChatStore.Window window = room.before(null, 2);
+
+        assertThat(ids(window)).containsExactly("m1", "m2");
+        assertThat(window.cursor()).isNull();
+        assertThat(window.reachedStart()).isFalse();
+        assertThat(room.before(null, 10).reachedStart()).isTrue();
+    }
+
+    @Test
+    void pagesBackFromACursor() {
+        ChatStore.Room room = appended(4);
+
+        ChatStore.Window window = room.before("m2", 10);
+
+        assertThat(ids(window)).containsExactly("m0", "m1");
+        assertThat(window.cursor().id()).isEqualTo("m2");
+        assertThat(window.reachedStart()).isTrue();
+        assertThat(room.before("m0", 10).messages()).isEmpty();
+    }
+
+    @Test
+    void forgetsOverwrittenSlots() {
+        ChatStore.Room room = appended(6);
+
+        ChatStore.Window window = room.before(null, 10);
+
+        // capacity 4: m0 and m1 were overwritten, and the ring no longer starts at the room's first message
+        assertThat(ids(window)).containsExactly("m2", "m3", "m4", "m5");
+        assertThat(window.reachedStart()).isFalse();
+        assertThat(room.size()).isEqualTo(4);
+        assertThat(room.before("m1", 10)).isNull();
+        assertThat(ids(room.before("m3", 10))).containsExactly("m2");
+    }
+
+    @Test
+    void trimsToTheNewestAndKeepsTheFloorAboveOverwrites() {
+        ChatStore.Room room = appended(6);
+
+        assertThat(room.trimTo(1)).isEqualTo(3);
+        assertThat(ids(room.before(null, 10))).containsExactly("m5");
+        assertThat(room.before("m4", 10)).isNull();
+        assertThat(room.trimTo(3)).isZero();
+
+        // the floor stays where trimTo put it until appends overtake it
+        room.append(message(6));
+        assertThat(ids(room.before(null, 10))).containsExactly("m5", "m6");
+        assertThat(room.size()).isEqualTo(2);
+        room.append(message(7));
+        room.append(message(8));
+        room.append(message(9));
+        assertThat(ids(room.before(null, 10))).containsExactly("m6", "m7", "m8", "m9");
+    }
+
+    @Test
+    void aTrimmedRingDoesNotReachTheStart() {
+        ChatStore.Room room = appended(3);
+
+        room.trimTo(2);
+
+        assertThat(room.before(null, 10).reachedStart()).isFalse();
+        assertThat(room.noOlderHistory()).isFalse();
+        room.markNoOlderHistory();
+        assertThat(room.noOlderHistory()).isTrue();
+    }
+
+    @Test
+    void clearsAndEvictsRooms() {
+        appended(2);
+        store.room("r2").append(message(0));
+
+        store.clear(List.of("r1"));
+        assertThat(store.existing("r1")).isNull();
+        assertThat(store.stats()).containsEntry("rooms", 1L).containsEntry("messages", 1L);
+
+        store.evictIdle(0);
+        assertThat(store.existing("r2")).isNull();
+    }
+
+    @Test
+    void dropsRepeatsOnlyInsideTheWindow() {
+        ChatStore.Room room = store.room("r1");
+        long now = System.currentTimeMillis();
+
+        assertThat(room.firstSeen("u1", "hi", 1000, now)).isTrue();
+        assertThat(room.firstSeen("u1", "hi", 1000, now + 500)).isFalse();
+        assertThat(room.firstSeen("u2", "hi", 1000, now + 500)).isTrue();
+        assertThat(room.firstSeen("u1", "hello", 1000, now + 500)).isTrue();
+        assertThat(room.firstSeen("u1", "hi", 1000, now + 1000)).isTrue();
+        // each window length has its own index
+        assertThat(room.firstSeen("u1", "hi", 5000, now + 1000)).isTrue();
+    }
+
+    @Test
+    void remembersAPairAcrossABucketRotation() {
+        ChatStore.Room room = store.room("r1");
+        long now = System.currentTimeMillis();
+
+        assertThat(room.firstSeen("u1", "hi", 1000, now + 900)).isTrue();
+        // the buckets rotate here; the pair is found in the previous one
+        assertThat(room.firstSeen("u1", "hi", 1000, now + 1100)).isFalse();
+        assertThat(room.firstSeen("u1", "hi", 1000, now + 1950)).isTrue();
+        assertThat(room.firstSeen("u1", "hi", 1000, now + 2500)).isFalse();
+    }
+
+    @Test
+    void startsFreshAfterTwoIdleWindows() {
+        ChatStore.Room room = store.room("r1");
+        long now = System.currentTimeMillis();
+
+        assertThat(room.firstSeen("u1", "hi", 1000, now + 900)).isTrue();
+        assertThat(room.firstSeen("u1", "bye", 1000, now + 3000)).isTrue();
+        assertThat(room.firstSeen("u1", "hi", 1000, now + 3100)).isTrue();
+        assertThat(room.firstSeen("u1", "bye", 1000, now + 3100)).isFalse();
+    }
+
+    @Test
+    void acceptsAPairOnceWhenSentConcurrently() throws Exception {
+        ChatStore.Room room = store.room("r1");
+        long now = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                results.add(pool.submit(() -> room.firstSeen("u1", "hi", 1000, now)));
+            }
+            int accepted = 0;
+            for (Future<Boolean> result : results) {
+                accepted += result.get() ? 1 : 0;
+            }
+            assertThat(accepted).isEqualTo(1);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private ChatStore.Room appended(int n) {
+        ChatStore.Room room = store.room("r1");
+        for (int i = 0; i < n; i++) {
+            room.append(message(i));
+        }
+        return room;
+    }
+
+    private static ChatMessage message(int i) {
+        return new ChatMessage("m" + i, "r1", "u1", "Ada", "hello " + i,
+                ChatMessage.MessageType.MESSAGE, T0.plusSeconds(i));
+    }
+
+    private static List<String> ids(ChatStore.Window window) {
+        return window.messages().stream().map(ChatMessage::id).toList();
+    }
+}
@@ -0,0 +1,86 @@
+package com.realscribe.realscribe.Service;
+
+import com.realscribe.realscribe.DTO.UserPresence;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryPresenceStoreTest {
+
+    @Test
+    void reportsOnlyTheFirstSessionJoinAndTheLastSessionLeave() {
+        InMemoryPresenceStore store = new InMemoryPresenceStore(500);
+
+        assertThat(store.join("r1", "u1", "Ada", "s1")).isTrue();
+        assertThat(store.join("r1", "u1", "Ada", "s2")).isFalse();
+        assertThat(store.leave("s1")).isEmpty();
+        assertThat(store.leave("s2")).hasValueSatisfying(binding -> assertThat(binding.userId()).isEqualTo("u1"));
+        assertThat(store.list("r1")).isEmpty();
+        assertThat(store.stats()).containsEntry("sessions", 0L).containsEntry("rooms", 0L);
+    }
+
+    @Test
+    void movesASessionThatJoinsAnotherRoom() {
+        InMemoryPresenceStore store = new InMemoryPresenceStore(500);
+
+        store.join("r1", "u1", "Ada", "s1");
+        store.join("r2", "u1", "Ada", "s1");
+
+        assertThat(store.list("r1")).isEmpty();
+        assertThat(store.list("r2")).extracting(UserPresence::id).containsExactly("u1");
+        assertThat(store.roomOf("s1")).contains("r2");
+    }
+
+    @Test
+    void leavesNothingBehindAfterConcurrentChurn() throws Exception {
+        InMemoryPresenceStore store = new InMemoryPresenceStore(50);
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            workers.add(new Thread(() -> {
+                await(start);
+                for (int i = 0; i < 5_000; i++) {
+                    // few rooms and users shared between threads, so rooms empty and refill constantly
+                    String session = "s-" + worker + "-" + i;
+                    store.join("r" + (i % 4), "u" + (i % 3), "User", session);
+                    store.leave(session);
+                }
+                done.countDown();
+            }));
+        }
+        // the sweep is single-threaded (scheduled), but runs alongside joins and leaves
+        Thread sweeper = new Thread(() -> {
+            await(start);
+            while (done.getCount() > 0) {
+                store.sweep();
+            }
+        });
+        workers.forEach(Thread::start);
+        sweeper.start();
+        start.countDown();
+        assertThat(done.await(30, TimeUnit.SECONDS)).isTrue();
+        sweeper.join();
+
+        store.sweep();
+        assertThat(store.stats()).containsEntry("sessions", 0L).containsEntry("rooms", 0L);
+        for (int r = 0; r < 4; r++) {
+            assertThat(store.list("r" + r)).isEmpty();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
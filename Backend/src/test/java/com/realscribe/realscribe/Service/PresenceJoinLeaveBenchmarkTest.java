@@ -0,0 +1,145 @@
+package com.realscribe.realscribe.Service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Join/leave throughput of the in-memory presence store across threads: every thread in one
+// hot room, and every thread cycling through a few hundred rooms, each against the same store
+// behind a single node-wide lock (how PresenceService used to serialise everything). A sweeper
+// thread runs sweep back to back for the whole run, through the same lock in the node-wide case.
+// Run with: mvn test -Dtest=PresenceJoinLeaveBenchmarkTest -Dbenchmarks=true
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+class PresenceJoinLeaveBenchmarkTest {
+    private static final int THREADS = 8;
+    private static final int WARMUP_OPS = 50_000;
+    private static final int OPS = 200_000;
+    private static final int ROOMS = 400;
+
+    private interface Presence {
+        void join(String roomId, String userId, String sessionId);
+
+        void leave(String sessionId);
+
+        void sweep();
+    }
+
+    @Test
+    void joinLeaveThroughput() throws Exception {
+        for (boolean spread : new boolean[]{false, true}) {
+            double perRoomLock = measure(perRoomLock(), spread);
+            double nodeLock = measure(nodeLock(), spread);
+            System.out.printf("presence join+leave, %d threads, %s: per-room lock %.0f ops/s, node-wide lock %.0f ops/s%n",
+                    THREADS, spread ? ROOMS + " rooms" : "one room", perRoomLock, nodeLock);
+            assertThat(perRoomLock).isPositive();
+        }
+    }
+
+    private static Presence perRoomLock() {
+        InMemoryPresenceStore store = new InMemoryPresenceStore(500);
+        return new Presence() {
+            @Override
+            public void join(String roomId, String userId, String sessionId) {
+                store.join(roomId, userId, "User", sessionId);
+            }
+
+            @Override
+            public void leave(String sessionId) {
+                store.leave(sessionId);
+            }
+
+            @Override
+            public void sweep() {
+                store.sweep();
+            }
+        };
+    }
+
+    private static Presence nodeLock() {
+        InMemoryPresenceStore store = new InMemoryPresenceStore(500);
+        return new Presence() {
+            @Override
+            public synchronized void join(String roomId, String userId, String sessionId) {
+                store.join(roomId, userId, "User", sessionId);
+            }
+
+            @Override
+            public synchronized void leave(String sessionId) {
+                store.leave(sessionId);
+            }
+
+            @Override
+            public synchronized void sweep() {
+                store.sweep();
+            }
+        };
+    }
+
+    // join + leave pairs per second
+    private static double measure(Presence presence, boolean spread) throws Exception {
+        run(presence, spread, WARMUP_OPS, "w");
+        return run(presence, spread, OPS, "m");
+    }
+
+    private static double run(Presence presence, boolean spread, int ops, String tag) throws Exception {
+        // residents are joined up front, four per room, so rooms don't empty and refill on each pair
+        int rooms = spread ? ROOMS : 1;
+        for (int r = 0; r < rooms; r++) {
+            for (int u = 0; u < 4; u++) {
+                presence.join(room(spread, r), "resident-" + r + "-" + u, tag + "-resident-" + r + "-" + u);
+            }
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicLong nanos = new AtomicLong();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int worker = t;
+            workers.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                long begin = System.nanoTime();
+                for (int i = 0; i < ops; i++) {
+                    String session = tag + "-" + worker + "-" + i;
+                    // threads start on different rooms and walk through all of them
+                    presence.join(room(spread, worker * (ROOMS / THREADS) + i), "u-" + worker + "-" + (i % 16), session);
+                    presence.leave(session);
+                }
+                nanos.accumulateAndGet(System.nanoTime() - begin, Math::max);
+            }));
+        }
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong sweeps = new AtomicLong();
+        Thread sweeper = new Thread(() -> {
+            while (running.get()) {
+                presence.sweep();
+                sweeps.incrementAndGet();
+            }
+        });
+        workers.forEach(Thread::start);
+        sweeper.start();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        running.set(false);
+        sweeper.join();
+        assertThat(sweeps.get()).isPositive();
+        return (double) THREADS * ops / (nanos.get() / 1e9);
+    }
+
+    private static String room(boolean spread, int i) {
+        return spread ? "room-" + (i % ROOMS) : "room";
+    }
+}
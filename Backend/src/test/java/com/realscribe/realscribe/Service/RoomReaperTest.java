@@ -0,0 +1,94 @@
+package com.realscribe.realscribe.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.realscribe.realscribe.Cluster.ClusterService;
+import com.realscribe.realscribe.DTO.UserPresence;
+import com.realscribe.realscribe.Repo.DrawingOperationRepository;
+import com.realscribe.realscribe.Repo.RoomRepository;
+import com.realscribe.realscribe.Repo.TextOperationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+class RoomReaperTest {
+    private final PresenceService presence = mock(PresenceService.class);
+    private final RoomRepository rooms = mock(RoomRepository.class);
+    private final DrawingOperationRepository drawings = mock(DrawingOperationRepository.class);
+    private final TextOperationRepository texts = mock(TextOperationRepository.class);
+    private final TextOperationLogService textLog = mock(TextOperationLogService.class);
+    private final ChatService chat = mock(ChatService.class);
+    private final RoomTaskExecutor roomTasks = new RoomTaskExecutor(4, 100);
+    private final RoomReaper reaper = new RoomReaper(presence, rooms, drawings, texts,
+            mock(StrokeWriteBehindService.class), mock(CanvasStateCache.class), mock(TextDocumentService.class),
+            textLog, chat, roomTasks,
+            new ClusterService(new ObjectMapper(), false, "local", "", "", "loopback", "", 128, 1000), 0);
+
+    @AfterEach
+    void shutdown() {
+        roomTasks.shutdown();
+    }
+
+    @Test
+    void deletesTheRoomsOfARunWithOneStatementPerTable() {
+        when(presence.list("r2")).thenReturn(List.of(new UserPresence("u1", "Ada")));
+        for (String roomId : List.of("r1", "r2", "r3")) {
+            reaper.markIdle(roomId);
+        }
+
+        reaper.reap();
+
+        verify(rooms, timeout(2000)).deleteAllByIdInBatch(argThat(ids -> sameRooms(ids, "r1", "r3")));
+        verify(drawings).deleteAllByRoomIdIn(argThat(ids -> sameRooms(ids, "r1", "r3")));
+        verify(texts).deleteAllByRoomIdIn(argThat(ids -> sameRooms(ids, "r1", "r3")));
+        verify(textLog).deleteRooms(argThat(ids -> sameRooms(ids, "r1", "r3")));
+        verify(chat).clearRooms(argThat(ids -> sameRooms(ids, "r1", "r3")));
+        assertThat(reaper.stats()).containsEntry("reaped", 2L).containsEntry("idle", 0L);
+    }
+
+    @Test
+    void aJoinForARoomBeingDeletedWaitsForTheDelete() throws Exception {
+        CountDownLatch deleting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(drawings.deleteAllByRoomIdIn(anyCollection())).thenAnswer(invocation -> {
+            deleting.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return 0;
+        });
+        reaper.markIdle("r1");
+        reaper.reap();
+        assertThat(deleting.await(2, TimeUnit.SECONDS)).isTrue();
+
+        CompletableFuture<Void> join = CompletableFuture.runAsync(() -> reaper.markActive("r1"));
+        Thread.sleep(100);
+        assertThat(join).isNotDone();
+
+        release.countDown();
+        join.get(2, TimeUnit.SECONDS);
+        verify(rooms).deleteAllByIdInBatch(List.of("r1"));
+    }
+
+    @Test
+    void seedsOnlyRoomsThatWereUsed() {
+        when(rooms.findIdsWithHistory()).thenReturn(List.of("used"));
+
+        reaper.markEmptyRoomsIdle();
+
+        assertThat(reaper.stats()).containsEntry("idle", 1L);
+    }
+
+    private static boolean sameRooms(Iterable<String> ids, String... expected) {
+        List<String> actual = new ArrayList<>();
+        ids.forEach(actual::add);
+        return actual.size() == expected.length && actual.containsAll(List.of(expected));
+    }
+}
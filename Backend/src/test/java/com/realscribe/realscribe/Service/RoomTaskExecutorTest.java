@@ -0,0 +1,111 @@
+package com.realscribe.realscribe.Service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RoomTaskExecutorTest {
+    private RoomTaskExecutor executor;
+
+    @AfterEach
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void runsARoomsTasksOneAtATimeInSubmissionOrder() throws Exception {
+        executor = new RoomTaskExecutor(8, 100_000);
+        int producers = 4;
+        int perProducer = 2_000;
+        List<List<Integer>> seen = new ArrayList<>();
+        AtomicBoolean running = new AtomicBoolean();
+        AtomicInteger overlaps = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(producers * perProducer);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            List<Integer> order = new ArrayList<>();
+            seen.add(order);
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    int seq = i;
+                    executor.execute("room", () -> {
+                        if (!running.compareAndSet(false, true)) {
+                            overlaps.incrementAndGet();
+                        }
+                        // only the mailbox touches the list, so no synchronisation is needed
+                        order.add(seq);
+                        running.set(false);
+                        done.countDown();
+                    });
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(overlaps.get()).isZero();
+        for (List<Integer> order : seen) {
+            assertThat(order).hasSize(perProducer).isSorted();
+        }
+    }
+
+    @Test
+    void refusesClientTasksPastTheBacklogInsteadOfRunningThemOutsideTheMailbox() throws Exception {
+        executor = new RoomTaskExecutor(2, 3);
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute("room", () -> {
+            started.countDown();
+            await(blocker);
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        AtomicInteger ran = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            assertThat(executor.offer("room", ran::incrementAndGet)).isTrue();
+        }
+        AtomicBoolean refusedRan = new AtomicBoolean();
+        assertThat(executor.offer("room", () -> refusedRan.set(true))).isFalse();
+        // internal work is still queued
+        CountDownLatch internal = new CountDownLatch(1);
+        executor.execute("room", internal::countDown);
+
+        blocker.countDown();
+        assertThat(internal.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(ran.get()).isEqualTo(3);
+        assertThat(refusedRan.get()).isFalse();
+        assertThat(executor.stats().get("rejected")).isEqualTo(1L);
+    }
+
+    @Test
+    void keepsDrainingARoomAfterATaskThrowsAnError() throws Exception {
+        executor = new RoomTaskExecutor(1, 10);
+        executor.execute("room", () -> {
+            throw new Error("boom");
+        });
+        CountDownLatch next = new CountDownLatch(1);
+        executor.execute("room", next::countDown);
+
+        assertThat(next.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(executor.stats().get("failed")).isEqualTo(1L);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.realscribe.realscribe.Service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StrokeMoveAggregatorTest {
+
+    @Test
+    void dropsPointsOnAStraightLineButKeepsTheLast() {
+        List<Object> points = points(0, 0, 1, 0, 2, 0, 3, 0, 4, 0);
+
+        List<Object> kept = StrokeMoveAggregator.decimate(null, points, 0.5);
+
+        assertThat(kept).containsExactly(List.of(0, 0), List.of(4, 0));
+    }
+
+    @Test
+    void keepsACornerFartherThanEpsilon() {
+        List<Object> points = points(0, 0, 5, 0, 10, 0, 10, 5, 10, 10);
+
+        List<Object> kept = StrokeMoveAggregator.decimate(null, points, 0.5);
+
+        assertThat(kept).containsExactly(List.of(0, 0), List.of(10, 0), List.of(10, 10));
+    }
+
+    @Test
+    void keepsAWobbleWithinEpsilonOut() {
+        List<Object> points = points(0, 0, 5, 0.3, 10, 0);
+
+        assertThat(StrokeMoveAggregator.decimate(null, points, 0.5)).containsExactly(List.of(0, 0), List.of(10, 0));
+        assertThat(StrokeMoveAggregator.decimate(null, points, 0.2)).hasSize(3);
+    }
+
+    @Test
+    void measuresAgainstTheAnchorButDoesNotReturnIt() {
+        // on the line from the anchor to the last point: only the last point is left
+        List<Object> points = points(1, 1, 2, 2, 3, 3);
+
+        List<Object> kept = StrokeMoveAggregator.decimate(new double[]{0, 0}, points, 0.5);
+
+        assertThat(kept).containsExactly(List.of(3, 3));
+    }
+
+    @Test
+    void returnsEverythingWhenThinningIsOffOrThereIsNothingToThin() {
+        List<Object> points = points(0, 0, 1, 0, 2, 0);
+
+        assertThat(StrokeMoveAggregator.decimate(null, points, 0)).isEqualTo(points);
+        assertThat(StrokeMoveAggregator.decimate(null, points.subList(0, 2), 0.5)).isEqualTo(points.subList(0, 2));
+    }
+
+    @Test
+    void keepsPressureAlongWithThePoint() {
+        List<Object> points = new ArrayList<>(points(0, 0, 5, 0));
+        points.add(List.of(10, 10, 0.7));
+
+        List<Object> kept = StrokeMoveAggregator.decimate(null, points, 0.5);
+
+        assertThat(kept).last().isEqualTo(List.of(10, 10, 0.7));
+    }
+
+    private static List<Object> points(Number... xy) {
+        List<Object> points = new ArrayList<>();
+        for (int i = 0; i < xy.length; i += 2) {
+            points.add(List.of(xy[i], xy[i + 1]));
+        }
+        return points;
+    }
+}
@@ -0,0 +1,130 @@
+package com.realscribe.realscribe.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.realscribe.realscribe.Entity.DrawingOperation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class StrokeWriteBehindServiceTest {
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final List<String> written = new ArrayList<>();
+    private StrokeWriteBehindService writer;
+
+    @AfterEach
+    void shutdown() {
+        if (writer != null) {
+            writer.shutdown();
+        }
+    }
+
+    @Test
+    void dropsOnlyTheRowTheDatabaseKeepsRefusing() {
+        refuse("s-bad");
+        writer = new StrokeWriteBehindService(jdbc, new ObjectMapper(), 100, 2000, 3, "json", new SimpleMeterRegistry());
+        for (int i = 0; i < 10; i++) {
+            writer.enqueue(op(i == 6 ? "s-bad" : "s-" + i, i + 1));
+        }
+
+        writer.flushAll();
+        writer.flushAll();
+        assertThat(written).isEmpty();
+        assertThat(writer.pending("r1")).hasSize(10);
+
+        writer.flushAll();
+        assertThat(written).containsExactly("s-0", "s-1", "s-2", "s-3", "s-4", "s-5", "s-7", "s-8", "s-9");
+        assertThat(writer.pending("r1")).isEmpty();
+        assertThat(writer.stats())
+                .containsEntry("persisted", 9L)
+                .containsEntry("deadLettered", 1L)
+                .containsEntry("failedBatches", 3L);
+    }
+
+    @Test
+    void keepsRetryingWhileTheDatabaseIsUnreachable() {
+        when(jdbc.batchUpdate(anyString(), anyList())).thenThrow(new CannotGetJdbcConnectionException("down"));
+        writer = new StrokeWriteBehindService(jdbc, new ObjectMapper(), 100, 2000, 3, "json", new SimpleMeterRegistry());
+        for (int i = 0; i < 5; i++) {
+            writer.enqueue(op("s-" + i, i + 1));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            writer.flushAll();
+        }
+
+        assertThat(writer.pending("r1")).hasSize(5);
+        assertThat(writer.stats()).containsEntry("deadLettered", 0L).containsEntry("dropped", 0L);
+    }
+
+    @Test
+    void refusesWhatDoesNotFitWithoutFlushingOnTheCaller() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> writers = new CopyOnWriteArrayList<>();
+        when(jdbc.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            writers.add(Thread.currentThread().getName());
+            writing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            throw new CannotGetJdbcConnectionException("down");
+        });
+        writer = new StrokeWriteBehindService(jdbc, new ObjectMapper(), 2, 4, 3, "json", new SimpleMeterRegistry());
+
+        // the first batch is taken by the flush thread, which hangs on the database
+        writer.enqueue(op("s-0", 1));
+        writer.enqueue(op("s-1", 2));
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+        for (int i = 2; i < 6; i++) {
+            assertThat(writer.enqueue(op("s-" + i, i + 1))).isTrue();
+        }
+
+        assertThat(writer.admit("r1", 1)).isFalse();
+        assertThat(writer.enqueue(op("s-6", 7))).isFalse();
+        assertThat(writer.admit("other", 1)).isTrue();
+        assertThat(writer.stats()).containsEntry("dropped", 2L).containsEntry("queued", 4L);
+        release.countDown();
+        assertThat(writers).allMatch("stroke-write-behind"::equals);
+    }
+
+    @Test
+    void tellsConnectionTroubleFromARefusedRow() {
+        assertThat(StrokeWriteBehindService.isTransient(new CannotGetJdbcConnectionException("down"))).isTrue();
+        assertThat(StrokeWriteBehindService.isTransient(new RuntimeException(new java.sql.SQLTransientConnectionException()))).isTrue();
+        assertThat(StrokeWriteBehindService.isTransient(new DataIntegrityViolationException("bad row"))).isFalse();
+    }
+
+    // Batches containing the id fail as a whole, like a constraint violation in a JDBC batch.
+    private void refuse(String badId) {
+        when(jdbc.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            List<Object[]> rows = invocation.getArgument(1);
+            if (rows.stream().anyMatch(row -> badId.equals(row[0]))) {
+                throw new DataIntegrityViolationException("refused " + badId);
+            }
+            rows.forEach(row -> written.add((String) row[0]));
+            return new int[rows.size()];
+        });
+    }
+
+    private static DrawingOperation op(String id, long seq) {
+        DrawingOperation op = new DrawingOperation();
+        op.setId(id);
+        op.setRoomId("r1");
+        op.setOperationType("stroke");
+        op.setSeq(seq);
+        return op;
+    }
+}
@@ -0,0 +1,68 @@
+package com.realscribe.realscribe.WebSocketController;
+
+import com.realscribe.realscribe.DTO.WsMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WebSocketControllerTest {
+
+    @Test
+    void concatenatesTheStepsOfConsecutivePatchesFromOneUser() {
+        List<WsMessage> merged = WebSocketController.mergeTextPatches(List.of(
+                patch("u1", "a", "b"), patch("u1", "c"), patch("u1", "d")));
+
+        assertThat(merged).hasSize(1);
+        assertThat(merged.get(0).getUserId()).isEqualTo("u1");
+        assertThat(merged.get(0).getPayload().get("steps")).isEqualTo(List.of("a", "b", "c", "d"));
+    }
+
+    @Test
+    void startsANewPatchWhenTheAuthorChanges() {
+        List<WsMessage> merged = WebSocketController.mergeTextPatches(List.of(
+                patch("u1", "a"), patch("u2", "b"), patch("u2", "c"), patch("u1", "d")));
+
+        assertThat(merged).extracting(WsMessage::getUserId).containsExactly("u1", "u2", "u1");
+        assertThat(merged).extracting(m -> m.getPayload().get("steps"))
+                .containsExactly(List.of("a"), List.of("b", "c"), List.of("d"));
+    }
+
+    @Test
+    void passesAPatchWithoutStepsThroughAndDoesNotMergeAcrossIt() {
+        WsMessage noSteps = new WsMessage();
+        noSteps.setType("text_patch");
+        noSteps.setUserId("u1");
+        noSteps.setPayload(Map.of("version", 3));
+
+        List<WsMessage> merged = WebSocketController.mergeTextPatches(List.of(patch("u1", "a"), noSteps, patch("u1", "b")));
+
+        assertThat(merged).hasSize(3);
+        assertThat(merged.get(1)).isSameAs(noSteps);
+    }
+
+    @Test
+    void leavesTheReceivedPatchesAndOtherPayloadFieldsAlone() {
+        WsMessage first = patch("u1", "a");
+        first.getPayload().put("clientId", 7);
+        WsMessage second = patch("u1", "b");
+
+        List<WsMessage> merged = WebSocketController.mergeTextPatches(List.of(first, second));
+
+        assertThat(merged.get(0).getPayload()).containsEntry("clientId", 7);
+        assertThat(first.getPayload().get("steps")).isEqualTo(List.of("a"));
+        assertThat(second.getPayload().get("steps")).isEqualTo(List.of("b"));
+    }
+
+    private static WsMessage patch(String userId, Object... steps) {
+        WsMessage message = new WsMessage();
+        message.setType("text_patch");
+        message.setRoomId("r1");
+        message.setUserId(userId);
+        message.setPayload(new HashMap<>(Map.of("steps", List.of(steps))));
+        return message;
+    }
+}
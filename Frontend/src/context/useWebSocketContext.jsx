@@ -8,7 +8,34 @@ import {
 } from "react";
 import { Client } from "@stomp/stompjs";
 import SockJS from "sockjs-client";
-import { getWsUrl } from "../utils/api";
+import { getNativeWsUrl, getWsUrl } from "../utils/api";
+import {
+  STROKE_CODEC_HEADER,
+  STROKE_CODEC_VERSION,
+  decodeStrokeMessage,
+  encodeStrokeMessage,
+} from "../utils/strokeCodec";
+
+// A plain WebSocket is tried first; when it can't get a STOMP session up this many times in a
+// row, the client falls back to SockJS (which can also use HTTP streaming / polling) until reload.
+// SockJS frames are text only, so the binary stroke codec is offered only on the plain socket.
+const NATIVE_ATTEMPTS_BEFORE_SOCKJS = 2;
+
+// Binary stroke frames arrive with the stroke-codec header; handlers read message.decoded
+// for those and JSON.parse(message.body) for everything else.
+function withStrokeDecoding(handler) {
+  return (message) => {
+    if (message.headers?.[STROKE_CODEC_HEADER] === STROKE_CODEC_VERSION) {
+      try {
+        message.decoded = decodeStrokeMessage(message.binaryBody);
+      } catch (error) {
+        console.error("Failed to decode binary stroke frame:", error);
+        return;
+      }
+    }
+    handler(message);
+  };
+}
 
 // Create the WebSocket Context
 const WebSocketContext = createContext(null);
@@ -19,6 +46,10 @@ export function WebSocketProvider({ children }) {
   const clientRef = useRef(null);
   const subscriptionsRef = useRef(new Map()); // Track active subscriptions
   const [user, setUser] = useState({ id: null, name: null });
+  const binaryStrokesRef = useRef(false);
+  const useSockJsRef = useRef(false);
+  const failedNativeAttemptsRef = useRef(0);
+  const sessionOpenedRef = useRef(false);
 
   // Function to update user and connect WebSocket
   const connectWithUser = useCallback((userData) => {
@@ -39,6 +70,10 @@ export function WebSocketProvider({ children }) {
 
     const client = new Client({
       webSocketFactory: () => {
+        if (!useSockJsRef.current) {
+          return new WebSocket(getNativeWsUrl());
+        }
+
         // SockJS expects http(s) URLs — it handles ws(s) upgrade internally
         let finalUrl = webSocketUrl;
 
@@ -60,9 +95,17 @@ export function WebSocketProvider({ children }) {
       reconnectDelay: 5000,
       heartbeatIncoming: 4000,
       heartbeatOutgoing: 4000,
-      connectHeaders: {
-        userId: user.id,
-        name: user.name,
+      // headers depend on the transport this attempt uses
+      beforeConnect: () => {
+        sessionOpenedRef.current = false;
+        binaryStrokesRef.current = !useSockJsRef.current;
+        client.connectHeaders = {
+          userId: user.id,
+          name: user.name,
+          ...(binaryStrokesRef.current
+            ? { [STROKE_CODEC_HEADER]: STROKE_CODEC_VERSION }
+            : {}),
+        };
       },
       debug:
         import.meta.env.DEV
@@ -71,13 +114,16 @@ export function WebSocketProvider({ children }) {
     });
 
     client.onConnect = () => {
+      sessionOpenedRef.current = true;
+      failedNativeAttemptsRef.current = 0;
       setConnected(true);
       // Re-subscribe to existing subscriptions
       subscriptionsRef.current.forEach((subInfo, topic) => {
         try {
-          const subscription = client.subscribe(topic, (message) => {
-            subInfo.handler(message);
-          });
+          const subscription = client.subscribe(
+            topic,
+            withStrokeDecoding(subInfo.handler)
+          );
           subscriptionsRef.current.set(topic, {
             handler: subInfo.handler,
             subscription,
@@ -97,6 +143,17 @@ export function WebSocketProvider({ children }) {
       setConnected(false);
     };
 
+    client.onWebSocketClose = () => {
+      if (useSockJsRef.current || sessionOpenedRef.current) {
+        return;
+      }
+      failedNativeAttemptsRef.current += 1;
+      if (failedNativeAttemptsRef.current >= NATIVE_ATTEMPTS_BEFORE_SOCKJS) {
+        console.warn("Plain WebSocket unavailable, falling back to SockJS");
+        useSockJsRef.current = true;
+      }
+    };
+
     client.onWebSocketError = (error) => {
       console.error("WebSocket error:", error);
       setConnected(false);
@@ -141,7 +198,10 @@ export function WebSocketProvider({ children }) {
     }
 
     try {
-      const subscription = clientRef.current.subscribe(topic, handler);
+      const subscription = clientRef.current.subscribe(
+        topic,
+        withStrokeDecoding(handler)
+      );
       subscriptionsRef.current.set(topic, { handler, subscription });
     } catch (error) {
       console.error(`Failed to subscribe to ${topic}:`, error);
@@ -171,6 +231,17 @@ export function WebSocketProvider({ children }) {
     }
 
     try {
+      const binaryBody = binaryStrokesRef.current
+        ? encodeStrokeMessage(body)
+        : null;
+      if (binaryBody) {
+        clientRef.current.publish({
+          destination,
+          binaryBody,
+          headers: { ...headers, "content-type": "application/octet-stream" },
+        });
+        return;
+      }
       clientRef.current.publish({
         destination,
         body: JSON.stringify(body),
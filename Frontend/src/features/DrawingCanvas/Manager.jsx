@@ -114,13 +114,38 @@ export default function Manager({
 
   // Undo is handled locally via useKeyboardShortcuts + useUndoRedo
 
+  // The server dropped canvas updates this client was too slow to take; reload the room's
+  // strokes and replace what we have.
+  const resyncStrokes = useCallback(async () => {
+    try {
+      const response = await fetch(`${getApiUrl()}/api/draw/${roomId}`);
+      if (!response.ok || !isMounted.current) return;
+      const result = await response.json();
+
+      completedStrokes.current = [];
+      liveStrokes.current.clear();
+      for (const fetchedObject of result) {
+        const points = fetchedObject.payload.currentStrokes;
+        addCompletedStroke({
+          id: fetchedObject.id,
+          ...fetchedObject.payload,
+          points,
+        });
+      }
+      addToHistory();
+      scheduleRedraw();
+    } catch (error) {
+      console.error("Failed to resync strokes:", error);
+    }
+  }, [roomId, completedStrokes, liveStrokes, addCompletedStroke, addToHistory, scheduleRedraw]);
+
   //one method having different cases for type
   //if type is "clear" then only clear ones runs
 
   const onMessage = useCallback(
     (message) => {
       if (!isMounted.current) return;
-      const parsedMessage = JSON.parse(message.body);
+      const parsedMessage = message.decoded ?? JSON.parse(message.body);
       switch (parsedMessage.type) {
         case "stroke_move":
           try {
@@ -242,12 +267,16 @@ export default function Manager({
             console.error("Error parsing erase message:", error);
           }
           break;
+        case "resync_required":
+          resyncStrokes();
+          break;
 
         default:
           break;
       }
     },
     [
+      resyncStrokes,
       scheduleRedraw,
       liveStrokes,
       isDarkMode,
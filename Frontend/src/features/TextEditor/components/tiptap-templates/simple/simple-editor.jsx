@@ -172,6 +172,26 @@ function SimpleEditor({ roomId, userId, name }) {
   const { connected, isReady, subscribe, unsubscribe, publish } =
     useWebSocket();
 
+  // The server dropped text updates this client was too slow to take: reload the latest
+  // document now, and take the next snapshot that comes in as well.
+  const resyncText = React.useCallback(async () => {
+    requiresSnapshotRef.current = true;
+    try {
+      const response = await fetch(`${getApiUrl()}/api/text/latest/${roomId}`);
+      if (!response.ok) return;
+      const data = await response.json();
+      if (!editorRef.current || !isMountedRef.current || !data.exists || !data.content) return;
+
+      isApplyingRemoteRef.current = true;
+      editorRef.current.commands.setContent(data.content.content, false);
+      lastPublishedContentRef.current = JSON.stringify(data.content.content);
+      isApplyingRemoteRef.current = false;
+    } catch (error) {
+      console.error("Failed to resync text:", error);
+      isApplyingRemoteRef.current = false;
+    }
+  }, [roomId]);
+
   // WebSocket message handler with typing protection
   const onWrite = React.useCallback(
     (message) => {
@@ -181,6 +201,10 @@ function SimpleEditor({ roomId, userId, name }) {
 
       try {
         const { type, payload, userId: userWhoText } = JSON.parse(message.body);
+        if (type === "resync_required") {
+          resyncText();
+          return;
+        }
         if (sameUser(userId, userWhoText)) return;
 
         if (type === "text_patch" && Array.isArray(payload?.steps) && payload.steps.length) {
@@ -242,7 +266,7 @@ function SimpleEditor({ roomId, userId, name }) {
         isApplyingRemoteRef.current = false;
       }
     },
-    [userId],
+    [userId, resyncText],
   );
 
   React.useEffect(() => {
@@ -7,6 +7,9 @@ export default function useCollaboration(roomId, me) {
   const [messages, setMessages] = useState([]);
   const [isLoading, setIsLoading] = useState(true);
   const messageIdsRef = useRef(new Set());
+  // delta version the local user list matches; null until the first snapshot
+  const presenceVersionRef = useRef(null);
+  const presenceResyncRef = useRef(false);
 
   if (!roomId || !me?.id || !me?.name) {
     console.error("roomId, me.id, and me.name are required");
@@ -27,42 +30,75 @@ export default function useCollaboration(roomId, me) {
     }
   }, [me.id, me.name, connectWithUser]);
 
+  // REST and WS snapshots carry { id, name } only. Without `type`, ChatSection's
+  // "online" filter sees 0 users, so normalize here.
+  const applyPresenceSnapshot = (snapshot) => {
+    presenceVersionRef.current = snapshot.version ?? null;
+    setUsers(
+      (snapshot.users || []).map((user) => ({ ...user, type: "joining" })),
+    );
+  };
+
   useEffect(() => {
     if (!isReady) return;
 
+    const resyncPresence = async () => {
+      if (presenceResyncRef.current) return;
+      presenceResyncRef.current = true;
+      try {
+        const response = await fetch(
+          `${getApiUrl()}/api/rooms/${roomId}/presence`,
+        );
+        if (response.ok) {
+          applyPresenceSnapshot(await response.json());
+        }
+      } catch (error) {
+        console.error("Failed to resync presence:", error);
+      } finally {
+        presenceResyncRef.current = false;
+      }
+    };
+
     const presenceTopic = `/topic/room.${roomId}.presence`;
     const presenceHandler = (message) => {
       try {
         const data = JSON.parse(message.body);
-        if (data.type === "presence_join") {
-          const updatedUsers = data.users.map((user) => ({
-            ...user,
-            type: "joining",
-          }));
-          setUsers(updatedUsers);
-        } else if (data.type === "presence_leave") {
-          setUsers((prevUsers) =>
-            prevUsers.map((user) => {
-              const stillPresent = data.users.some(
-                (activeUser) => activeUser.id === user.id,
-              );
-              return stillPresent
-                ? { ...user, type: "joining" }
-                : { ...user, type: "leaving" };
-            }),
-          );
+        if (data.type === "presence_delta") {
+          // a delta only applies on top of the version it was built from
+          if (presenceVersionRef.current !== data.fromVersion) {
+            resyncPresence();
+            return;
+          }
+          presenceVersionRef.current = data.version;
+          setUsers((prevUsers) => applyPresenceDelta(prevUsers, data));
         } else if (data.type === "presence_sync") {
-          const updatedUsers = data.users.map((user) => ({
-            ...user,
-            type: "joining",
-          }));
-          setUsers(updatedUsers);
+          applyPresenceSnapshot(data);
+        } else if (data.type === "resync_required") {
+          resyncPresence();
         }
       } catch (error) {
         console.error("Error parsing presence message:", error);
       }
     };
 
+    // the server dropped chat frames this client was too slow to take
+    const resyncChat = async () => {
+      try {
+        const response = await fetch(
+          `${getApiUrl()}/api/rooms/${roomId}/messages?limit=100`,
+        );
+        if (!response.ok) return;
+        const messagesData = await response.json();
+        messageIdsRef.current.clear();
+        messagesData.forEach((msg) => {
+          if (msg.id) messageIdsRef.current.add(msg.id);
+        });
+        setMessages(messagesData);
+      } catch (error) {
+        console.error("Failed to resync chat:", error);
+      }
+    };
+
     const chatTopic = `/topic/room.${roomId}.chat`;
     const chatHandler = (message) => {
       try {
@@ -92,6 +128,8 @@ export default function useCollaboration(roomId, me) {
             if (msg.id) messageIdsRef.current.add(msg.id);
           });
           setMessages(newMessages);
+        } else if (data.type === "resync_required") {
+          resyncChat();
         }
       } catch (error) {
         console.error("Error parsing chat message:", error);
@@ -120,32 +158,27 @@ export default function useCollaboration(roomId, me) {
       }
 
       try {
-        const [usersResponse, messagesResponse] = await Promise.all([
-          fetch(`${apiUrl}/api/rooms/${roomId}/users`),
+        const [presenceResponse, messagesResponse] = await Promise.all([
+          fetch(`${apiUrl}/api/rooms/${roomId}/presence`),
           fetch(`${apiUrl}/api/rooms/${roomId}/messages?limit=100`),
         ]);
 
-        const usersData = usersResponse.ok ? await usersResponse.json() : [];
+        const presenceData = presenceResponse.ok
+          ? await presenceResponse.json()
+          : { version: null, users: [] };
         const messagesData = messagesResponse.ok
           ? await messagesResponse.json()
           : [];
 
-        // REST returns { id, name } only — same shape as WS but without `type`.
-        // Without type, ChatSection's "online" filter sees 0 users. Also, this fetch
-        // can run after WS presence and overwrite typed users — normalize here.
-        const usersWithPresenceType = usersData.map((user) => ({
-          ...user,
-          type: "joining",
-        }));
-
         messagesData.forEach((msg) => {
           if (msg.id) messageIdsRef.current.add(msg.id);
         });
 
-        setUsers(usersWithPresenceType);
+        applyPresenceSnapshot(presenceData);
         setMessages(messagesData);
       } catch (error) {
         console.error("Failed to load collaboration data:", error);
+        presenceVersionRef.current = null;
         setUsers([]);
         setMessages([]);
       } finally {
@@ -200,3 +233,20 @@ export default function useCollaboration(roomId, me) {
     isReady,
   };
 }
+
+// Removed users stay listed as "leaving" until the next arrival, like the old full-list events.
+function applyPresenceDelta(prevUsers, delta) {
+  const added = delta.added || [];
+  const removed = delta.removed || [];
+  const byId = new Map(
+    prevUsers
+      .filter((user) => added.length === 0 || user.type !== "leaving")
+      .map((user) => [user.id, user]),
+  );
+  removed.forEach((user) => {
+    const existing = byId.get(user.id);
+    if (existing) byId.set(user.id, { ...existing, type: "leaving" });
+  });
+  added.forEach((user) => byId.set(user.id, { ...user, type: "joining" }));
+  return [...byId.values()].sort((a, b) => a.name.localeCompare(b.name));
+}
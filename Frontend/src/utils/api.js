@@ -39,3 +39,13 @@ export function getApiUrl() {
 export function getWsUrl() {
   return `${getApiUrl()}/ws`;
 }
+
+/**
+ * Returns the plain WebSocket URL (ws/wss), which clients try before SockJS.
+ * In Vite dev this is the dev server origin, proxied like /ws.
+ * @returns {string}
+ */
+export function getNativeWsUrl() {
+  const base = getApiUrl() || window.location.origin;
+  return `${base.replace(/^http/, "ws")}/ws-native`;
+}
@@ -0,0 +1,190 @@
+// Binary stroke codec, mirror of the backend's StrokeCodec (v1).
+// Points are quantized (coordinates to 1/100 px, pressure to 1/1000) and sent as zigzag
+// varint deltas. Only stroke_move / stroke_end whose payload is points/currentStrokes plus
+// tool, width and color are encodable; encodeStrokeMessage returns null for anything else.
+// Decoding throws on unknown type bytes and flags, dims other than 2 or 3, a count the frame
+// can't hold, and trailing bytes. strokeCodec.test.js checks both sides against the backend's
+// byte vectors (Backend/src/test/resources/stroke-codec-v1-vectors.json).
+
+export const STROKE_CODEC_HEADER = "stroke-codec";
+export const STROKE_CODEC_VERSION = "v1";
+
+const MAGIC = 0xb5;
+const VERSION = 1;
+const TYPE_STROKE_MOVE = 1;
+const TYPE_STROKE_END = 2;
+
+const HAS_TOOL = 1;
+const HAS_COLOR = 1 << 1;
+const HAS_WIDTH = 1 << 2;
+const END_POINTS = 1 << 3;
+const KNOWN_FLAGS = HAS_TOOL | HAS_COLOR | HAS_WIDTH | END_POINTS;
+
+const COORD_SCALE = 100;
+const PRESSURE_SCALE = 1000;
+const WIDTH_SCALE = 100;
+
+const PAYLOAD_FIELDS = new Set(["points", "currentStrokes", "tool", "color", "width"]);
+
+const encoder = new TextEncoder();
+const decoder = new TextDecoder();
+
+export function encodeStrokeMessage(message) {
+  const { type, payload } = message || {};
+  if (type !== "stroke_move" && type !== "stroke_end") return null;
+  if (!payload || typeof payload !== "object") return null;
+  if (!Object.keys(payload).every((k) => PAYLOAD_FIELDS.has(k))) return null;
+
+  const end = "currentStrokes" in payload;
+  const points = end ? payload.currentStrokes : payload.points;
+  if (!Array.isArray(points) || (end && "points" in payload)) return null;
+  const { tool, color, width } = payload;
+  if (tool != null && typeof tool !== "string") return null;
+  if (color != null && typeof color !== "string") return null;
+  if (width != null && typeof width !== "number") return null;
+
+  const dims = points.length ? points[0].length : 2;
+  if (dims !== 2 && dims !== 3) return null;
+  for (const p of points) {
+    if (!Array.isArray(p) || p.length !== dims) return null;
+    if (!p.every((v) => typeof v === "number" && Number.isFinite(v))) return null;
+  }
+
+  const out = [];
+  out.push(MAGIC, VERSION, type === "stroke_move" ? TYPE_STROKE_MOVE : TYPE_STROKE_END);
+  writeString(out, message.roomId);
+  writeString(out, message.userId);
+  writeString(out, message.strokeId);
+  writeString(out, message.name);
+  writeVarint(out, message.seq == null ? 0 : message.seq + 1);
+
+  const flags =
+    (tool != null ? HAS_TOOL : 0) |
+    (color != null ? HAS_COLOR : 0) |
+    (width != null ? HAS_WIDTH : 0) |
+    (end ? END_POINTS : 0);
+  out.push(flags);
+  if (tool != null) writeString(out, tool);
+  if (color != null) writeString(out, color);
+  if (width != null) writeZigzag(out, Math.round(width * WIDTH_SCALE));
+  writeVarint(out, points.length);
+  out.push(dims);
+  let px = 0;
+  let py = 0;
+  let pp = 0;
+  for (const p of points) {
+    const x = Math.round(p[0] * COORD_SCALE);
+    const y = Math.round(p[1] * COORD_SCALE);
+    writeZigzag(out, x - px);
+    writeZigzag(out, y - py);
+    px = x;
+    py = y;
+    if (dims === 3) {
+      const pr = Math.round(p[2] * PRESSURE_SCALE);
+      writeZigzag(out, pr - pp);
+      pp = pr;
+    }
+  }
+  return Uint8Array.from(out);
+}
+
+export function decodeStrokeMessage(bytes) {
+  const r = { buf: bytes, pos: 0 };
+  if (readByte(r) !== MAGIC || readByte(r) !== VERSION) {
+    throw new Error("Not a v1 stroke frame");
+  }
+  const typeByte = readByte(r);
+  if (typeByte !== TYPE_STROKE_MOVE && typeByte !== TYPE_STROKE_END) {
+    throw new Error("Unknown stroke frame type");
+  }
+  const type = typeByte === TYPE_STROKE_MOVE ? "stroke_move" : "stroke_end";
+  const roomId = readString(r);
+  const userId = readString(r);
+  const strokeId = readString(r);
+  const name = readString(r);
+  const seq = readVarint(r);
+
+  const payload = {};
+  const flags = readByte(r);
+  if (flags & ~KNOWN_FLAGS) throw new Error("Unknown stroke payload flags");
+  if (flags & HAS_TOOL) payload.tool = readString(r);
+  if (flags & HAS_COLOR) payload.color = readString(r);
+  if (flags & HAS_WIDTH) payload.width = readZigzag(r) / WIDTH_SCALE;
+  const count = readVarint(r);
+  const dims = readByte(r);
+  if (dims !== 2 && dims !== 3) throw new Error("Stroke points must have 2 or 3 dimensions");
+  // every coordinate takes at least one byte
+  if (count > (r.buf.length - r.pos) / dims) throw new Error("Truncated stroke frame");
+  const points = new Array(count);
+  let x = 0;
+  let y = 0;
+  let p = 0;
+  for (let i = 0; i < count; i++) {
+    x += readZigzag(r);
+    y += readZigzag(r);
+    if (dims === 3) {
+      p += readZigzag(r);
+      points[i] = [x / COORD_SCALE, y / COORD_SCALE, p / PRESSURE_SCALE];
+    } else {
+      points[i] = [x / COORD_SCALE, y / COORD_SCALE];
+    }
+  }
+  payload[flags & END_POINTS ? "currentStrokes" : "points"] = points;
+  if (r.pos !== r.buf.length) throw new Error("Trailing bytes after stroke frame");
+
+  return { type, roomId, userId, strokeId, name, seq: seq === 0 ? null : seq - 1, payload };
+}
+
+// Varints are written with arithmetic rather than bit operators so values past 2^31 survive.
+function writeVarint(out, v) {
+  while (v >= 0x80) {
+    out.push((v % 0x80) | 0x80);
+    v = Math.floor(v / 0x80);
+  }
+  out.push(v);
+}
+
+function writeZigzag(out, v) {
+  writeVarint(out, v >= 0 ? v * 2 : -v * 2 - 1);
+}
+
+function writeString(out, s) {
+  if (s == null) {
+    writeVarint(out, 0);
+    return;
+  }
+  const bytes = encoder.encode(String(s));
+  writeVarint(out, bytes.length + 1);
+  for (const b of bytes) out.push(b);
+}
+
+function readByte(r) {
+  if (r.pos >= r.buf.length) throw new Error("Truncated stroke frame");
+  return r.buf[r.pos++];
+}
+
+function readVarint(r) {
+  let v = 0;
+  let scale = 1;
+  for (;;) {
+    const b = readByte(r);
+    v += (b & 0x7f) * scale;
+    if ((b & 0x80) === 0) return v;
+    scale *= 0x80;
+  }
+}
+
+function readZigzag(r) {
+  const u = readVarint(r);
+  return u % 2 === 0 ? u / 2 : -(u + 1) / 2;
+}
+
+function readString(r) {
+  const n = readVarint(r);
+  if (n === 0) return null;
+  const end = r.pos + n - 1;
+  if (end > r.buf.length) throw new Error("Truncated stroke frame");
+  const s = decoder.decode(r.buf.subarray(r.pos, end));
+  r.pos = end;
+  return s;
+}
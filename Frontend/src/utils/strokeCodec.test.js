@@ -0,0 +1,38 @@
+// Run with `npm test` (node's built-in runner). The vectors are shared with the backend's
+// StrokeCodecTest, so both codecs are held to the same bytes.
+import { test } from "node:test";
+import assert from "node:assert/strict";
+import { readFileSync } from "node:fs";
+import { encodeStrokeMessage, decodeStrokeMessage } from "./strokeCodec.js";
+
+const vectors = JSON.parse(
+  readFileSync(
+    new URL("../../../Backend/src/test/resources/stroke-codec-v1-vectors.json", import.meta.url),
+    "utf8",
+  ),
+);
+
+const toHex = (bytes) => Buffer.from(bytes).toString("hex");
+const fromHex = (hex) => new Uint8Array(Buffer.from(hex, "hex"));
+
+for (const { name, message, hex } of vectors.valid) {
+  test(`encodes: ${name}`, () => {
+    assert.equal(toHex(encodeStrokeMessage(message)), hex);
+  });
+
+  test(`decodes: ${name}`, () => {
+    assert.deepEqual(decodeStrokeMessage(fromHex(hex)), message);
+  });
+}
+
+for (const { name, hex } of vectors.invalid) {
+  test(`rejects: ${name}`, () => {
+    assert.throws(() => decodeStrokeMessage(fromHex(hex)));
+  });
+}
+
+test("leaves payloads it cannot carry as JSON", () => {
+  assert.equal(encodeStrokeMessage({ type: "stroke_move", payload: { points: [[1, 2]], opacity: 0.5 } }), null);
+  assert.equal(encodeStrokeMessage({ type: "stroke_move", payload: { points: [[1, 2], [1, 2, 3]] } }), null);
+  assert.equal(encodeStrokeMessage({ type: "text_patch", payload: { points: [] } }), null);
+});